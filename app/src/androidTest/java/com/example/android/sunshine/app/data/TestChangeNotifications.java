@@ -0,0 +1,191 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Arrays;
+
+/*
+    Checks that a write only reaches the observers of the location and days it changed, the way
+    the loaders of the forecast list and the detail pane observe them, and counts the callbacks
+    of a sync against notifying the whole weather table as the provider used to.
+ */
+public class TestChangeNotifications extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestChangeNotifications.class.getSimpleName();
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    private static final String OTHER_LOCATION = "10001";
+    private static final int DAYS = 14;
+
+    private long mLocationId;
+    private long mOtherLocationId;
+
+    // Registered as a CursorLoader registers its cursor: on the URI queried, with descendants.
+    private TestUtilities.TestContentObserver mList;
+    private TestUtilities.TestContentObserver mOtherList;
+    private TestUtilities.TestContentObserver mToday;
+    private TestUtilities.TestContentObserver mLaterDay;
+    private TestUtilities.TestContentObserver mAll;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+        mLocationId = insertLocation(TestUtilities.TEST_LOCATION);
+        mOtherLocationId = insertLocation(OTHER_LOCATION);
+        insertDays(mLocationId);
+        insertDays(mOtherLocationId);
+
+        mList = observe(WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION));
+        mOtherList = observe(WeatherEntry.buildWeatherLocation(OTHER_LOCATION));
+        mToday = observe(WeatherEntry.buildWeatherLocationWithDate(
+                TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE));
+        mLaterDay = observe(WeatherEntry.buildWeatherLocationWithDate(
+                TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE + 3 * DAY_IN_MILLIS));
+        mAll = observe(WeatherEntry.CONTENT_URI);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TestUtilities.TestContentObserver[] observers = {
+                mList, mOtherList, mToday, mLaterDay, mAll};
+        for (TestUtilities.TestContentObserver observer : observers) {
+            mContext.getContentResolver().unregisterContentObserver(observer);
+            observer.mHT.quit();
+        }
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    private long insertLocation(String locationSetting) {
+        ContentValues values = TestUtilities.createNorthPoleLocationValues();
+        values.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        Uri uri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, values);
+        return ContentUris.parseId(uri);
+    }
+
+    private void insertDays(long locationId) {
+        ContentValues[] values = new ContentValues[DAYS];
+        for (int day = 0; day < DAYS; day++) {
+            values[day] = TestUtilities.createWeatherValues(locationId);
+            values[day].put(WeatherEntry.COLUMN_DATE,
+                    TestUtilities.TEST_DATE + day * DAY_IN_MILLIS);
+        }
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values);
+    }
+
+    private TestUtilities.TestContentObserver observe(Uri uri) {
+        TestUtilities.TestContentObserver observer = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(uri, true, observer);
+        return observer;
+    }
+
+    private int[] takeCounts() throws InterruptedException {
+        // Give the callbacks the time to arrive before counting.
+        Thread.sleep(500);
+        int[] counts = {mList.mChangeCount, mOtherList.mChangeCount, mToday.mChangeCount,
+                mLaterDay.mChangeCount, mAll.mChangeCount};
+        mList.mChangeCount = 0;
+        mOtherList.mChangeCount = 0;
+        mToday.mChangeCount = 0;
+        mLaterDay.mChangeCount = 0;
+        mAll.mChangeCount = 0;
+        return counts;
+    }
+
+    private static int sum(int[] counts) {
+        int sum = 0;
+        for (int count : counts) {
+            sum += count;
+        }
+        return sum;
+    }
+
+    private Bundle ingest(WeatherBatch batch, long pruneDate) {
+        Bundle extras = new Bundle();
+        batch.writeTo(extras);
+        extras.putLong(WeatherContract.KEY_PRUNE_DATE, pruneDate);
+        return mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_INGEST_WEATHER, null, extras);
+    }
+
+    public void testOneDay() throws Exception {
+        takeCounts();
+        ContentValues values = TestUtilities.createWeatherValues(mLocationId);
+        values.put(WeatherEntry.COLUMN_MAX_TEMP, 90);
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, values);
+
+        int[] counts = takeCounts();
+        assertEquals("Error: the list of the location was not notified", 1, counts[0]);
+        assertEquals("Error: the list of another location was notified", 0, counts[1]);
+        assertEquals("Error: the day written was not notified", 1, counts[2]);
+        assertEquals("Error: a day not written was notified", 0, counts[3]);
+        assertEquals(1, counts[4]);
+
+        mContext.getContentResolver().update(WeatherEntry.CONTENT_URI, values,
+                WeatherEntry.COLUMN_LOC_KEY + " = ? AND " + WeatherEntry.COLUMN_DATE + " = ?",
+                new String[]{Long.toString(mOtherLocationId),
+                        Long.toString(TestUtilities.TEST_DATE)});
+        counts = takeCounts();
+        // The row moved from the other location to this one: both lists see it.
+        assertEquals(1, counts[0]);
+        assertEquals(1, counts[1]);
+        assertEquals(0, counts[3]);
+    }
+
+    /*
+        A sync of one location as SunshineSyncAdapter does it, first with a forecast of which only
+        today changed, which is the common case, then with every day changed, counted per observer
+        against one notification of the weather table per write, as the provider used to notify.
+     */
+    public void testCallbacksPerSync() throws Exception {
+        WeatherBatch batch = new WeatherBatch(DAYS);
+        long pruneDate = TestUtilities.TEST_DATE - DAY_IN_MILLIS;
+
+        // Before: every observer of the weather table reloads.
+        takeCounts();
+        mContext.getContentResolver().notifyChange(WeatherEntry.CONTENT_URI, null);
+        int[] before = takeCounts();
+
+        batch.add(mLocationId, TestUtilities.TEST_DATE, "Clear", 800, 8.5, 30.0,
+                60, 1013.25, 3.5, 270.0);
+        ingest(batch, pruneDate);
+        int[] oneDay = takeCounts();
+
+        batch.clear();
+        for (int day = 0; day < DAYS; day++) {
+            batch.add(mLocationId, TestUtilities.TEST_DATE + day * DAY_IN_MILLIS, "Clear", 800,
+                    8.5, 40.0, 60, 1013.25, 3.5, 270.0);
+        }
+        ingest(batch, pruneDate);
+        int[] allDays = takeCounts();
+
+        Log.i(LOG_TAG, "Callbacks per sync (list, other list, today, later day, all): before "
+                + Arrays.toString(before) + "; one day changed "
+                + Arrays.toString(oneDay) + "; every day changed "
+                + Arrays.toString(allDays));
+        assertEquals(5, sum(before));
+
+        assertEquals("Error: a sync should reload the list once", 1, oneDay[0]);
+        assertEquals(0, oneDay[1]);
+        assertEquals(1, oneDay[2]);
+        assertEquals("Error: a day the sync did not change was notified", 0, oneDay[3]);
+
+        assertEquals("Error: a sync should reload the list once", 1, allDays[0]);
+        assertEquals("Error: a sync notified another location", 0, allDays[1]);
+        assertTrue(sum(allDays) < sum(before));
+    }
+}
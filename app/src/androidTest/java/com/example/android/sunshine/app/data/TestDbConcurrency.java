@@ -0,0 +1,122 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Build;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.sync.LatencyTracker;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Checks that readers are not held up by a sync writing to the database.
+ */
+public class TestDbConcurrency extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestDbConcurrency.class.getSimpleName();
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    private static final int BULK_INSERT_ROWS = 20000;
+
+    private WeatherDbHelper mHelper;
+    private long mLocationId;
+    private volatile boolean mWriting;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        mHelper = new WeatherDbHelper(mContext);
+        mLocationId = mHelper.getWritableDatabase().insert(WeatherContract.LocationEntry.TABLE_NAME,
+                null, TestUtilities.createNorthPoleLocationValues());
+        assertTrue(mLocationId != -1);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mHelper.close();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        super.tearDown();
+    }
+
+    public void testWriteAheadLogging() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        assertTrue("Error: weather.db should use a write-ahead log",
+                WeatherDbHelper.isWriteAheadLogging(mHelper.getWritableDatabase()));
+    }
+
+    /*
+        Reads today's weather over and over on one thread while another one bulk inserts a long
+        history in a single transaction, and reports how long the reads took.
+     */
+    public void testReadersDuringBulkInsert() throws Exception {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        final SQLiteDatabase db = mHelper.getWritableDatabase();
+        final long today = TestUtilities.TEST_DATE;
+        ContentValues todayValues = TestUtilities.createWeatherValues(mLocationId);
+        assertTrue(db.insert(WeatherEntry.TABLE_NAME, null, todayValues) != -1);
+
+        final CountDownLatch writing = new CountDownLatch(1);
+        final long[] writeNanos = new long[1];
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ContentValues values = TestUtilities.createWeatherValues(mLocationId);
+                long start = System.nanoTime();
+                db.beginTransaction();
+                try {
+                    mWriting = true;
+                    writing.countDown();
+                    for (int i = 1; i <= BULK_INSERT_ROWS; i++) {
+                        values.put(WeatherEntry.COLUMN_DATE, today + i * DAY_IN_MILLIS);
+                        db.insert(WeatherEntry.TABLE_NAME, null, values);
+                    }
+                    db.setTransactionSuccessful();
+                    // Reads finishing after this are not counted as concurrent.
+                    mWriting = false;
+                } finally {
+                    mWriting = false;
+                    db.endTransaction();
+                }
+                writeNanos[0] = System.nanoTime() - start;
+            }
+        }, "BulkInsert");
+        writer.start();
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+        LatencyTracker latencies = new LatencyTracker(10000);
+        int concurrentReads = 0;
+        while (writer.isAlive()) {
+            long start = System.nanoTime();
+            Cursor cursor = mHelper.getReadableDatabase().query(WeatherEntry.TABLE_NAME, null,
+                    WeatherEntry.COLUMN_LOC_KEY + " = ? AND " + WeatherEntry.COLUMN_DATE + " = ?",
+                    new String[]{Long.toString(mLocationId), Long.toString(today)},
+                    null, null, null);
+            assertEquals("Error: readers should see the last commit", 1, cursor.getCount());
+            cursor.close();
+            if (mWriting) {
+                concurrentReads++;
+            }
+            latencies.record((System.nanoTime() - start) / 1000);
+        }
+        writer.join();
+
+        Log.i(LOG_TAG, "Bulk insert of " + BULK_INSERT_ROWS + " rows took "
+                + writeNanos[0] / 1000000 + " ms; " + latencies.getCount() + " reads, "
+                + concurrentReads + " while writing, p50 " + latencies.percentile(50, 0)
+                + " us, p99 " + latencies.percentile(99, 0) + " us, max "
+                + latencies.percentile(100, 0) + " us");
+        assertTrue("Error: readers waited for the writer", concurrentReads > 0);
+        assertTrue("Error: a read took as long as the whole insert",
+                latencies.percentile(100, 0) * 1000 < writeNanos[0]);
+    }
+}
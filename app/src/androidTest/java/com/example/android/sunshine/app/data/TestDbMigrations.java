@@ -0,0 +1,234 @@
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Upgrades a database of every released schema version to the current one and checks that the
+    data survives and that the schema ends up as a fresh install would create it.
+
+    The fixture schemas are copies of what each version created and must never be edited.  When
+    the schema changes, add the schema of the version being replaced here.
+ */
+public class TestDbMigrations extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestDbMigrations.class.getSimpleName();
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    private static final String V2_LOCATION_TABLE = "CREATE TABLE location (" +
+            "_id INTEGER PRIMARY KEY," +
+            "location_setting TEXT UNIQUE NOT NULL, " +
+            "city_name TEXT NOT NULL, " +
+            "coord_lat REAL NOT NULL, " +
+            "coord_long REAL NOT NULL  );";
+    private static final String V2_WEATHER_TABLE = "CREATE TABLE weather (" +
+            "_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+            "location_id INTEGER NOT NULL, " +
+            "date INTEGER NOT NULL, " +
+            "short_desc TEXT NOT NULL, " +
+            "weather_id INTEGER NOT NULL," +
+            "min REAL NOT NULL, " +
+            "max REAL NOT NULL, " +
+            "humidity REAL NOT NULL, " +
+            "pressure REAL NOT NULL, " +
+            "wind REAL NOT NULL, " +
+            "degrees REAL NOT NULL, " +
+            " FOREIGN KEY (location_id) REFERENCES location (_id), " +
+            " UNIQUE (date, location_id) ON CONFLICT REPLACE);";
+    private static final String V3_SYNC_JOURNAL_TABLE = "CREATE TABLE sync_journal (" +
+            "_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+            "sync_time INTEGER NOT NULL, " +
+            "location_setting TEXT NOT NULL, " +
+            "phase TEXT NOT NULL, " +
+            "duration INTEGER NOT NULL, " +
+            "bytes INTEGER NOT NULL DEFAULT 0  );";
+
+    // FIXTURES[i] is the schema of version WeatherDbHelper.OLDEST_MIGRATED_VERSION + i.
+    private static final String[][] FIXTURES = {
+            {V2_LOCATION_TABLE, V2_WEATHER_TABLE},
+            {V2_LOCATION_TABLE, V2_WEATHER_TABLE, V3_SYNC_JOURNAL_TABLE},
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        super.tearDown();
+    }
+
+    public void testEveryVersionHasAMigration() {
+        assertEquals("Error: a schema version has no migration step",
+                WeatherDbHelper.DATABASE_VERSION,
+                WeatherDbHelper.OLDEST_MIGRATED_VERSION + WeatherDbHelper.sMigrations.length);
+        assertEquals("Error: a schema version has no fixture",
+                WeatherDbHelper.sMigrations.length, FIXTURES.length);
+    }
+
+    /*
+        Creates weather.db as version {@code version} created it, with {@code days} days of
+        weather for each of {@code locations} locations.
+     */
+    private void createFixture(int version, int locations, int days) {
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(
+                mContext.getDatabasePath(WeatherDbHelper.DATABASE_NAME), null);
+        try {
+            db.beginTransaction();
+            try {
+                for (String sql : FIXTURES[version - WeatherDbHelper.OLDEST_MIGRATED_VERSION]) {
+                    db.execSQL(sql);
+                }
+                for (int location = 0; location < locations; location++) {
+                    db.execSQL("INSERT INTO location (_id, location_setting, city_name, " +
+                            "coord_lat, coord_long) VALUES (?, ?, 'North Pole', 64.7488, -147.353)",
+                            new Object[]{location + 1, "9900" + location});
+                    for (int day = 0; day < days; day++) {
+                        db.execSQL("INSERT INTO weather (location_id, date, short_desc, " +
+                                "weather_id, min, max, humidity, pressure, wind, degrees) " +
+                                "VALUES (?, ?, 'Asteroids', 321, 65, 75, 1.2, 1.3, 5.5, 1.1)",
+                                new Object[]{location + 1,
+                                        TestUtilities.TEST_DATE + day * DAY_IN_MILLIS});
+                    }
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            db.setVersion(version);
+        } finally {
+            db.close();
+        }
+    }
+
+    // Tables and indexes with their columns, in a form that does not depend on how the SQL that
+    // created them was formatted.
+    private static String describeSchema(SQLiteDatabase db) {
+        StringBuilder schema = new StringBuilder();
+        Cursor objects = db.rawQuery("SELECT type, name FROM sqlite_master " +
+                "WHERE name NOT LIKE 'sqlite_%' AND name != 'android_metadata' " +
+                "ORDER BY type, name", null);
+        try {
+            while (objects.moveToNext()) {
+                String type = objects.getString(0);
+                String name = objects.getString(1);
+                schema.append(type).append(' ').append(name).append('\n');
+                Cursor columns = db.rawQuery("PRAGMA " + ("index".equals(type)
+                        ? "index_info" : "table_info") + "(" + name + ")", null);
+                try {
+                    while (columns.moveToNext()) {
+                        schema.append(' ');
+                        for (int i = 0; i < columns.getColumnCount(); i++) {
+                            schema.append(' ').append(columns.getString(i));
+                        }
+                        schema.append('\n');
+                    }
+                } finally {
+                    columns.close();
+                }
+                if ("table".equals(type)) {
+                    Cursor indexes = db.rawQuery("PRAGMA index_list(" + name + ")", null);
+                    try {
+                        while (indexes.moveToNext()) {
+                            schema.append("  index ").append(indexes.getString(
+                                    indexes.getColumnIndex("name"))).append(" unique ")
+                                    .append(indexes.getInt(indexes.getColumnIndex("unique")))
+                                    .append('\n');
+                        }
+                    } finally {
+                        indexes.close();
+                    }
+                }
+            }
+        } finally {
+            objects.close();
+        }
+        return schema.toString();
+    }
+
+    private String describeFreshSchema() {
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        WeatherDbHelper helper = new WeatherDbHelper(mContext);
+        try {
+            return describeSchema(helper.getReadableDatabase());
+        } finally {
+            helper.close();
+            mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        }
+    }
+
+    public void testUpgradeFromEveryVersion() {
+        String freshSchema = describeFreshSchema();
+        for (int version = WeatherDbHelper.OLDEST_MIGRATED_VERSION;
+             version < WeatherDbHelper.DATABASE_VERSION; version++) {
+            createFixture(version, 3, 14);
+
+            WeatherDbHelper helper = new WeatherDbHelper(mContext);
+            try {
+                SQLiteDatabase db = helper.getWritableDatabase();
+                assertEquals(WeatherDbHelper.DATABASE_VERSION, db.getVersion());
+                assertEquals("Error: the upgrade from version " + version + " lost locations",
+                        3, DatabaseUtils.queryNumEntries(db, LocationEntry.TABLE_NAME));
+                assertEquals("Error: the upgrade from version " + version + " lost weather",
+                        3 * 14, DatabaseUtils.queryNumEntries(db, WeatherEntry.TABLE_NAME));
+                assertEquals("Error: the upgrade from version " + version
+                        + " does not give the schema of a fresh install",
+                        freshSchema, describeSchema(db));
+            } finally {
+                helper.close();
+                mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+            }
+        }
+    }
+
+    public void testUnknownVersionRecreated() {
+        String freshSchema = describeFreshSchema();
+        createFixture(WeatherDbHelper.OLDEST_MIGRATED_VERSION, 3, 14);
+        SQLiteDatabase fixture = SQLiteDatabase.openDatabase(
+                mContext.getDatabasePath(WeatherDbHelper.DATABASE_NAME).getPath(), null,
+                SQLiteDatabase.OPEN_READWRITE);
+        fixture.setVersion(WeatherDbHelper.OLDEST_MIGRATED_VERSION - 1);
+        fixture.close();
+
+        WeatherDbHelper helper = new WeatherDbHelper(mContext);
+        try {
+            SQLiteDatabase db = helper.getWritableDatabase();
+            assertEquals(0, DatabaseUtils.queryNumEntries(db, WeatherEntry.TABLE_NAME));
+            assertEquals(freshSchema, describeSchema(db));
+        } finally {
+            helper.close();
+        }
+    }
+
+    /*
+        Time to upgrade a database with a long history, from the oldest version migrated.
+     */
+    public void testMigrationTime() {
+        int locations = 20;
+        int days = 2000;
+        createFixture(WeatherDbHelper.OLDEST_MIGRATED_VERSION, locations, days);
+
+        WeatherDbHelper helper = new WeatherDbHelper(mContext);
+        try {
+            long start = System.nanoTime();
+            SQLiteDatabase db = helper.getWritableDatabase();
+            long migrationMillis = (System.nanoTime() - start) / 1000000;
+            Log.i(LOG_TAG, "Upgrade of " + locations * days + " weather rows from version "
+                    + WeatherDbHelper.OLDEST_MIGRATED_VERSION + " took " + migrationMillis + " ms");
+            assertEquals(locations * days,
+                    DatabaseUtils.queryNumEntries(db, WeatherEntry.TABLE_NAME));
+        } finally {
+            helper.close();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.net.Uri;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+/*
+    Checks how the provider merges the notifications of a burst of writes, and counts the
+    reloads a forecast list would do for one.
+ */
+public class TestNotificationCoalescer extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestNotificationCoalescer.class.getSimpleName();
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    private static Uri day(String locationSetting, int day) {
+        return WeatherEntry.buildWeatherLocationWithDate(locationSetting,
+                TestUtilities.TEST_DATE + day * DAY_IN_MILLIS);
+    }
+
+    private static void assertMerged(List<Uri> expected, Uri... uris) {
+        List<Uri> merged = NotificationCoalescer.merge(Arrays.asList(uris));
+        assertEquals(new HashSet<Uri>(expected), new HashSet<Uri>(merged));
+    }
+
+    public void testMerge() {
+        Uri location = WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION);
+        Uri otherLocation = WeatherEntry.buildWeatherLocation("10001");
+
+        // One day stays one day; the same day twice is notified once.
+        assertMerged(Arrays.asList(day(TestUtilities.TEST_LOCATION, 0)),
+                day(TestUtilities.TEST_LOCATION, 0), day(TestUtilities.TEST_LOCATION, 0));
+        // Two days of a location are one reload of its list.
+        assertMerged(Arrays.asList(location),
+                day(TestUtilities.TEST_LOCATION, 0), day(TestUtilities.TEST_LOCATION, 1));
+        // A day below a location notified anyway is dropped.
+        assertMerged(Arrays.asList(location), location, day(TestUtilities.TEST_LOCATION, 2));
+        // Locations stay apart, until there are enough of them to notify the table.
+        assertMerged(Arrays.asList(location, otherLocation), location, otherLocation);
+        assertMerged(Arrays.asList(WeatherEntry.CONTENT_URI),
+                location, otherLocation, WeatherEntry.buildWeatherLocation("10002"),
+                WeatherEntry.buildWeatherLocation("10003"));
+        // Tables are never merged.
+        assertMerged(Arrays.asList(WeatherEntry.CONTENT_URI, LocationEntry.CONTENT_URI),
+                WeatherEntry.CONTENT_URI, LocationEntry.CONTENT_URI, location);
+    }
+
+    private long[] stats() {
+        Bundle result = mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_NOTIFICATION_STATS, null, null);
+        return new long[]{result.getLong(WeatherContract.KEY_NOTIFIED),
+                result.getLong(WeatherContract.KEY_SUPPRESSED)};
+    }
+
+    /*
+        Location writes are notified without waiting for the quiet window, so that the location
+        id cache of the sync is dropped as soon as a location changes.
+     */
+    public void testLocationChangesAreNotHeldBack() {
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_FLUSH_NOTIFICATIONS, null, null);
+
+        TestUtilities.TestContentObserver table = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(LocationEntry.CONTENT_URI, false,
+                table);
+        long[] before = stats();
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        long[] after = stats();
+        assertEquals("Error: the delete of a location should be notified right away",
+                1, after[0] - before[0]);
+        table.waitForNotificationOrFail();
+        mContext.getContentResolver().unregisterContentObserver(table);
+    }
+
+    /*
+        Inserts the days of a forecast one by one, as a naive writer would, and counts how often
+        the forecast list of the location is told to reload.
+     */
+    public void testBurstOfInserts() throws Exception {
+        int days = 20;
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        long locationId = ContentUris.parseId(locationUri);
+        mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_FLUSH_NOTIFICATIONS, null, null);
+
+        TestUtilities.TestContentObserver list = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(
+                WeatherEntry.buildWeatherLocation(TestUtilities.TEST_LOCATION), true, list);
+        long[] before = stats();
+        ContentValues values = TestUtilities.createWeatherValues(locationId);
+        for (int day = 0; day < days; day++) {
+            values.put(WeatherEntry.COLUMN_DATE, TestUtilities.TEST_DATE + day * DAY_IN_MILLIS);
+            mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, values);
+        }
+        list.waitForNotificationOrFail();
+        // Give a later notification the time to arrive before counting.
+        Thread.sleep(NotificationCoalescer.MAX_DELAY_MILLIS);
+        mContext.getContentResolver().unregisterContentObserver(list);
+        long[] after = stats();
+
+        Log.i(LOG_TAG, days + " inserts: " + list.mChangeCount + " reloads of the list, "
+                + (after[0] - before[0]) + " notifications sent, "
+                + (after[1] - before[1]) + " suppressed");
+        assertTrue("Error: the list reloaded once per insert", list.mChangeCount < days);
+        assertEquals("Error: every insert was either notified or suppressed",
+                days, (after[0] - before[0]) + (after[1] - before[1]));
+
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.regex.Pattern;
+
+/*
+    Checks with EXPLAIN QUERY PLAN that the queries the app runs most find their rows through an
+    index, so that a schema change cannot bring back full scans unnoticed.  The plans are checked
+    on a database with some history, before and after ANALYZE, since statistics can change the
+    planner's mind.
+ */
+public class TestQueryPlans extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestQueryPlans.class.getSimpleName();
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    private static final int LOCATIONS = 50;
+    private static final int DAYS = 30;
+
+    // "SCAN TABLE weather" up to SQLite 3.35, "SCAN weather" since.
+    private static final Pattern FULL_SCAN =
+            Pattern.compile("SCAN (TABLE )?(" + WeatherEntry.TABLE_NAME + "|"
+                    + LocationEntry.TABLE_NAME + ")\\b");
+    private static final String SORT = "TEMP B-TREE";
+
+    private WeatherDbHelper mHelper;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        mHelper = new WeatherDbHelper(mContext);
+        fillHistory(mHelper.getWritableDatabase());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mHelper.close();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        super.tearDown();
+    }
+
+    private static void fillHistory(SQLiteDatabase db) {
+        db.beginTransaction();
+        try {
+            for (int location = 0; location < LOCATIONS; location++) {
+                ContentValues locationValues = TestUtilities.createNorthPoleLocationValues();
+                locationValues.put(LocationEntry.COLUMN_LOCATION_SETTING, "9900" + location);
+                long locationId = db.insert(LocationEntry.TABLE_NAME, null, locationValues);
+                ContentValues weatherValues = TestUtilities.createWeatherValues(locationId);
+                for (int day = 0; day < DAYS; day++) {
+                    weatherValues.put(WeatherEntry.COLUMN_DATE,
+                            TestUtilities.TEST_DATE + day * DAY_IN_MILLIS);
+                    db.insert(WeatherEntry.TABLE_NAME, null, weatherValues);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private String explain(String sql, String... args) {
+        Cursor cursor = mHelper.getReadableDatabase().rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        StringBuilder plan = new StringBuilder();
+        try {
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detail)).append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+        Log.d(LOG_TAG, sql + "\n" + plan);
+        return plan.toString();
+    }
+
+    private static void assertNoFullScan(String name, String plan) {
+        assertFalse("Error: " + name + " scans a whole table:\n" + plan,
+                FULL_SCAN.matcher(plan).find());
+    }
+
+    private void checkPlans() {
+        String sortOrder = WeatherEntry.COLUMN_DATE + " ASC";
+
+        // The forecast list, the detail widget and Muzei: a location from today on.
+        String plan = explain(WeatherProvider.sWeatherByLocationSettingQueryBuilder.buildQuery(
+                        null, WeatherProvider.sLocationSettingWithStartDateSelection,
+                        null, null, sortOrder, null),
+                "99001", Long.toString(TestUtilities.TEST_DATE));
+        assertNoFullScan("weather by location from a date", plan);
+        assertTrue("Error: the index on (location_id, date) is not used:\n" + plan,
+                plan.contains(WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE));
+        assertFalse("Error: weather by location from a date is sorted:\n" + plan,
+                plan.contains(SORT));
+
+        // The detail pane, the today widget, the notification and the watch face: one day.
+        plan = explain(WeatherProvider.sWeatherByLocationSettingQueryBuilder.buildQuery(
+                        null, WeatherProvider.sLocationSettingAndDaySelection,
+                        null, null, sortOrder, null),
+                "99001", Long.toString(TestUtilities.TEST_DATE));
+        assertNoFullScan("weather by location and date", plan);
+
+        plan = explain(WeatherProvider.sWeatherByLocationSettingQueryBuilder.buildQuery(
+                        null, WeatherProvider.sLocationSettingSelection,
+                        null, null, null, null),
+                "99001");
+        assertNoFullScan("weather by location", plan);
+
+        // The days the sync compares a new forecast with.
+        plan = explain(SQLiteQueryBuilder.buildQueryString(false, WeatherEntry.TABLE_NAME,
+                        null, WeatherEntry.COLUMN_LOC_KEY + " = ?", null, null, null, null),
+                "1");
+        assertNoFullScan("weather of a location id", plan);
+
+        // The location lookup of the sync.
+        plan = explain(SQLiteQueryBuilder.buildQueryString(false, LocationEntry.TABLE_NAME,
+                        new String[]{LocationEntry._ID},
+                        LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                        null, null, null, null),
+                "99001");
+        assertNoFullScan("location by setting", plan);
+    }
+
+    public void testQueryPlans() {
+        checkPlans();
+    }
+
+    public void testQueryPlansAfterAnalyze() {
+        mHelper.getWritableDatabase().execSQL("ANALYZE");
+        checkPlans();
+    }
+}
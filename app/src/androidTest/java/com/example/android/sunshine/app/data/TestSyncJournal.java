@@ -0,0 +1,84 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.SyncJournalEntry;
+
+/*
+    Checks that the sync journal stays bounded and that the provider summarizes it correctly.
+ */
+public class TestSyncJournal extends AndroidTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getContentResolver().delete(SyncJournalEntry.CONTENT_URI, null, null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.getContentResolver().delete(SyncJournalEntry.CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    private static ContentValues createJournalValues(String phase, long duration, long bytes) {
+        ContentValues values = new ContentValues();
+        values.put(SyncJournalEntry.COLUMN_SYNC_TIME, 1419033600000L);
+        values.put(SyncJournalEntry.COLUMN_LOCATION_SETTING, "99705");
+        values.put(SyncJournalEntry.COLUMN_PHASE, phase);
+        values.put(SyncJournalEntry.COLUMN_DURATION, duration);
+        values.put(SyncJournalEntry.COLUMN_BYTES, bytes);
+        return values;
+    }
+
+    public void testPercentiles() {
+        // 1..100 for "parse", in reverse so the provider has to sort them.
+        ContentValues[] rows = new ContentValues[102];
+        for (int i = 0; i < 100; i++) {
+            rows[i] = createJournalValues("parse", 100 - i, 0);
+        }
+        rows[100] = createJournalValues("download", 5000, 1200);
+        rows[101] = createJournalValues("download", 7000, 800);
+        assertEquals(102, mContext.getContentResolver().bulkInsert(SyncJournalEntry.CONTENT_URI, rows));
+
+        Bundle percentiles = mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_SYNC_JOURNAL_PERCENTILES, null, null);
+        assertEquals(2, percentiles.size());
+
+        Bundle parse = percentiles.getBundle("parse");
+        assertEquals(100, parse.getInt(WeatherContract.KEY_COUNT));
+        assertEquals(50, parse.getLong(WeatherContract.KEY_P50));
+        assertEquals(90, parse.getLong(WeatherContract.KEY_P90));
+        assertEquals(99, parse.getLong(WeatherContract.KEY_P99));
+        assertEquals(100, parse.getLong(WeatherContract.KEY_MAX));
+        assertEquals(0, parse.getLong(WeatherContract.KEY_BYTES));
+
+        Bundle download = percentiles.getBundle("download");
+        assertEquals(2, download.getInt(WeatherContract.KEY_COUNT));
+        assertEquals(5000, download.getLong(WeatherContract.KEY_P50));
+        assertEquals(7000, download.getLong(WeatherContract.KEY_P99));
+        assertEquals(2000, download.getLong(WeatherContract.KEY_BYTES));
+    }
+
+    public void testJournalIsBounded() {
+        ContentValues[] rows = new ContentValues[SyncJournalEntry.MAX_ROWS / 2 + 1];
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = createJournalValues("parse", round, 0);
+            }
+            mContext.getContentResolver().bulkInsert(SyncJournalEntry.CONTENT_URI, rows);
+        }
+
+        Cursor cursor = mContext.getContentResolver().query(SyncJournalEntry.CONTENT_URI,
+                new String[]{SyncJournalEntry.COLUMN_DURATION}, null, null,
+                SyncJournalEntry._ID + " ASC");
+        assertEquals(SyncJournalEntry.MAX_ROWS, cursor.getCount());
+        // The oldest round is the one that was dropped.
+        assertTrue(cursor.moveToFirst());
+        assertEquals(1, cursor.getLong(0));
+        cursor.close();
+    }
+}
@@ -0,0 +1,158 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Checks the ingest call of the provider and compares it with bulkInsert.
+ */
+public class TestWeatherIngest extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherIngest.class.getSimpleName();
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    private static final long FIRST_DAY = WeatherContract.normalizeDate(1460160000000L);
+
+    private long mLocationId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        mLocationId = ContentUris.parseId(locationUri);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    private Bundle ingest(WeatherBatch batch, Long pruneDate) {
+        Bundle extras = new Bundle();
+        batch.writeTo(extras);
+        if (pruneDate != null) {
+            extras.putLong(WeatherContract.KEY_PRUNE_DATE, pruneDate);
+        }
+        return mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_INGEST_WEATHER, null, extras);
+    }
+
+    private void fillBatch(WeatherBatch batch, int days, double high) {
+        batch.clear();
+        for (int day = 0; day < days; day++) {
+            batch.add(mLocationId, FIRST_DAY + day * DAY_IN_MILLIS, "Clear", 800, 8.5, high + day,
+                    60, 1013.25, 3.5, 270.0);
+        }
+    }
+
+    private int countWeather() {
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                null, null, null, null);
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
+
+    public void testIngest() {
+        WeatherBatch batch = new WeatherBatch(4);
+        fillBatch(batch, 14, 20.0);
+
+        TestUtilities.TestContentObserver weatherObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(WeatherEntry.CONTENT_URI, true,
+                weatherObserver);
+        Bundle result = ingest(batch, null);
+        weatherObserver.waitForNotificationOrFail();
+        mContext.getContentResolver().unregisterContentObserver(weatherObserver);
+
+        assertEquals(14, result.getInt(WeatherContract.KEY_INSERTED));
+        assertEquals(0, result.getInt(WeatherContract.KEY_DELETED));
+        assertEquals(14, countWeather());
+
+        // The same days again replace the stored ones, and the first two days are pruned.
+        fillBatch(batch, 14, 25.0);
+        result = ingest(batch, FIRST_DAY + DAY_IN_MILLIS);
+        assertEquals(2, result.getInt(WeatherContract.KEY_DELETED));
+        assertEquals(12, countWeather());
+
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                new String[]{WeatherEntry.COLUMN_MAX_TEMP}, null, null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+        assertTrue(cursor.moveToFirst());
+        assertEquals(27.0, cursor.getDouble(0));
+        cursor.close();
+    }
+
+    /*
+        Rows per second and allocations per row of ingesting a forecast for a number of
+        locations, through bulkInsert with a ContentValues per row versus through the ingest
+        call with one reused batch.  Building the rows is part of both.
+     */
+    @SuppressWarnings("deprecation")
+    public void testIngestBenchmark() {
+        int days = 14;
+        int rounds = 50;
+        int rows = days * rounds;
+
+        ContentValues[] values = new ContentValues[days];
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        long start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            for (int day = 0; day < days; day++) {
+                ContentValues row = new ContentValues();
+                row.put(WeatherEntry.COLUMN_LOC_KEY, mLocationId);
+                row.put(WeatherEntry.COLUMN_DATE, FIRST_DAY + day * DAY_IN_MILLIS);
+                row.put(WeatherEntry.COLUMN_SHORT_DESC, "Clear");
+                row.put(WeatherEntry.COLUMN_WEATHER_ID, 800);
+                row.put(WeatherEntry.COLUMN_MIN_TEMP, 8.5);
+                row.put(WeatherEntry.COLUMN_MAX_TEMP, 20.0 + round);
+                row.put(WeatherEntry.COLUMN_HUMIDITY, 60);
+                row.put(WeatherEntry.COLUMN_PRESSURE, 1013.25);
+                row.put(WeatherEntry.COLUMN_WIND_SPEED, 3.5);
+                row.put(WeatherEntry.COLUMN_DEGREES, 270.0);
+                values[day] = row;
+            }
+            mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values);
+        }
+        long bulkInsertNanos = System.nanoTime() - start;
+        Debug.stopAllocCounting();
+        int bulkInsertAllocs = Debug.getThreadAllocCount();
+
+        WeatherBatch batch = new WeatherBatch(days);
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        start = System.nanoTime();
+        for (int round = 0; round < rounds; round++) {
+            fillBatch(batch, days, 20.0 + round);
+            ingest(batch, null);
+        }
+        long ingestNanos = System.nanoTime() - start;
+        Debug.stopAllocCounting();
+        int ingestAllocs = Debug.getThreadAllocCount();
+
+        Log.i(LOG_TAG, "bulkInsert: " + rows * 1000000000L / bulkInsertNanos + " rows/s, "
+                + bulkInsertAllocs / rows + " allocations/row; ingest: "
+                + rows * 1000000000L / ingestNanos + " rows/s, "
+                + ingestAllocs / rows + " allocations/row");
+        assertEquals(days, countWeather());
+        assertTrue("Error: ingest should allocate less than bulkInsert",
+                ingestAllocs < bulkInsertAllocs);
+    }
+}
@@ -0,0 +1,193 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Checks that the provider answers repeated weather queries for a location from memory, that
+    every write drops what it keeps, and measures what a hit saves.
+ */
+public class TestWeatherQueryCache extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherQueryCache.class.getSimpleName();
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    private long mLocationId;
+    private Uri mTodayUri;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        mLocationId = ContentUris.parseId(locationUri);
+        ContentValues[] values = new ContentValues[14];
+        for (int day = 0; day < values.length; day++) {
+            values[day] = TestUtilities.createWeatherValues(mLocationId);
+            values[day].put(WeatherEntry.COLUMN_DATE,
+                    TestUtilities.TEST_DATE + day * DAY_IN_MILLIS);
+        }
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values);
+        mTodayUri = WeatherEntry.buildWeatherLocationWithDate(
+                TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    // {hits, misses} so far.
+    private long[] stats() {
+        Bundle result = mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_QUERY_CACHE_STATS, null, null);
+        return new long[]{result.getLong(WeatherContract.KEY_HITS),
+                result.getLong(WeatherContract.KEY_MISSES)};
+    }
+
+    private double queryMaxTemp(Uri uri) {
+        Cursor cursor = mContext.getContentResolver().query(uri,
+                new String[]{WeatherEntry.COLUMN_MAX_TEMP}, null, null, null);
+        assertNotNull(cursor);
+        try {
+            assertTrue("Error: no weather for " + uri, cursor.moveToFirst());
+            return cursor.getDouble(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testRepeatedQueriesHit() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        long[] before = stats();
+        double first = queryMaxTemp(mTodayUri);
+        double second = queryMaxTemp(mTodayUri);
+        long[] after = stats();
+        assertEquals(first, second);
+        assertEquals(1, after[0] - before[0]);
+        assertEquals(1, after[1] - before[1]);
+
+        // A hit gives every row and column the database does.
+        String sortOrder = WeatherEntry.COLUMN_DATE + " ASC";
+        Uri fromTodayUri = WeatherEntry.buildWeatherLocationWithStartDate(
+                TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE);
+        mContext.getContentResolver().query(fromTodayUri, null, null, null, sortOrder).close();
+        Cursor fromCache = mContext.getContentResolver().query(fromTodayUri, null, null, null,
+                sortOrder);
+        WeatherDbHelper helper = new WeatherDbHelper(mContext);
+        Cursor fromDatabase = WeatherProvider.sWeatherByLocationSettingQueryBuilder.query(
+                helper.getReadableDatabase(), null,
+                WeatherProvider.sLocationSettingWithStartDateSelection,
+                new String[]{TestUtilities.TEST_LOCATION, Long.toString(TestUtilities.TEST_DATE)},
+                null, null, sortOrder);
+        try {
+            assertEquals(14, fromCache.getCount());
+            assertEquals(fromDatabase.getCount(), fromCache.getCount());
+            while (fromDatabase.moveToNext()) {
+                assertTrue(fromCache.moveToNext());
+                for (int i = 0; i < fromDatabase.getColumnCount(); i++) {
+                    assertEquals("Error: a hit differs from the database in "
+                                    + fromDatabase.getColumnName(i),
+                            fromDatabase.getString(i), fromCache.getString(i));
+                }
+            }
+        } finally {
+            fromDatabase.close();
+            fromCache.close();
+            helper.close();
+        }
+    }
+
+    public void testWritesInvalidate() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        queryMaxTemp(mTodayUri);
+
+        ContentValues values = TestUtilities.createWeatherValues(mLocationId);
+        values.put(WeatherEntry.COLUMN_MAX_TEMP, 30.0);
+        mContext.getContentResolver().insert(WeatherEntry.CONTENT_URI, values);
+        assertEquals("Error: insert left a stale result", 30.0, queryMaxTemp(mTodayUri));
+
+        values.put(WeatherEntry.COLUMN_MAX_TEMP, 31.0);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                new ContentValues[]{values});
+        assertEquals("Error: bulkInsert left a stale result", 31.0, queryMaxTemp(mTodayUri));
+
+        values.put(WeatherEntry.COLUMN_MAX_TEMP, 32.0);
+        mContext.getContentResolver().update(WeatherEntry.CONTENT_URI, values,
+                WeatherEntry.COLUMN_DATE + " = ?",
+                new String[]{Long.toString(TestUtilities.TEST_DATE)});
+        assertEquals("Error: update left a stale result", 32.0, queryMaxTemp(mTodayUri));
+
+        WeatherBatch batch = new WeatherBatch(1);
+        batch.add(mLocationId, TestUtilities.TEST_DATE, "Clear", 800, 8.5, 33.0,
+                60, 1013.25, 3.5, 270.0);
+        Bundle extras = new Bundle();
+        batch.writeTo(extras);
+        mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_INGEST_WEATHER, null, extras);
+        assertEquals("Error: ingest left a stale result", 33.0, queryMaxTemp(mTodayUri));
+
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        Cursor cursor = mContext.getContentResolver().query(mTodayUri, null, null, null, null);
+        assertEquals("Error: delete left a stale result", 0, cursor.getCount());
+        cursor.close();
+    }
+
+    /*
+        Latency of the query of today's weather that the watch face, the notification and the
+        today widget run, answered from memory versus from the database.  An insert of a location
+        nobody asks for between two queries makes every one of them a miss.
+     */
+    public void testQueryCacheBenchmark() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return;
+        }
+        int queries = 200;
+
+        long missNanos = 0;
+        ContentValues otherLocation = TestUtilities.createNorthPoleLocationValues();
+        for (int i = 0; i < queries; i++) {
+            otherLocation.put(LocationEntry.COLUMN_LOCATION_SETTING, "miss" + i);
+            mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, otherLocation);
+            long start = System.nanoTime();
+            queryMaxTemp(mTodayUri);
+            missNanos += System.nanoTime() - start;
+        }
+
+        queryMaxTemp(mTodayUri);
+        long[] before = stats();
+        long start = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            queryMaxTemp(mTodayUri);
+        }
+        long hitNanos = System.nanoTime() - start;
+        long[] after = stats();
+
+        Log.i(LOG_TAG, "Today's weather: " + missNanos / queries / 1000 + " us from the database, "
+                + hitNanos / queries / 1000 + " us from the cache");
+        assertEquals(queries, after[0] - before[0]);
+        assertEquals(0, after[1] - before[1]);
+        assertTrue("Error: a hit should be faster than a miss", hitNanos < missNanos);
+    }
+}
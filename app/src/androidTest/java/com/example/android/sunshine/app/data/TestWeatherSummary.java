@@ -0,0 +1,174 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/*
+    Checks the today and week summary calls of the provider against the weather query they
+    replace for the watch face, the widgets, Muzei and the notification, and compares their cost.
+ */
+public class TestWeatherSummary extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherSummary.class.getSimpleName();
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    private static final int DAYS = 14;
+
+    // What TodaySnapshot asked for before the summaries.
+    private static final String[] TODAY_PROJECTION = new String[] {
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_SHORT_DESC
+    };
+
+    private Bundle mDate;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues());
+        long locationId = ContentUris.parseId(locationUri);
+        ContentValues[] values = new ContentValues[DAYS];
+        for (int day = 0; day < DAYS; day++) {
+            values[day] = TestUtilities.createWeatherValues(locationId);
+            values[day].put(WeatherEntry.COLUMN_DATE,
+                    TestUtilities.TEST_DATE + day * DAY_IN_MILLIS);
+            values[day].put(WeatherEntry.COLUMN_MAX_TEMP, 75 + day);
+            values[day].put(WeatherEntry.COLUMN_WEATHER_ID, 800 + day);
+        }
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI, values);
+        mDate = new Bundle();
+        mDate.putLong(WeatherEntry.COLUMN_DATE, TestUtilities.TEST_DATE);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    private Bundle call(String method, String locationSetting, Bundle extras) {
+        return mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI, method,
+                locationSetting, extras);
+    }
+
+    public void testTodaySummary() {
+        Bundle today = call(WeatherContract.METHOD_TODAY_SUMMARY, TestUtilities.TEST_LOCATION,
+                mDate);
+        assertNotNull(today);
+        assertEquals(TestUtilities.TEST_DATE, today.getLong(WeatherEntry.COLUMN_DATE));
+        assertEquals(800, today.getInt(WeatherEntry.COLUMN_WEATHER_ID));
+        assertEquals(75.0, today.getDouble(WeatherEntry.COLUMN_MAX_TEMP));
+        assertEquals(65.0, today.getDouble(WeatherEntry.COLUMN_MIN_TEMP));
+        assertEquals("Asteroids", today.getString(WeatherEntry.COLUMN_SHORT_DESC));
+
+        // A later day stored is the first one from that day on.
+        Bundle date = new Bundle();
+        date.putLong(WeatherEntry.COLUMN_DATE, TestUtilities.TEST_DATE + 3 * DAY_IN_MILLIS);
+        today = call(WeatherContract.METHOD_TODAY_SUMMARY, TestUtilities.TEST_LOCATION, date);
+        assertEquals(78.0, today.getDouble(WeatherEntry.COLUMN_MAX_TEMP));
+
+        assertNull(call(WeatherContract.METHOD_TODAY_SUMMARY, "10001", mDate));
+    }
+
+    public void testWeekSummary() {
+        Bundle week = call(WeatherContract.METHOD_WEEK_SUMMARY, TestUtilities.TEST_LOCATION,
+                mDate);
+        long[] dates = week.getLongArray(WeatherEntry.COLUMN_DATE);
+        int[] weatherIds = week.getIntArray(WeatherEntry.COLUMN_WEATHER_ID);
+        double[] highs = week.getDoubleArray(WeatherEntry.COLUMN_MAX_TEMP);
+        double[] lows = week.getDoubleArray(WeatherEntry.COLUMN_MIN_TEMP);
+        assertEquals(WeatherContract.WEEK_SUMMARY_DAYS, dates.length);
+        for (int day = 0; day < dates.length; day++) {
+            assertEquals(TestUtilities.TEST_DATE + day * DAY_IN_MILLIS, dates[day]);
+            assertEquals(800 + day, weatherIds[day]);
+            assertEquals(75.0 + day, highs[day]);
+            assertEquals(65.0, lows[day]);
+        }
+
+        // Fewer days than a week are all there is.
+        Bundle date = new Bundle();
+        date.putLong(WeatherEntry.COLUMN_DATE,
+                TestUtilities.TEST_DATE + (DAYS - 2) * DAY_IN_MILLIS);
+        week = call(WeatherContract.METHOD_WEEK_SUMMARY, TestUtilities.TEST_LOCATION, date);
+        assertEquals(2, week.getLongArray(WeatherEntry.COLUMN_DATE).length);
+
+        week = call(WeatherContract.METHOD_WEEK_SUMMARY, "10001", mDate);
+        assertEquals(0, week.getLongArray(WeatherEntry.COLUMN_DATE).length);
+    }
+
+    public void testSummaryFollowsWrites() {
+        call(WeatherContract.METHOD_TODAY_SUMMARY, TestUtilities.TEST_LOCATION, mDate);
+        ContentValues values = new ContentValues();
+        values.put(WeatherEntry.COLUMN_MAX_TEMP, 90.0);
+        mContext.getContentResolver().update(WeatherEntry.CONTENT_URI, values,
+                WeatherEntry.COLUMN_DATE + " = ?",
+                new String[]{Long.toString(TestUtilities.TEST_DATE)});
+        Bundle today = call(WeatherContract.METHOD_TODAY_SUMMARY, TestUtilities.TEST_LOCATION,
+                mDate);
+        assertEquals("Error: the summary is stale", 90.0,
+                today.getDouble(WeatherEntry.COLUMN_MAX_TEMP));
+    }
+
+    /*
+        Time and allocations of reading today's weather the way TodaySnapshot used to, through a
+        query of one day, versus through the today summary.  Both read an unchanged database, as
+        the consumers do between two syncs.
+     */
+    @SuppressWarnings("deprecation")
+    public void testSummaryBenchmark() {
+        int reads = 500;
+        Uri todayUri = WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION,
+                TestUtilities.TEST_DATE);
+        double high = 0;
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        long start = System.nanoTime();
+        for (int i = 0; i < reads; i++) {
+            Cursor cursor = mContext.getContentResolver().query(todayUri, TODAY_PROJECTION,
+                    null, null, null);
+            assertTrue(cursor.moveToFirst());
+            high += cursor.getDouble(cursor.getColumnIndex(WeatherEntry.COLUMN_MAX_TEMP));
+            cursor.close();
+        }
+        long cursorNanos = System.nanoTime() - start;
+        Debug.stopAllocCounting();
+        int cursorAllocs = Debug.getThreadAllocCount();
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        start = System.nanoTime();
+        for (int i = 0; i < reads; i++) {
+            Bundle today = call(WeatherContract.METHOD_TODAY_SUMMARY,
+                    TestUtilities.TEST_LOCATION, mDate);
+            high -= today.getDouble(WeatherEntry.COLUMN_MAX_TEMP);
+        }
+        long summaryNanos = System.nanoTime() - start;
+        Debug.stopAllocCounting();
+        int summaryAllocs = Debug.getThreadAllocCount();
+
+        Log.i(LOG_TAG, "Today's weather: cursor " + cursorNanos / reads / 1000 + " us, "
+                + cursorAllocs / reads + " allocations per read; summary "
+                + summaryNanos / reads / 1000 + " us, " + summaryAllocs / reads
+                + " allocations per read");
+        assertEquals("Error: the summary and the cursor disagree", 0.0, high);
+    }
+}
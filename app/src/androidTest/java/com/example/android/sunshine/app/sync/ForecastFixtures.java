@@ -0,0 +1,149 @@
+package com.example.android.sunshine.app.sync;
+
+import com.example.android.sunshine.app.utils.StubHttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.nio.charset.Charset;
+import java.util.Locale;
+
+/**
+ * Forecast payloads shaped like recorded OpenWeatherMap daily forecast responses, for the
+ * sync tests and benchmarks.
+ */
+public class ForecastFixtures {
+
+    static final String CITY_NAME = "Mountain View";
+    static final double CITY_LAT = 37.3861;
+    static final double CITY_LON = -122.0839;
+
+    private static final String[] DESCRIPTIONS = {"Clear", "Clouds", "Rain", "Snow"};
+    private static final int[] WEATHER_IDS = {800, 803, 500, 600};
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Builds a successful response with {@code numDays} days.  {@code seed} shifts the values,
+     * so two payloads with different seeds differ on every day.
+     */
+    public static String forecast(int numDays, int seed) {
+        StringBuilder json = new StringBuilder(800 + numDays * 400);
+        json.append(header(numDays));
+        for (int i = 0; i < numDays; i++) {
+            json.append(day(i, seed));
+        }
+        json.append(FOOTER);
+        return json.toString();
+    }
+
+    /**
+     * The same response as {@link #forecast(int, int)}, generated a day at a time as it is read,
+     * the way it arrives off the network, so that it is never held in memory as a whole.
+     */
+    public static InputStream forecastStream(final int numDays, final int seed) {
+        return new InputStream() {
+            // The day of the next chunk; -1 for the header, numDays for the footer.
+            private int mNextDay = -1;
+            private byte[] mChunk = new byte[0];
+            private int mPosition;
+
+            private boolean nextChunk() {
+                String chunk;
+                if (mNextDay == -1) {
+                    chunk = header(numDays);
+                } else if (mNextDay < numDays) {
+                    chunk = day(mNextDay, seed);
+                } else if (mNextDay == numDays) {
+                    chunk = FOOTER;
+                } else {
+                    return false;
+                }
+                mNextDay++;
+                mChunk = chunk.getBytes(UTF_8);
+                mPosition = 0;
+                return true;
+            }
+
+            @Override
+            public int read() {
+                if (mPosition == mChunk.length && !nextChunk()) {
+                    return -1;
+                }
+                return mChunk[mPosition++] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) {
+                if (length == 0) {
+                    return 0;
+                }
+                if (mPosition == mChunk.length && !nextChunk()) {
+                    return -1;
+                }
+                int count = Math.min(length, mChunk.length - mPosition);
+                System.arraycopy(mChunk, mPosition, buffer, offset, count);
+                mPosition += count;
+                return count;
+            }
+        };
+    }
+
+    private static final String FOOTER = "]}";
+
+    private static String header(int numDays) {
+        return "{\"city\":{\"id\":5375480,\"name\":\"" + CITY_NAME
+                + "\",\"coord\":{\"lon\":" + CITY_LON + ",\"lat\":" + CITY_LAT
+                + "},\"country\":\"US\",\"population\":0},"
+                + "\"cod\":\"200\",\"message\":0.0123,\"cnt\":" + numDays + ",\"list\":[";
+    }
+
+    // Day i of the list, with the comma that separates it from the day before.
+    private static String day(int i, int seed) {
+        int k = (i + seed) % DESCRIPTIONS.length;
+        return (i > 0 ? "," : "") + String.format(Locale.US,
+                "{\"dt\":%d,\"temp\":{\"day\":%.2f,\"min\":%.2f,\"max\":%.2f,\"night\":%.2f,"
+                        + "\"eve\":%.2f,\"morn\":%.2f},\"pressure\":%.2f,\"humidity\":%d,"
+                        + "\"weather\":[{\"id\":%d,\"main\":\"%s\",\"description\":\"%s\","
+                        + "\"icon\":\"01d\"}],\"speed\":%.2f,\"deg\":%d,\"clouds\":%d}",
+                1460145600L + i * 86400L,
+                15.5 + seed, 8.25 + i + seed, 21.75 + i + seed, 10.0, 18.0, 9.0,
+                1013.5 + i, 60 + i, WEATHER_IDS[k], DESCRIPTIONS[k],
+                DESCRIPTIONS[k].toLowerCase(Locale.US), 3.5 + seed, (i * 30) % 360, 20);
+    }
+
+    /**
+     * A response with the list ahead of the city, which the streaming parser must still accept.
+     */
+    public static String forecastWithCityLast(int numDays) {
+        String forecast = forecast(numDays, 0);
+        int listStart = forecast.indexOf("\"cod\"");
+        return "{" + forecast.substring(listStart, forecast.length() - 1) + ","
+                + forecast.substring(1, listStart - 1) + "}";
+    }
+
+    /**
+     * Serves forecasts like the OpenWeatherMap daily forecast endpoint, honouring the "cnt"
+     * parameter and gzip.  Locations starting with "0" are unknown cities.
+     */
+    public static StubHttpServer.Responder responder() {
+        return new StubHttpServer.Responder() {
+            @Override
+            public StubHttpServer.Response respond(StubHttpServer.Request request)
+                    throws IOException {
+                android.net.Uri uri = android.net.Uri.parse(request.path);
+                String location = uri.getQueryParameter("q");
+                if (location == null || location.startsWith("0")) {
+                    return StubHttpServer.Response.of(HttpURLConnection.HTTP_OK, notFound());
+                }
+                String cnt = uri.getQueryParameter("cnt");
+                int numDays = cnt == null ? 7 : Integer.parseInt(cnt);
+                return StubHttpServer.Response.of(HttpURLConnection.HTTP_OK,
+                        forecast(numDays, location.hashCode() & 3)).gzipFor(request);
+            }
+        };
+    }
+
+    public static String notFound() {
+        return "{\"cod\":\"404\",\"message\":\"Error: Not found city\"}";
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.android.sunshine.app.sync;
+
+import android.database.MatrixCursor;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherBatch;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+public class TestForecastDiff extends AndroidTestCase {
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    private static final long FIRST_DAY = WeatherContract.normalizeDate(1460160000000L);
+
+    static void addDay(WeatherBatch batch, int day, double high, String description) {
+        batch.add(1L, FIRST_DAY + day * DAY_IN_MILLIS, description, 800, 8.5, high, 60, 1013.25,
+                3.5, 270.0);
+    }
+
+    static void addStoredRow(MatrixCursor cursor, int day, double high, String description) {
+        // in the order of ForecastDiff.COMPARED_COLUMNS
+        cursor.addRow(new Object[]{FIRST_DAY + day * DAY_IN_MILLIS, description, 800, 8.5, high,
+                60.0, 1013.25, 3.5, 270.0});
+    }
+
+    public void testDiff() {
+        MatrixCursor stored = new MatrixCursor(ForecastDiff.COMPARED_COLUMNS);
+        addStoredRow(stored, 0, 20.0, "Clear");
+        addStoredRow(stored, 1, 21.0, "Clear");
+        addStoredRow(stored, 2, 22.0, "Clear");
+
+        WeatherBatch incoming = new WeatherBatch(4);
+        addDay(incoming, 0, 20.0, "Clear");  // unchanged
+        addDay(incoming, 1, 21.0, "Rain");   // new description
+        addDay(incoming, 2, 23.5, "Clear");  // new high
+        addDay(incoming, 3, 19.0, "Clouds"); // new day
+
+        ForecastDiff diff = ForecastDiff.compute(stored, incoming);
+        stored.close();
+
+        assertEquals(1, diff.getUnchangedCount());
+        assertEquals(2, diff.getUpdatedCount());
+        assertEquals(1, diff.getInsertedCount());
+        assertTrue(diff.hasChanges());
+
+        WeatherBatch changed = diff.getChangedRows();
+        assertEquals(3, changed.size());
+        assertEquals("Rain", changed.getShortDesc(0));
+    }
+
+    public void testNothingChanged() {
+        MatrixCursor stored = new MatrixCursor(ForecastDiff.COMPARED_COLUMNS);
+        WeatherBatch incoming = new WeatherBatch(14);
+        for (int day = 0; day < 14; day++) {
+            addStoredRow(stored, day, 20.0 + day, "Clear");
+            addDay(incoming, day, 20.0 + day, "Clear");
+        }
+
+        ForecastDiff diff = ForecastDiff.compute(stored, incoming);
+        stored.close();
+
+        assertFalse("Error: an identical forecast should not be written", diff.hasChanges());
+        assertEquals(14, diff.getUnchangedCount());
+    }
+
+    public void testEmptyStore() {
+        WeatherBatch incoming = new WeatherBatch(1);
+        addDay(incoming, 0, 20.0, "Clear");
+
+        ForecastDiff diff = ForecastDiff.compute(null, incoming);
+        assertEquals(1, diff.getInsertedCount());
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+public class TestForecastFreshness extends AndroidTestCase {
+
+    private static final long TTL = 3 * 60 * 60 * 1000L;
+    private static final long MAX_AGE = 12 * 60 * 60 * 1000L;
+
+    private ForecastFreshness mFreshness;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        clearPrefs();
+        mFreshness = new ForecastFreshness(mContext);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        clearPrefs();
+        super.tearDown();
+    }
+
+    private void clearPrefs() {
+        mContext.getSharedPreferences(ForecastFreshness.PREFS_NAME, 0).edit().clear().commit();
+    }
+
+    public void testStateOf() {
+        long now = 100 * MAX_AGE;
+        assertEquals(ForecastFreshness.STATE_MISSING,
+                ForecastFreshness.stateOf(0, now, TTL, MAX_AGE));
+        assertEquals(ForecastFreshness.STATE_FRESH,
+                ForecastFreshness.stateOf(now - TTL + 1, now, TTL, MAX_AGE));
+        assertEquals(ForecastFreshness.STATE_STALE,
+                ForecastFreshness.stateOf(now - TTL, now, TTL, MAX_AGE));
+        assertEquals(ForecastFreshness.STATE_STALE,
+                ForecastFreshness.stateOf(now - MAX_AGE + 1, now, TTL, MAX_AGE));
+        assertEquals(ForecastFreshness.STATE_EXPIRED,
+                ForecastFreshness.stateOf(now - MAX_AGE, now, TTL, MAX_AGE));
+    }
+
+    public void testRecordSync() {
+        assertEquals(ForecastFreshness.STATE_MISSING, mFreshness.getState("94043"));
+
+        long now = System.currentTimeMillis();
+        mFreshness.recordSync("94043", now);
+        assertEquals(now, mFreshness.getLastSynced("94043"));
+        assertEquals(ForecastFreshness.STATE_FRESH, mFreshness.getState("94043"));
+        assertEquals("Error: other locations should not be affected",
+                ForecastFreshness.STATE_MISSING, mFreshness.getState("99705"));
+
+        mFreshness.recordSync("99705", now - ForecastFreshness.DEFAULT_TTL_MILLIS);
+        assertEquals(ForecastFreshness.STATE_STALE, mFreshness.getState("99705"));
+    }
+
+    public void testBounds() {
+        assertEquals(ForecastFreshness.DEFAULT_TTL_MILLIS, mFreshness.getTtlMillis());
+        assertEquals(ForecastFreshness.DEFAULT_MAX_AGE_MILLIS, mFreshness.getMaxAgeMillis());
+
+        mFreshness.setBounds(1000, 2000);
+        mFreshness.recordSync("94043", System.currentTimeMillis() - 2000);
+        assertEquals(ForecastFreshness.STATE_EXPIRED, mFreshness.getState("94043"));
+
+        try {
+            mFreshness.setBounds(2000, 1000);
+            fail("Error: a max age below the TTL should be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
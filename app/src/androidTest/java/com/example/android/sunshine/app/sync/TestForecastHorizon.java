@@ -0,0 +1,106 @@
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.utils.StubHttpServer;
+
+import java.io.InputStream;
+
+public class TestForecastHorizon extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastHorizon.class.getSimpleName();
+
+    private static final long HOUR = 60 * 60 * 1000L;
+    private static final long DAY = 24 * HOUR;
+
+    private ForecastHorizon mHorizon;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        clearPrefs();
+        mHorizon = new ForecastHorizon(mContext);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        clearPrefs();
+        super.tearDown();
+    }
+
+    private void clearPrefs() {
+        mContext.getSharedPreferences(ForecastHorizon.PREFS_NAME, 0).edit().clear().commit();
+    }
+
+    public void testDaysFor() {
+        long now = 10 * DAY;
+        assertEquals("Error: a location never fully synced should get the full horizon",
+                ForecastHorizon.FULL_DAYS, ForecastHorizon.daysFor(3, 0, now, DAY));
+        assertEquals(3, ForecastHorizon.daysFor(3, now - HOUR, now, DAY));
+        assertEquals(ForecastHorizon.FULL_DAYS, ForecastHorizon.daysFor(3, now - DAY, now, DAY));
+        assertEquals(ForecastHorizon.MIN_DAYS, ForecastHorizon.daysFor(0, now - HOUR, now, DAY));
+        assertEquals(ForecastHorizon.FULL_DAYS,
+                ForecastHorizon.daysFor(40, now - HOUR, now, DAY));
+    }
+
+    public void testNeeds() {
+        long now = 10 * DAY;
+        assertEquals(ForecastHorizon.MIN_DAYS, mHorizon.getNeededDays(now));
+
+        mHorizon.recordNeed(ForecastHorizon.CONSUMER_FORECAST_LIST, 4, now);
+        mHorizon.recordNeed(ForecastHorizon.CONSUMER_DETAIL_WIDGET, 7, now - 8 * DAY);
+        assertEquals("Error: an old need should be forgotten", 4, mHorizon.getNeededDays(now));
+
+        mHorizon.recordSync("94043", ForecastHorizon.FULL_DAYS, now - HOUR);
+        assertEquals(4, mHorizon.daysForSync("94043", now));
+        mHorizon.recordSync("94043", 4, now);
+        assertEquals("Error: a short sync should not postpone the full horizon",
+                ForecastHorizon.FULL_DAYS, mHorizon.daysForSync("94043", now + DAY - HOUR));
+    }
+
+    private static long downloadBytes(OpenWeatherMapSource source, int numDays) throws Exception {
+        SyncHttpClient.Response response = SyncHttpClient.getInstance()
+                .get(source.buildUrl(new ForecastRequest("94043", numDays, "metric")), null);
+        try {
+            InputStream body = response.getBody();
+            byte[] buffer = new byte[4096];
+            while (body.read(buffer) != -1) {
+                // count only
+            }
+            return response.getWireBytes();
+        } finally {
+            response.close();
+        }
+    }
+
+    /*
+        Bytes downloaded over two days of 3 hourly syncs, always asking for the full horizon
+        versus asking for the 3 days the list shows and the full horizon once a day.
+     */
+    public void testBytesPerSync() throws Exception {
+        StubHttpServer server = new StubHttpServer(ForecastFixtures.responder());
+        try {
+            OpenWeatherMapSource source = new OpenWeatherMapSource(
+                    server.getUrl() + "/data/2.5/forecast/daily?", "test-key");
+            mHorizon.recordNeed(ForecastHorizon.CONSUMER_FORECAST_LIST, 3, 0);
+
+            int syncs = 16;
+            long fullBytes = 0;
+            long adaptiveBytes = 0;
+            for (int i = 0; i < syncs; i++) {
+                long now = i * 3 * HOUR;
+                fullBytes += downloadBytes(source, ForecastHorizon.FULL_DAYS);
+                int days = mHorizon.daysForSync("94043", now);
+                adaptiveBytes += downloadBytes(source, days);
+                mHorizon.recordSync("94043", days, now);
+            }
+            Log.i(LOG_TAG, "Bytes per sync: full horizon " + fullBytes / syncs
+                    + ", adaptive horizon " + adaptiveBytes / syncs);
+            assertTrue("Error: the adaptive horizon should download less",
+                    adaptiveBytes < fullBytes);
+        } finally {
+            server.shutdown();
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.android.sunshine.app.sync;
+
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import org.json.JSONException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+
+public class TestForecastJsonParser extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastJsonParser.class.getSimpleName();
+
+    private static final int BENCHMARK_ROUNDS = 50;
+    // A payload large enough for what the parsers hold to stand out of the heap noise.
+    private static final int HEAP_BENCHMARK_DAYS = 2000;
+    private static final int HEAP_SAMPLE_DAYS = 250;
+
+    /*
+        Collects everything the parser reports, copying the reused Day instance.
+     */
+    static class RecordingHandler implements ForecastJsonParser.Handler {
+        int mCode = HttpURLConnection.HTTP_OK;
+        String mCityName;
+        double mLat;
+        double mLon;
+        final ArrayList<String> mDays = new ArrayList<String>();
+
+        @Override
+        public boolean onMessageCode(int code) {
+            mCode = code;
+            return code == HttpURLConnection.HTTP_OK;
+        }
+
+        @Override
+        public void onCity(String cityName, double lat, double lon) {
+            mCityName = cityName;
+            mLat = lat;
+            mLon = lon;
+        }
+
+        @Override
+        public void onDay(ForecastJsonParser.Day day) {
+            mDays.add(day.index + "|" + day.pressure + "|" + day.humidity + "|" + day.windSpeed
+                    + "|" + day.windDirection + "|" + day.high + "|" + day.low + "|"
+                    + day.description + "|" + day.weatherId);
+        }
+    }
+
+    public void testStreamingMatchesTree() throws Throwable {
+        String json = ForecastFixtures.forecast(14, 1);
+
+        RecordingHandler tree = new RecordingHandler();
+        ForecastJsonParser.parseTree(json, tree);
+        RecordingHandler stream = new RecordingHandler();
+        ForecastJsonParser.parse(new StringReader(json), stream);
+
+        assertEquals(ForecastFixtures.CITY_NAME, stream.mCityName);
+        assertEquals(ForecastFixtures.CITY_LAT, stream.mLat);
+        assertEquals(ForecastFixtures.CITY_LON, stream.mLon);
+        assertEquals("Error: streaming parser returned a different number of days",
+                14, stream.mDays.size());
+        assertEquals("Error: streaming and tree parsers disagree", tree.mDays, stream.mDays);
+    }
+
+    public void testCityAfterList() throws Throwable {
+        RecordingHandler stream = new RecordingHandler();
+        ForecastJsonParser.parse(new StringReader(ForecastFixtures.forecastWithCityLast(7)), stream);
+
+        assertEquals(ForecastFixtures.CITY_NAME, stream.mCityName);
+        assertEquals(7, stream.mDays.size());
+    }
+
+    public void testErrorCodeStopsParsing() throws Throwable {
+        RecordingHandler stream = new RecordingHandler();
+        ForecastJsonParser.parse(new StringReader(ForecastFixtures.notFound()), stream);
+
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND, stream.mCode);
+        assertNull(stream.mCityName);
+        assertTrue(stream.mDays.isEmpty());
+    }
+
+    public void testMalformedResponse() throws Throwable {
+        String json = ForecastFixtures.forecast(3, 0);
+        try {
+            ForecastJsonParser.parse(new StringReader(json.substring(0, json.length() / 2) + "}"),
+                    new RecordingHandler());
+            fail("Error: a truncated response should not parse");
+        } catch (JSONException expected) {
+        } catch (java.io.EOFException expected) {
+        }
+    }
+
+    /*
+        Counts the days and samples the live heap every HEAP_SAMPLE_DAYS days, without keeping
+        anything it is handed.
+     */
+    static class PeakHeapHandler implements ForecastJsonParser.Handler {
+        final long mBaseline;
+        long mPeak;
+        int mDays;
+
+        PeakHeapHandler(long baseline) {
+            mBaseline = baseline;
+        }
+
+        @Override
+        public boolean onMessageCode(int code) {
+            return code == HttpURLConnection.HTTP_OK;
+        }
+
+        @Override
+        public void onCity(String cityName, double lat, double lon) {
+        }
+
+        @Override
+        public void onDay(ForecastJsonParser.Day day) {
+            if (mDays++ % HEAP_SAMPLE_DAYS == 0) {
+                mPeak = Math.max(mPeak, usedHeap() - mBaseline);
+            }
+        }
+    }
+
+    static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        runtime.gc();
+        runtime.runFinalization();
+        runtime.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    // Reads the whole response into a String first, the way the sync did before streaming.
+    private static void parseTree(InputStream in, ForecastJsonParser.Handler handler)
+            throws IOException, JSONException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        StringBuffer buffer = new StringBuffer();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            buffer.append(line + "\n");
+        }
+        ForecastJsonParser.parseTree(buffer.toString(), handler);
+    }
+
+    private static void parseStream(InputStream in, ForecastJsonParser.Handler handler)
+            throws IOException, JSONException {
+        ForecastJsonParser.parse(new InputStreamReader(in, "UTF-8"), handler);
+    }
+
+    /*
+        Peak heap growth while parsing a long forecast as it streams in, through the tree parser,
+        which holds the whole payload and its object tree, and through the streaming parser,
+        which should only hold its buffers.  Both read from a stream that generates the payload
+        a day at a time, so that the payload itself is not in memory before parsing.
+     */
+    public void testPeakHeap() throws Throwable {
+        int numDays = HEAP_BENCHMARK_DAYS;
+
+        PeakHeapHandler tree = new PeakHeapHandler(usedHeap());
+        parseTree(ForecastFixtures.forecastStream(numDays, 0), tree);
+        PeakHeapHandler stream = new PeakHeapHandler(usedHeap());
+        parseStream(ForecastFixtures.forecastStream(numDays, 0), stream);
+
+        Log.i(LOG_TAG, numDays + " days: peak heap growth tree " + tree.mPeak / 1024
+                + "KB, stream " + stream.mPeak / 1024 + "KB");
+        assertEquals(numDays, tree.mDays);
+        assertEquals(numDays, stream.mDays);
+        assertTrue("Error: the streaming parser should hold less of the payload than the tree "
+                + "parser", stream.mPeak < tree.mPeak);
+    }
+
+    /*
+        Time per sync of the two parsers over the recorded payload sizes, both reading from a
+        stream as they do off the connection.
+     */
+    public void testParseBenchmark() throws Throwable {
+        for (int numDays : new int[] {1, 7, 14}) {
+            // warm up both paths
+            for (int i = 0; i < 5; i++) {
+                parseTree(ForecastFixtures.forecastStream(numDays, 0), new RecordingHandler());
+                parseStream(ForecastFixtures.forecastStream(numDays, 0), new RecordingHandler());
+            }
+
+            long start = SystemClock.elapsedRealtimeNanos();
+            for (int i = 0; i < BENCHMARK_ROUNDS; i++) {
+                parseTree(ForecastFixtures.forecastStream(numDays, 0), new RecordingHandler());
+            }
+            long treeNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+            start = SystemClock.elapsedRealtimeNanos();
+            for (int i = 0; i < BENCHMARK_ROUNDS; i++) {
+                parseStream(ForecastFixtures.forecastStream(numDays, 0), new RecordingHandler());
+            }
+            long streamNanos = SystemClock.elapsedRealtimeNanos() - start;
+
+            Log.i(LOG_TAG, numDays + " days: tree " + treeNanos / BENCHMARK_ROUNDS / 1000
+                    + "us, stream " + streamNanos / BENCHMARK_ROUNDS / 1000 + "us per sync");
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.utils.StubHttpServer;
+
+import java.net.HttpURLConnection;
+
+public class TestForecastValidators extends AndroidTestCase {
+
+    private static final String ETAG = "\"forecast-v1\"";
+    private static final String LAST_MODIFIED = "Fri, 08 Apr 2016 12:00:00 GMT";
+
+    private StubHttpServer mServer;
+    private OpenWeatherMapSource mSource;
+    private ForecastValidators mValidators;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.getSharedPreferences(ForecastValidators.PREFS_NAME, Context.MODE_PRIVATE)
+                .edit().clear().commit();
+        mValidators = new ForecastValidators(mContext);
+
+        // Answers like a server honouring If-None-Match for a forecast that never changes.
+        mServer = new StubHttpServer(new StubHttpServer.Responder() {
+            @Override
+            public StubHttpServer.Response respond(StubHttpServer.Request request) {
+                if (ETAG.equals(request.headers.get("if-none-match"))) {
+                    return StubHttpServer.Response.of(HttpURLConnection.HTTP_NOT_MODIFIED, "");
+                }
+                return StubHttpServer.Response.of(HttpURLConnection.HTTP_OK,
+                        ForecastFixtures.forecast(14, 0))
+                        .header("ETag", ETAG)
+                        .header("Last-Modified", LAST_MODIFIED);
+            }
+        });
+        mSource = new OpenWeatherMapSource(mServer.getUrl() + "/data/2.5/forecast/daily?",
+                "test-key");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    // Fetches through the header map OpenWeatherMapSource hands to SyncHttpClient.
+    private Forecast fetch(String locationSetting, boolean conditional) throws Throwable {
+        ForecastRequest request = new ForecastRequest(locationSetting, 14, "metric");
+        if (conditional) {
+            mValidators.applyTo(request, ForecastValidators.requestKey(locationSetting, 14));
+        }
+        return mSource.fetch(request);
+    }
+
+    private void store(String locationSetting, Forecast forecast) {
+        mValidators.store(ForecastValidators.requestKey(locationSetting, 14),
+                forecast.etag, forecast.lastModified, mSource.getName());
+    }
+
+    public void testRevalidation() throws Throwable {
+        Forecast first = fetch("94043", true);
+        assertFalse(first.notModified);
+        assertNull("Error: first request must not be conditional",
+                mServer.getRequests().get(0).headers.get("if-none-match"));
+        assertEquals(ETAG, first.etag);
+        store("94043", first);
+
+        ForecastRequest request = new ForecastRequest("94043", 14, "metric");
+        assertTrue(mValidators.applyTo(request, ForecastValidators.requestKey("94043", 14)));
+        assertEquals(mSource.getName(), request.validatorSource);
+
+        Forecast second = fetch("94043", true);
+        assertTrue("Error: stored validators should make the server answer 304",
+                second.notModified);
+        assertEquals(LAST_MODIFIED,
+                mServer.getRequests().get(1).headers.get("if-modified-since"));
+    }
+
+    public void testValidatorsArePerRequest() throws Throwable {
+        store("94043", fetch("94043", false));
+
+        assertFalse(fetch("10001", true).notModified);
+
+        mValidators.clear(ForecastValidators.requestKey("94043", 14));
+        assertFalse("Error: cleared validators must not be sent",
+                fetch("94043", true).notModified);
+    }
+
+    public void testCounters() {
+        mValidators.recordHit();
+        mValidators.recordHit();
+        mValidators.recordMiss();
+        assertEquals(2, mValidators.getHits());
+        assertEquals(1, mValidators.getMisses());
+    }
+}
@@ -0,0 +1,191 @@
+package com.example.android.sunshine.app.sync;
+
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.utils.StubHttpServer;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+    Hedges between two local fixture servers whose latency and health the tests control.
+ */
+public class TestHedgedWeatherSource extends AndroidTestCase {
+
+    private static final long DEFAULT_HEDGE_MILLIS = 200;
+    private static final long MIN_HEDGE_MILLIS = 50;
+    private static final long MAX_HEDGE_MILLIS = 1000;
+    private static final long SLOW_MILLIS = 1500;
+
+    private StubHttpServer mPrimary;
+    private StubHttpServer mSecondary;
+    private volatile long mPrimaryDelay;
+    private volatile long mSecondaryDelay;
+    private volatile boolean mPrimaryDown;
+
+    private StubHttpServer.Responder delayed(final boolean primary) {
+        final StubHttpServer.Responder fixtures = ForecastFixtures.responder();
+        return new StubHttpServer.Responder() {
+            @Override
+            public StubHttpServer.Response respond(StubHttpServer.Request request)
+                    throws IOException {
+                if (primary && mPrimaryDown) {
+                    return StubHttpServer.Response.of(HttpURLConnection.HTTP_UNAVAILABLE, "");
+                }
+                return fixtures.respond(request).delay(primary ? mPrimaryDelay : mSecondaryDelay);
+            }
+        };
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrimary = new StubHttpServer(delayed(true));
+        mSecondary = new StubHttpServer(delayed(false));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPrimary.shutdown();
+        mSecondary.shutdown();
+        super.tearDown();
+    }
+
+    private static OpenWeatherMapSource source(StubHttpServer server) {
+        return new OpenWeatherMapSource(server.getUrl() + "/data/2.5/forecast/daily?", "test-key");
+    }
+
+    private HedgedWeatherSource hedgedSource() {
+        List<WeatherSource> sources = new ArrayList<WeatherSource>();
+        sources.add(source(mPrimary));
+        sources.add(source(mSecondary));
+        return new HedgedWeatherSource(sources, DEFAULT_HEDGE_MILLIS, MIN_HEDGE_MILLIS,
+                MAX_HEDGE_MILLIS);
+    }
+
+    public void testFastPrimaryIsNotHedged() throws Throwable {
+        Forecast forecast = hedgedSource().fetch(new ForecastRequest("94043", 14, "metric"));
+        assertEquals(14, forecast.getDayCount());
+        assertEquals(source(mPrimary).getName(), forecast.source);
+        assertEquals(0, mSecondary.getRequests().size());
+    }
+
+    public void testSlowPrimaryIsHedged() throws Throwable {
+        mPrimaryDelay = SLOW_MILLIS;
+        long start = SystemClock.elapsedRealtime();
+        Forecast forecast = hedgedSource().fetch(new ForecastRequest("94043", 14, "metric"));
+        long elapsed = SystemClock.elapsedRealtime() - start;
+
+        assertEquals(source(mSecondary).getName(), forecast.source);
+        assertEquals(14, forecast.getDayCount());
+        assertTrue("Error: the hedged request should have answered before the primary, took "
+                + elapsed + "ms", elapsed < SLOW_MILLIS);
+        assertEquals(1, mPrimary.getRequests().size());
+    }
+
+    public void testFailingPrimaryFailsOver() throws Throwable {
+        mPrimaryDown = true;
+        mSecondaryDelay = 0;
+        ForecastRequest request = new ForecastRequest("94043", 14, "metric");
+        request.failures = new AtomicInteger();
+        Forecast forecast = hedgedSource().fetch(request);
+        assertEquals(source(mSecondary).getName(), forecast.source);
+        assertEquals("Error: the failure of the primary should be counted",
+                1, request.failures.get());
+    }
+
+    public void testErrorAnswerFailsOver() throws Throwable {
+        // The fixtures answer 200 with an error code in the body for these locations.
+        Forecast forecast = hedgedSource().fetch(new ForecastRequest("00000", 14, "metric"));
+        assertEquals(1, mSecondary.getRequests().size());
+        assertEquals("Error: the error of the backend asked first should be reported",
+                source(mPrimary).getName(), forecast.source);
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND, forecast.messageCode);
+    }
+
+    public void testOpenBreakerIsSkipped() throws Throwable {
+        List<WeatherSource> sources = new ArrayList<WeatherSource>();
+        sources.add(source(mPrimary));
+        sources.add(source(mSecondary));
+        SourceGuard guard = new SourceGuard(new RetryPolicy(1, 0, 0, new Random()),
+                new HostLimiter(2), 1, 60000, 60000);
+        HedgedWeatherSource hedged = new HedgedWeatherSource(sources, DEFAULT_HEDGE_MILLIS,
+                MIN_HEDGE_MILLIS, MAX_HEDGE_MILLIS, guard);
+
+        mPrimaryDown = true;
+        ForecastRequest request = new ForecastRequest("94043", 14, "metric");
+        request.failures = new AtomicInteger();
+        assertEquals(source(mSecondary).getName(), hedged.fetch(request).source);
+        assertEquals("Error: the guard should count the failure of the primary",
+                1, request.failures.get());
+        assertTrue(guard.breakerFor(source(mPrimary).getName())
+                .isOpen(System.currentTimeMillis()));
+        assertFalse("Error: the breaker should be kept per backend",
+                guard.breakerFor(source(mSecondary).getName())
+                        .isOpen(System.currentTimeMillis()));
+
+        hedged.fetch(new ForecastRequest("94043", 14, "metric"));
+        assertEquals("Error: a backend with an open breaker should not be asked",
+                1, mPrimary.getRequests().size());
+
+        mSecondary.shutdown();
+        try {
+            hedged.fetch(new ForecastRequest("94043", 14, "metric"));
+            fail("Error: the failure of the secondary should be reported");
+        } catch (RetryPolicy.CircuitOpenException e) {
+            fail("Error: the secondary should have been asked");
+        } catch (IOException expected) {
+        }
+        try {
+            hedged.fetch(new ForecastRequest("94043", 14, "metric"));
+            fail("Error: no backend should be asked once every breaker is open");
+        } catch (RetryPolicy.CircuitOpenException e) {
+            assertTrue(e.retryAfterMillis > 0);
+        }
+    }
+
+    public void testBothFailing() throws Throwable {
+        mPrimaryDown = true;
+        mSecondary.shutdown();
+        try {
+            hedgedSource().fetch(new ForecastRequest("94043", 14, "metric"));
+            fail("Error: a failure should be reported when no backend answers");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    public void testLatencyDrivesOrder() throws Throwable {
+        HedgedWeatherSource source = hedgedSource();
+        assertEquals(source(mPrimary).getName(), source.getOrder().get(0).source.getName());
+
+        // The secondary only gets measured when the primary is slow enough to be hedged.
+        mPrimaryDelay = 400;
+        for (int i = 0; i < 6; i++) {
+            source.fetch(new ForecastRequest("94043", 14, "metric"));
+        }
+        // Let the primary's last, losing requests finish and record their latency.
+        Thread.sleep(2 * mPrimaryDelay);
+        assertEquals("Error: the faster backend should be asked first",
+                source(mSecondary).getName(), source.getOrder().get(0).source.getName());
+        assertTrue(source.hedgeDelayMillis(source.getOrder().get(0)) >= MIN_HEDGE_MILLIS);
+    }
+
+    public void testValidatorsOnlyGoToTheirSource() throws Throwable {
+        mPrimaryDelay = SLOW_MILLIS;
+        ForecastRequest request = new ForecastRequest("94043", 14, "metric");
+        request.etag = "\"from-primary\"";
+        request.validatorSource = source(mPrimary).getName();
+        hedgedSource().fetch(request);
+
+        assertEquals("\"from-primary\"",
+                mPrimary.getRequests().get(0).headers.get("if-none-match"));
+        assertNull("Error: validators of the primary should not go to the secondary",
+                mSecondary.getRequests().get(0).headers.get("if-none-match"));
+    }
+}
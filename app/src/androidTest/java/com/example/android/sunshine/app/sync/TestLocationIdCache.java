@@ -0,0 +1,136 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.util.concurrent.Callable;
+
+public class TestLocationIdCache extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestLocationIdCache.class.getSimpleName();
+
+    private LocationIdCache mCache;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+        // Not observing the provider, so that the notifications of deleteAllRecords() cannot
+        // clear it in the middle of a test.
+        mCache = new LocationIdCache(mContext);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    private long queryLocationId(String locationSetting) {
+        Cursor cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                new String[]{LocationEntry._ID},
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{locationSetting},
+                null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : -1;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testResolve() {
+        long id = mCache.resolve("99705", "North Pole", 64.7488, -147.353);
+        assertTrue("Error: the location should be inserted", id > 0);
+        assertEquals(id, queryLocationId("99705"));
+
+        int misses = mCache.getMissCount();
+        assertEquals(id, mCache.resolve("99705", "North Pole", 64.7488, -147.353));
+        assertEquals("Error: a known location should not go to the provider",
+                misses, mCache.getMissCount());
+
+        // A cleared cache finds the stored row instead of inserting a second one.
+        mCache.clear();
+        assertEquals(id, mCache.resolve("99705", "North Pole", 64.7488, -147.353));
+        assertEquals(misses + 1, mCache.getMissCount());
+    }
+
+    public void testDeletedLocationForgotten() throws Exception {
+        final LocationIdCache cache = LocationIdCache.getInstance(mContext);
+        cache.resolve("99705", "North Pole", 64.7488, -147.353);
+        mContext.getContentResolver().delete(LocationEntry.CONTENT_URI, null, null);
+
+        // The observer drops the cache asynchronously.
+        final int misses = cache.getMissCount();
+        PollingCheck.check("Error: the deleted location is still cached", 3000,
+                new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        cache.resolve("99705", "North Pole", 64.7488, -147.353);
+                        return cache.getMissCount() > misses;
+                    }
+                });
+        assertTrue("Error: the location should be stored again", queryLocationId("99705") > 0);
+    }
+
+    /*
+        Time taken to resolve N locations over a number of syncs, querying the provider every
+        time and inserting on a miss, as the sync used to, versus going through the cache.
+     */
+    public void testRepeatedSyncs() {
+        int locations = 10;
+        int syncs = 20;
+
+        long start = System.nanoTime();
+        for (int sync = 0; sync < syncs; sync++) {
+            for (int i = 0; i < locations; i++) {
+                queryOrInsert("9400" + i);
+            }
+        }
+        long queryNanos = System.nanoTime() - start;
+        deleteAllRecords();
+        mCache.clear();
+
+        int misses = mCache.getMissCount();
+        start = System.nanoTime();
+        for (int sync = 0; sync < syncs; sync++) {
+            for (int i = 0; i < locations; i++) {
+                mCache.resolve("9400" + i, "Mountain View", 37.4, -122.1);
+            }
+        }
+        long cacheNanos = System.nanoTime() - start;
+
+        Log.i(LOG_TAG, "Resolving " + locations + " locations per sync: query and insert "
+                + queryNanos / syncs / 1000 + " us, cache " + cacheNanos / syncs / 1000 + " us");
+        assertEquals("Error: only the first sync should go to the provider",
+                locations, mCache.getMissCount() - misses);
+        assertTrue("Error: the cache should be faster", cacheNanos < queryNanos);
+    }
+
+    private long queryOrInsert(String locationSetting) {
+        long id = queryLocationId(locationSetting);
+        if (id != -1) {
+            return id;
+        }
+        ContentValues values = new ContentValues();
+        values.put(LocationEntry.COLUMN_CITY_NAME, "Mountain View");
+        values.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        values.put(LocationEntry.COLUMN_COORD_LAT, 37.4);
+        values.put(LocationEntry.COLUMN_COORD_LONG, -122.1);
+        Uri inserted = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, values);
+        return ContentUris.parseId(inserted);
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.android.sunshine.app.sync;
+
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.utils.StubHttpServer;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestMultiLocationSync extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestMultiLocationSync.class.getSimpleName();
+
+    private static final long SERVER_DELAY_MILLIS = 150;
+    private static final int WORKERS = 4;
+    private static final int PER_HOST = 2;
+
+    private StubHttpServer mServer;
+    private final AtomicInteger mInFlight = new AtomicInteger();
+    private final AtomicInteger mMaxInFlight = new AtomicInteger();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new StubHttpServer(new StubHttpServer.Responder() {
+            @Override
+            public StubHttpServer.Response respond(StubHttpServer.Request request)
+                    throws IOException {
+                int inFlight = mInFlight.incrementAndGet();
+                int max;
+                while (inFlight > (max = mMaxInFlight.get())
+                        && !mMaxInFlight.compareAndSet(max, inFlight)) {
+                    // retry
+                }
+                try {
+                    // Simulates the latency of the weather API.
+                    Thread.sleep(SERVER_DELAY_MILLIS);
+                } catch (InterruptedException e) {
+                    throw new IOException(e.toString());
+                } finally {
+                    mInFlight.decrementAndGet();
+                }
+                return StubHttpServer.Response.of(HttpURLConnection.HTTP_OK,
+                        ForecastFixtures.forecast(14, 0));
+            }
+        });
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    /*
+        Fetches and parses a forecast from the stub server the way the sync adapter does.
+     */
+    private MultiLocationSync.LocationTask fetchTask(final HostLimiter limiter) {
+        return new MultiLocationSync.LocationTask() {
+            @Override
+            public boolean syncLocation(String locationSetting) throws Exception {
+                URL url = new URL(mServer.getUrl() + "/forecast?q=" + locationSetting);
+                limiter.acquire(url.getHost());
+                try {
+                    HttpURLConnection urlConnection = (HttpURLConnection) url.openConnection();
+                    InputStreamReader reader =
+                            new InputStreamReader(urlConnection.getInputStream(), "UTF-8");
+                    TestForecastJsonParser.RecordingHandler handler =
+                            new TestForecastJsonParser.RecordingHandler();
+                    ForecastJsonParser.parse(reader, handler);
+                    reader.close();
+                    urlConnection.disconnect();
+                    return handler.mDays.size() == 14;
+                } finally {
+                    limiter.release(url.getHost());
+                }
+            }
+        };
+    }
+
+    private static List<String> locations(int count) {
+        List<String> locations = new ArrayList<String>();
+        for (int i = 0; i < count; i++) {
+            locations.add(Integer.toString(94040 + i));
+        }
+        return locations;
+    }
+
+    public void testAllLocationsSynced() throws Throwable {
+        List<String> changed = new MultiLocationSync(WORKERS)
+                .run(locations(6), fetchTask(new HostLimiter(PER_HOST)));
+        assertEquals(6, changed.size());
+        assertTrue("Error: more requests in flight than the host limit allows",
+                mMaxInFlight.get() <= PER_HOST);
+    }
+
+    public void testFailingLocationDoesNotAbortOthers() throws Throwable {
+        final MultiLocationSync.LocationTask fetch = fetchTask(new HostLimiter(PER_HOST));
+        List<String> changed = new MultiLocationSync(WORKERS).run(locations(3),
+                new MultiLocationSync.LocationTask() {
+                    @Override
+                    public boolean syncLocation(String locationSetting) throws Exception {
+                        if (locationSetting.equals("94041")) {
+                            ForecastJsonParser.parse(new StringReader("{"),
+                                    new TestForecastJsonParser.RecordingHandler());
+                        }
+                        return fetch.syncLocation(locationSetting);
+                    }
+                });
+        assertEquals(2, changed.size());
+        assertFalse(changed.contains("94041"));
+    }
+
+    /*
+        Wall-clock sync time by location count, one after another versus the worker pool.
+     */
+    public void testSyncBenchmark() throws Throwable {
+        for (int count : new int[] {1, 2, 4, 8}) {
+            List<String> locations = locations(count);
+
+            MultiLocationSync.LocationTask sequentialTask = fetchTask(new HostLimiter(1));
+            long start = SystemClock.elapsedRealtime();
+            for (String location : locations) {
+                sequentialTask.syncLocation(location);
+            }
+            long sequentialMillis = SystemClock.elapsedRealtime() - start;
+
+            start = SystemClock.elapsedRealtime();
+            new MultiLocationSync(WORKERS).run(locations, fetchTask(new HostLimiter(PER_HOST)));
+            long parallelMillis = SystemClock.elapsedRealtime() - start;
+
+            Log.i(LOG_TAG, count + " locations: sequential " + sequentialMillis
+                    + "ms, parallel " + parallelMillis + "ms");
+            if (count >= 4) {
+                assertTrue("Error: parallel sync should beat the sequential one",
+                        parallelMillis < sequentialMillis);
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.utils.StubHttpServer;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestRetryPolicy extends AndroidTestCase {
+
+    private StubHttpServer mServer;
+    // How many of the next requests the stub server fails with a 503.
+    private final AtomicInteger mFaults = new AtomicInteger();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new StubHttpServer(new StubHttpServer.Responder() {
+            @Override
+            public StubHttpServer.Response respond(StubHttpServer.Request request) {
+                if (request.path.contains("missing")) {
+                    return StubHttpServer.Response.of(HttpURLConnection.HTTP_NOT_FOUND, "{}");
+                }
+                if (mFaults.getAndDecrement() > 0) {
+                    return StubHttpServer.Response.of(HttpURLConnection.HTTP_UNAVAILABLE, "");
+                }
+                return StubHttpServer.Response.of(HttpURLConnection.HTTP_OK,
+                        ForecastFixtures.forecast(1, 0));
+            }
+        });
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    private RetryPolicy.Attempt<Integer> fetch(final String path) {
+        return new RetryPolicy.Attempt<Integer>() {
+            @Override
+            public Integer run() throws IOException {
+                HttpURLConnection urlConnection =
+                        (HttpURLConnection) new URL(mServer.getUrl() + path).openConnection();
+                try {
+                    int code = urlConnection.getResponseCode();
+                    if (code >= 400 && code < 500) {
+                        throw new RetryPolicy.PermanentException("HTTP " + code);
+                    }
+                    if (code >= 500) {
+                        throw new IOException("HTTP " + code);
+                    }
+                    return code;
+                } finally {
+                    urlConnection.disconnect();
+                }
+            }
+        };
+    }
+
+    private static RetryPolicy fastPolicy(int attempts) {
+        return new RetryPolicy(attempts, 10, 40, new Random(42));
+    }
+
+    public void testRetriesTransientFailures() throws Throwable {
+        mFaults.set(2);
+        int[] failures = new int[1];
+        int code = fastPolicy(3).execute(new CircuitBreaker(5, 1000, 1000),
+                fetch("/forecast"), failures);
+
+        assertEquals(HttpURLConnection.HTTP_OK, code);
+        assertEquals(2, failures[0]);
+        assertEquals(3, mServer.getRequests().size());
+    }
+
+    public void testGivesUpAfterMaxAttempts() throws Throwable {
+        mFaults.set(10);
+        try {
+            fastPolicy(3).execute(new CircuitBreaker(5, 1000, 1000), fetch("/forecast"), null);
+            fail("Error: the last failure should be rethrown");
+        } catch (IOException expected) {
+        }
+        assertEquals(3, mServer.getRequests().size());
+    }
+
+    public void testPermanentFailureIsNotRetried() throws Throwable {
+        CircuitBreaker breaker = new CircuitBreaker(1, 1000, 1000);
+        try {
+            fastPolicy(3).execute(breaker, fetch("/missing"), null);
+            fail("Error: a 404 should not succeed");
+        } catch (RetryPolicy.PermanentException expected) {
+        }
+        assertEquals(1, mServer.getRequests().size());
+        assertFalse("Error: a 4xx answer must not open the breaker",
+                breaker.isOpen(System.currentTimeMillis()));
+    }
+
+    public void testOpenBreakerStopsCalls() throws Throwable {
+        mFaults.set(10);
+        CircuitBreaker breaker = new CircuitBreaker(2, 60000, 60000);
+        try {
+            fastPolicy(5).execute(breaker, fetch("/forecast"), null);
+            fail("Error: the breaker should have opened");
+        } catch (RetryPolicy.CircuitOpenException e) {
+            assertTrue(e.retryAfterMillis > 0);
+        }
+        assertEquals("Error: no request should reach the host once the breaker is open",
+                2, mServer.getRequests().size());
+    }
+
+    public void testBreakerTrialRequest() {
+        CircuitBreaker breaker = new CircuitBreaker(2, 1000, 4000);
+        breaker.recordFailure(breaker.allowRequest(0), 0);
+        breaker.recordFailure(breaker.allowRequest(0), 0);
+        assertNull(breaker.allowRequest(500));
+        assertEquals(500, breaker.getRetryAfterMillis(500));
+
+        // The open period is over, one trial goes through and fails.
+        CircuitBreaker.Permit trial = breaker.allowRequest(1000);
+        assertNotNull(trial);
+        assertNull("Error: only one trial request at a time", breaker.allowRequest(1000));
+        breaker.recordFailure(trial, 1000);
+        assertNull(breaker.allowRequest(2500));
+        assertEquals("Error: the open period should double after a failed trial",
+                2000, breaker.getRetryAfterMillis(1000));
+
+        trial = breaker.allowRequest(3000);
+        assertNotNull(trial);
+        breaker.recordSuccess(trial);
+        assertFalse(breaker.isOpen(3000));
+        assertNotNull(breaker.allowRequest(3000));
+    }
+
+    public void testLateOutcomeIsNotTheTrial() {
+        CircuitBreaker breaker = new CircuitBreaker(2, 1000, 4000);
+        CircuitBreaker.Permit slow = breaker.allowRequest(0);
+        breaker.recordFailure(breaker.allowRequest(0), 0);
+        breaker.recordFailure(breaker.allowRequest(0), 0);
+
+        // A request sent before the breaker opened fails while the trial is in flight.
+        CircuitBreaker.Permit trial = breaker.allowRequest(1000);
+        assertNotNull(trial);
+        breaker.recordFailure(slow, 1100);
+        assertNull("Error: a late failure should not end the trial", breaker.allowRequest(1100));
+        assertTrue(breaker.isOpen(1100));
+
+        // Nor should a late success close the breaker.
+        breaker.recordSuccess(slow);
+        assertTrue(breaker.isOpen(1100));
+
+        breaker.recordFailure(trial, 1200);
+        assertEquals("Error: the open period should only double once for the trial",
+                2000, breaker.getRetryAfterMillis(1200));
+    }
+
+    public void testBackoffIsBounded() {
+        RetryPolicy policy = new RetryPolicy(10, 100, 1000, new Random(1));
+        for (int retry = 0; retry < 40; retry++) {
+            long delay = policy.delayMillis(retry);
+            assertTrue(delay >= 0);
+            assertTrue(delay <= Math.min(1000, 100L << Math.min(retry, 30)));
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestSyncCoalescer extends AndroidTestCase {
+
+    private static final long WINDOW_MILLIS = 30000;
+
+    public void testBurstOfRequestsCoalesced() {
+        SyncCoalescer coalescer = new SyncCoalescer(WINDOW_MILLIS);
+        assertTrue(coalescer.offer("94043", 0));
+        for (int i = 1; i <= 5; i++) {
+            assertFalse("Error: request within the window should be absorbed",
+                    coalescer.offer("94043", i * 1000));
+        }
+        assertTrue("Error: another location should not be absorbed",
+                coalescer.offer("99705", 1000));
+        assertEquals(5, coalescer.getAbsorbedRequestCount());
+
+        // A request that never ran stops absorbing once the window is over.
+        assertTrue(coalescer.offer("94043", WINDOW_MILLIS));
+    }
+
+    public void testFinishedSyncLetsNextRequestThrough() throws Exception {
+        SyncCoalescer coalescer = new SyncCoalescer(WINDOW_MILLIS);
+        assertTrue(coalescer.offer("94043", 0));
+        coalescer.sync("94043", new MultiLocationSync.LocationTask() {
+            @Override
+            public boolean syncLocation(String locationSetting) {
+                return true;
+            }
+        });
+        assertTrue("Error: a finished sync should not absorb the next request",
+                coalescer.offer("94043", 1000));
+
+        assertTrue(coalescer.offer(SunshineSyncAdapter.SYNC_EXTRAS_ALL_LOCATIONS, 0));
+        coalescer.finished(SunshineSyncAdapter.SYNC_EXTRAS_ALL_LOCATIONS);
+        assertTrue(coalescer.offer(SunshineSyncAdapter.SYNC_EXTRAS_ALL_LOCATIONS, 1000));
+    }
+
+    public void testConcurrentSyncJoinsInFlight() throws Throwable {
+        final SyncCoalescer coalescer = new SyncCoalescer(WINDOW_MILLIS);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger runs = new AtomicInteger();
+        final MultiLocationSync.LocationTask task = new MultiLocationSync.LocationTask() {
+            @Override
+            public boolean syncLocation(String locationSetting) throws Exception {
+                runs.incrementAndGet();
+                started.countDown();
+                release.await();
+                return true;
+            }
+        };
+
+        final AtomicBoolean firstChanged = new AtomicBoolean();
+        Thread first = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    firstChanged.set(coalescer.sync("94043", task));
+                } catch (Exception e) {
+                    fail(e.toString());
+                }
+            }
+        };
+        first.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        assertFalse("Error: request for a running sync should be absorbed",
+                coalescer.offer("94043", 0));
+
+        final AtomicBoolean joinedChanged = new AtomicBoolean();
+        Thread joiner = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    joinedChanged.set(coalescer.sync("94043", task));
+                } catch (Exception e) {
+                    fail(e.toString());
+                }
+            }
+        };
+        joiner.start();
+        while (coalescer.getJoinedSyncCount() == 0) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+        first.join(5000);
+        joiner.join(5000);
+
+        assertEquals("Error: the location should only be synced once", 1, runs.get());
+        assertTrue(firstChanged.get());
+        assertTrue("Error: the joined sync should share the result", joinedChanged.get());
+        assertEquals(1, coalescer.getJoinedSyncCount());
+        assertEquals(1, coalescer.getAbsorbedRequestCount());
+    }
+
+    public void testJoinedSyncSeesFailure() throws Throwable {
+        final SyncCoalescer coalescer = new SyncCoalescer(WINDOW_MILLIS);
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final MultiLocationSync.LocationTask task = new MultiLocationSync.LocationTask() {
+            @Override
+            public boolean syncLocation(String locationSetting) throws Exception {
+                started.countDown();
+                release.await();
+                throw new IllegalStateException("sync failed");
+            }
+        };
+
+        Thread first = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    coalescer.sync("94043", task);
+                } catch (Exception e) {
+                    // expected
+                }
+            }
+        };
+        first.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        final AtomicBoolean joinedFailed = new AtomicBoolean();
+        Thread joiner = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    coalescer.sync("94043", task);
+                } catch (IllegalStateException e) {
+                    joinedFailed.set(true);
+                } catch (Exception e) {
+                    fail(e.toString());
+                }
+            }
+        };
+        joiner.start();
+        while (coalescer.getJoinedSyncCount() == 0) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+        first.join(5000);
+        joiner.join(5000);
+
+        assertTrue("Error: the joined sync should see the failure", joinedFailed.get());
+    }
+}
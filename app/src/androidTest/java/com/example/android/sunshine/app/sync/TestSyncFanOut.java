@@ -0,0 +1,92 @@
+package com.example.android.sunshine.app.sync;
+
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class TestSyncFanOut extends AndroidTestCase {
+
+    private static final TodaySnapshot SNAPSHOT =
+            new TodaySnapshot("99705", 321, 75.0, 65.0, "Asteroids");
+
+    private final List<String> mDelivered =
+            Collections.synchronizedList(new ArrayList<String>());
+
+    private SyncFanOut.Target target(final String name, int priority, long timeoutMillis,
+                                     final long workMillis) {
+        return new SyncFanOut.Target(name, priority, timeoutMillis) {
+            @Override
+            protected void deliver(TodaySnapshot snapshot) throws Exception {
+                assertSame(SNAPSHOT, snapshot);
+                if (workMillis > 0) {
+                    Thread.sleep(workMillis);
+                }
+                mDelivered.add(name);
+            }
+        };
+    }
+
+    public void testSlowTargetDoesNotDelayOthers() throws InterruptedException {
+        List<SyncFanOut.Target> targets = new ArrayList<SyncFanOut.Target>();
+        targets.add(target("notification", Thread.MIN_PRIORITY, 5000, 1000));
+        targets.add(target("watch_face", Thread.MAX_PRIORITY, 5000, 0));
+        targets.add(target("widgets", Thread.NORM_PRIORITY, 5000, 0));
+
+        long start = SystemClock.elapsedRealtime();
+        assertEquals(3, SyncFanOut.run(SNAPSHOT, targets, new SyncTrace(0)));
+        long elapsed = SystemClock.elapsedRealtime() - start;
+
+        // Everything ran at once, so the fan-out took as long as the slowest target.
+        assertTrue("Fan-out took " + elapsed + "ms", elapsed < 2000);
+        assertEquals(3, mDelivered.size());
+        assertEquals("notification", mDelivered.get(2));
+    }
+
+    public void testTargetsRunAtTheirPriority() throws InterruptedException {
+        final Map<String, Integer> priorities =
+                Collections.synchronizedMap(new HashMap<String, Integer>());
+        List<SyncFanOut.Target> targets = new ArrayList<SyncFanOut.Target>();
+        int[] levels = {Thread.MIN_PRIORITY, Thread.NORM_PRIORITY, Thread.MAX_PRIORITY};
+        for (final int level : levels) {
+            targets.add(new SyncFanOut.Target("target" + level, level, 2000) {
+                @Override
+                protected void deliver(TodaySnapshot snapshot) {
+                    priorities.put("target" + level, Thread.currentThread().getPriority());
+                }
+            });
+        }
+
+        assertEquals(3, SyncFanOut.run(SNAPSHOT, targets, new SyncTrace(0)));
+        for (int level : levels) {
+            assertEquals(Integer.valueOf(level), priorities.get("target" + level));
+        }
+    }
+
+    public void testTimeoutAndFailureAreContained() throws InterruptedException {
+        List<SyncFanOut.Target> targets = new ArrayList<SyncFanOut.Target>();
+        targets.add(target("watch_face", Thread.MAX_PRIORITY, 1000, 0));
+        targets.add(target("notification", Thread.MIN_PRIORITY, 200, 10000));
+        targets.add(new SyncFanOut.Target("muzei", Thread.NORM_PRIORITY, 1000) {
+            @Override
+            protected void deliver(TodaySnapshot snapshot) {
+                throw new IllegalStateException("Muzei is not installed");
+            }
+        });
+
+        SyncTrace trace = new SyncTrace(0);
+        long start = SystemClock.elapsedRealtime();
+        assertEquals(1, SyncFanOut.run(SNAPSHOT, targets, trace));
+        long elapsed = SystemClock.elapsedRealtime() - start;
+
+        assertTrue("Fan-out took " + elapsed + "ms", elapsed < 1000);
+        assertEquals(1, mDelivered.size());
+        assertEquals("watch_face", mDelivered.get(0));
+        // Every target is traced, including the ones that failed.
+        assertEquals(3, trace.size());
+    }
+}
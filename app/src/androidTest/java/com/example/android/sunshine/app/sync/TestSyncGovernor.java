@@ -0,0 +1,95 @@
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+public class TestSyncGovernor extends AndroidTestCase {
+
+    private static final long HOUR = 60 * 60 * 1000L;
+    private static final long BUDGET = 100 * 1024;
+
+    private FakeNetworkState mNetwork;
+    private SyncGovernor mGovernor;
+
+    static class FakeNetworkState implements SyncGovernor.NetworkStateProvider {
+        String type = SyncGovernor.NETWORK_WIFI;
+        boolean metered;
+
+        @Override
+        public String getNetworkType() {
+            return type;
+        }
+
+        @Override
+        public boolean isMetered() {
+            return metered;
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        clearPrefs();
+        mNetwork = new FakeNetworkState();
+        mGovernor = new SyncGovernor(mContext, mNetwork);
+        mGovernor.setDailyBudget(BUDGET);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        clearPrefs();
+        super.tearDown();
+    }
+
+    private void clearPrefs() {
+        mContext.getSharedPreferences(SyncGovernor.PREFS_NAME, 0).edit().clear().commit();
+    }
+
+    // Noon of some local day, so that a few hours either way stay on the same day.
+    private static long noon() {
+        long day = SyncGovernor.dayOf(System.currentTimeMillis());
+        long now = day * 24 * HOUR + 12 * HOUR;
+        return now - java.util.TimeZone.getDefault().getOffset(now);
+    }
+
+    public void testBytesCountedPerNetworkType() {
+        long now = noon();
+        mGovernor.recordBytes(1000, now);
+        mNetwork.type = SyncGovernor.NETWORK_MOBILE;
+        mGovernor.recordBytes(300, now + HOUR);
+        mGovernor.recordBytes(200, now + 2 * HOUR);
+
+        assertEquals(1000, mGovernor.getBytes(SyncGovernor.NETWORK_WIFI, now));
+        assertEquals(500, mGovernor.getBytes(SyncGovernor.NETWORK_MOBILE, now));
+        assertEquals(1500, mGovernor.getTotalBytes(now));
+    }
+
+    public void testCountersStartOverEachDay() {
+        long now = noon();
+        mGovernor.recordBytes(1000, now);
+        long tomorrow = now + 24 * HOUR;
+        assertEquals(0, mGovernor.getTotalBytes(tomorrow));
+
+        mGovernor.recordBytes(10, tomorrow);
+        assertEquals(10, mGovernor.getBytes(SyncGovernor.NETWORK_WIFI, tomorrow));
+    }
+
+    public void testReducedMode() {
+        long now = noon();
+        assertFalse(mGovernor.isReduced(now));
+
+        mNetwork.metered = true;
+        assertTrue("Error: a metered network should reduce syncs", mGovernor.isReduced(now));
+
+        mNetwork.metered = false;
+        mGovernor.recordBytes(BUDGET, now);
+        assertTrue("Error: going over budget should reduce syncs", mGovernor.isReduced(now));
+        assertFalse("Error: a new day should get a new budget",
+                mGovernor.isReduced(now + 24 * HOUR));
+    }
+
+    public void testTrafficFromHttpClient() {
+        mGovernor.onTraffic(4096);
+        assertEquals(4096, mGovernor.getBytes(SyncGovernor.NETWORK_WIFI,
+                System.currentTimeMillis()));
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.utils.StubHttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+public class TestSyncHttpClient extends AndroidTestCase {
+
+    private StubHttpServer mServer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new StubHttpServer(new StubHttpServer.Responder() {
+            @Override
+            public StubHttpServer.Response respond(StubHttpServer.Request request)
+                    throws IOException {
+                if (request.path.startsWith("/down")) {
+                    return StubHttpServer.Response.of(HttpURLConnection.HTTP_UNAVAILABLE,
+                            "{\"cod\":\"503\"}");
+                }
+                StubHttpServer.Response response = StubHttpServer.Response.of(
+                        HttpURLConnection.HTTP_OK, ForecastFixtures.forecast(14, 0));
+                return request.path.startsWith("/plain") ? response : response.gzipFor(request);
+            }
+        });
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    private static String readBody(SyncHttpClient.Response response) throws IOException {
+        InputStream body = response.getBody();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = body.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toString("UTF-8");
+    }
+
+    public void testGzipDecodedAndCounted() throws IOException {
+        String expected = ForecastFixtures.forecast(14, 0);
+        SyncHttpClient.Response response =
+                new SyncHttpClient().get(new URL(mServer.getUrl() + "/forecast"), null);
+        try {
+            assertEquals(HttpURLConnection.HTTP_OK, response.getCode());
+            assertTrue("Error: the response should be compressed", response.isCompressed());
+            assertEquals(expected, readBody(response));
+            assertEquals(expected.length(), response.getDecodedBytes());
+            assertTrue("Error: fewer bytes should cross the wire than are decoded",
+                    response.getWireBytes() < response.getDecodedBytes());
+        } finally {
+            response.close();
+        }
+        assertEquals("gzip", mServer.getRequests().get(0).headers.get("accept-encoding"));
+    }
+
+    public void testUncompressedResponse() throws IOException {
+        String expected = ForecastFixtures.forecast(14, 0);
+        SyncHttpClient.Response response =
+                new SyncHttpClient().get(new URL(mServer.getUrl() + "/plain"), null);
+        try {
+            assertFalse(response.isCompressed());
+            assertEquals(expected, readBody(response));
+            assertEquals(response.getWireBytes(), response.getDecodedBytes());
+            assertEquals(0, response.getInflateNanos());
+        } finally {
+            response.close();
+        }
+    }
+
+    public void testConnectionReused() throws IOException {
+        SyncHttpClient client = new SyncHttpClient();
+        for (int i = 0; i < 5; i++) {
+            SyncHttpClient.Response response =
+                    client.get(new URL(mServer.getUrl() + (i == 2 ? "/down" : "/forecast")), null);
+            if (response.getCode() == HttpURLConnection.HTTP_OK) {
+                // Leave part of the body unread, close() has to drain it.
+                response.getBody().read();
+            }
+            response.close();
+        }
+        assertEquals(5, mServer.getRequests().size());
+        assertEquals("Error: every request should have reused the first connection",
+                1, mServer.getConnectionCount());
+    }
+}
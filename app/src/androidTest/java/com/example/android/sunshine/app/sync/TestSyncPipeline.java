@@ -0,0 +1,108 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.SyncResult;
+import android.os.Bundle;
+import android.database.Cursor;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.utils.StubHttpServer;
+
+/*
+    Runs the sync of single locations (fetch, parse, diff and provider writes) against the
+    local fixture server, to measure sync throughput without spending API quota.  The fan-out
+    is left out: it posts notifications and wakes the widgets of the device under test.
+ */
+public class TestSyncPipeline extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestSyncPipeline.class.getSimpleName();
+
+    private static final int LOCATIONS = 20;
+
+    private StubHttpServer mServer;
+    private SunshineSyncAdapter mAdapter;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+        mServer = new StubHttpServer(ForecastFixtures.responder());
+        mAdapter = new SunshineSyncAdapter(mContext, false);
+        mAdapter.setWeatherSource(new OpenWeatherMapSource(
+                mServer.getUrl() + "/data/2.5/forecast/daily?", "test-key"));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    private void deleteAllRecords() {
+        mContext.getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.LocationEntry.CONTENT_URI, null, null);
+        mContext.getContentResolver().delete(WeatherContract.SyncJournalEntry.CONTENT_URI, null, null);
+        mContext.getSharedPreferences(ForecastValidators.PREFS_NAME, 0).edit().clear().commit();
+    }
+
+    private static String location(int i) {
+        return Integer.toString(95000 + i);
+    }
+
+    public void testSyncStoresForecast() {
+        SyncResult syncResult = new SyncResult();
+        assertTrue(mAdapter.syncLocation(location(0), syncResult));
+        assertEquals(14, syncResult.stats.numInserts);
+
+        Cursor cursor = mContext.getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocation(location(0)),
+                null, null, null, null);
+        assertEquals(14, cursor.getCount());
+        cursor.close();
+
+        // The same forecast again changes nothing.
+        syncResult = new SyncResult();
+        assertFalse(mAdapter.syncLocation(location(0), syncResult));
+        assertEquals(14, syncResult.stats.numSkippedEntries);
+    }
+
+    public void testSyncIsTraced() {
+        SyncTrace trace = new SyncTrace(System.currentTimeMillis());
+        assertTrue(mAdapter.syncLocation(location(0), new SyncResult(), trace));
+        trace.writeTo(mContext.getContentResolver());
+
+        Bundle percentiles = mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_SYNC_JOURNAL_PERCENTILES, null, null);
+        String[] phases = {SyncTrace.PHASE_CONNECT, SyncTrace.PHASE_DOWNLOAD,
+                SyncTrace.PHASE_INFLATE, SyncTrace.PHASE_PARSE, SyncTrace.PHASE_LOCATION_UPSERT, SyncTrace.PHASE_DIFF,
+                SyncTrace.PHASE_INGEST};
+        for (String phase : phases) {
+            Bundle summary = percentiles.getBundle(phase);
+            assertNotNull("Phase " + phase + " was not traced", summary);
+            assertEquals(1, summary.getInt(WeatherContract.KEY_COUNT));
+        }
+        long wireBytes = percentiles.getBundle(SyncTrace.PHASE_DOWNLOAD)
+                .getLong(WeatherContract.KEY_BYTES);
+        assertTrue(wireBytes > 0);
+        assertTrue("Error: the fixture forecast should download compressed",
+                percentiles.getBundle(SyncTrace.PHASE_INFLATE)
+                        .getLong(WeatherContract.KEY_BYTES) > wireBytes);
+    }
+
+    public void testSyncThroughput() {
+        for (int round = 0; round < 2; round++) {
+            SyncResult syncResult = new SyncResult();
+            long start = SystemClock.elapsedRealtime();
+            for (int i = 0; i < LOCATIONS; i++) {
+                mAdapter.syncLocation(location(i), syncResult);
+            }
+            long elapsed = SystemClock.elapsedRealtime() - start;
+            Log.i(LOG_TAG, (round == 0 ? "cold" : "warm") + ": " + LOCATIONS + " locations in "
+                    + elapsed + "ms, " + (LOCATIONS * 1000L / Math.max(1, elapsed))
+                    + " syncs/s, " + syncResult.stats);
+        }
+    }
+}
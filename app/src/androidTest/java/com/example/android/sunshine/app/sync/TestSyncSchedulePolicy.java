@@ -0,0 +1,149 @@
+package com.example.android.sunshine.app.sync;
+
+import android.util.Log;
+
+import junit.framework.TestCase;
+
+public class TestSyncSchedulePolicy extends TestCase {
+
+    public static final String LOG_TAG = TestSyncSchedulePolicy.class.getSimpleName();
+
+    private static final long HOUR = 60 * 60;
+    private static final long DAY = 24 * HOUR;
+
+    private final SyncSchedulePolicy mPolicy = new SyncSchedulePolicy(HOUR, 12 * HOUR, 3 * HOUR);
+
+    private static final SyncSchedulePolicy.DeviceState IDLE =
+            new SyncSchedulePolicy.DeviceState(false, false, false);
+    private static final SyncSchedulePolicy.DeviceState IN_USE =
+            new SyncSchedulePolicy.DeviceState(false, false, true);
+    private static final SyncSchedulePolicy.DeviceState CHARGING_IN_USE =
+            new SyncSchedulePolicy.DeviceState(true, true, true);
+
+    public void testHistory() {
+        int history = 0;
+        history = SyncSchedulePolicy.recordOutcome(history, true);
+        history = SyncSchedulePolicy.recordOutcome(history, false);
+        history = SyncSchedulePolicy.recordOutcome(history, true);
+        history = SyncSchedulePolicy.recordOutcome(history, true);
+        assertEquals(0.75, SyncSchedulePolicy.changeRate(history, 4));
+        assertEquals(0.5, SyncSchedulePolicy.changeRate(0, 0));
+
+        for (int i = 0; i < SyncSchedulePolicy.HISTORY_SIZE; i++) {
+            history = SyncSchedulePolicy.recordOutcome(history, false);
+        }
+        assertEquals("Error: old outcomes should fall out of the history",
+                0.0, SyncSchedulePolicy.changeRate(history, SyncSchedulePolicy.HISTORY_SIZE));
+    }
+
+    public void testIntervalFollowsConditions() {
+        long busy = mPolicy.nextInterval(1.0, IN_USE);
+        long quiet = mPolicy.nextInterval(0.0, IN_USE);
+        assertTrue("Error: frequently changing data should be synced more often", busy < quiet);
+
+        assertTrue(mPolicy.nextInterval(0.5, IDLE) > mPolicy.nextInterval(0.5, IN_USE));
+        assertTrue(mPolicy.nextInterval(0.5, CHARGING_IN_USE) < mPolicy.nextInterval(0.5, IN_USE));
+    }
+
+    public void testBounds() {
+        assertEquals(12 * HOUR, mPolicy.nextInterval(0.0, IDLE));
+        assertTrue(mPolicy.nextInterval(1.0, CHARGING_IN_USE) >= HOUR);
+        try {
+            new SyncSchedulePolicy(3 * HOUR, 12 * HOUR, HOUR);
+            fail("Error: a base interval below the minimum should be rejected");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    /*
+        The simulation harness.  Replays a day of device states in 15 minute slots, with the
+        server publishing a new forecast at the given times, and reports how many times the
+        device woke up to sync and how stale the stored forecast got.
+     */
+    static class Simulation {
+        int wakeups;
+        long maxStaleness;
+        long totalStaleness;
+        int publishes;
+
+        Simulation(SyncSchedulePolicy policy, long fixedInterval, long[] publishTimes,
+                   SyncSchedulePolicy.DeviceState[] states) {
+            long slot = DAY / states.length;
+            int history = 0;
+            int count = 0;
+            int nextPublish = 0;
+            long lastPublished = -1;
+            long lastSynced = -1;
+            long nextSync = 0;
+            long unseenSince = -1;
+
+            for (long now = 0; now < DAY; now += 60) {
+                while (nextPublish < publishTimes.length && publishTimes[nextPublish] <= now) {
+                    lastPublished = publishTimes[nextPublish++];
+                    if (unseenSince < 0) unseenSince = lastPublished;
+                    publishes++;
+                }
+                if (now < nextSync) continue;
+
+                wakeups++;
+                boolean changed = lastPublished > lastSynced;
+                lastSynced = now;
+                if (unseenSince >= 0) {
+                    long staleness = now - unseenSince;
+                    maxStaleness = Math.max(maxStaleness, staleness);
+                    totalStaleness += staleness;
+                    unseenSince = -1;
+                }
+
+                history = SyncSchedulePolicy.recordOutcome(history, changed);
+                count = Math.min(count + 1, SyncSchedulePolicy.HISTORY_SIZE);
+                SyncSchedulePolicy.DeviceState state = states[(int) (now / slot)];
+                nextSync = now + (policy == null ? fixedInterval
+                        : policy.nextInterval(SyncSchedulePolicy.changeRate(history, count), state));
+            }
+        }
+
+        long averageStaleness() {
+            return publishes == 0 ? 0 : totalStaleness / publishes;
+        }
+    }
+
+    // A working day: asleep and charging at night, busy in the morning and evening.
+    private static SyncSchedulePolicy.DeviceState[] typicalDay() {
+        SyncSchedulePolicy.DeviceState[] states = new SyncSchedulePolicy.DeviceState[96];
+        for (int i = 0; i < states.length; i++) {
+            int hour = i / 4;
+            if (hour < 7) {
+                states[i] = new SyncSchedulePolicy.DeviceState(true, true, false);
+            } else if (hour < 9 || hour >= 18) {
+                states[i] = IN_USE;
+            } else {
+                states[i] = IDLE;
+            }
+        }
+        return states;
+    }
+
+    public void testSimulatedDay() {
+        // The daily forecast is republished every three hours.
+        long[] publishTimes = new long[8];
+        for (int i = 0; i < publishTimes.length; i++) {
+            publishTimes[i] = i * 3 * HOUR + 20 * 60;
+        }
+        SyncSchedulePolicy.DeviceState[] states = typicalDay();
+
+        Simulation fixed = new Simulation(null, 3 * HOUR, publishTimes, states);
+        Simulation adaptive = new Simulation(mPolicy, 0, publishTimes, states);
+
+        Log.i(LOG_TAG, "fixed: " + fixed.wakeups + " wakeups, max staleness "
+                + fixed.maxStaleness / 60 + "min, average " + fixed.averageStaleness() / 60 + "min");
+        Log.i(LOG_TAG, "adaptive: " + adaptive.wakeups + " wakeups, max staleness "
+                + adaptive.maxStaleness / 60 + "min, average " + adaptive.averageStaleness() / 60
+                + "min");
+
+        assertTrue("Error: staleness must stay within the maximum interval",
+                adaptive.maxStaleness <= 12 * HOUR);
+        assertTrue(adaptive.wakeups >= DAY / (12 * HOUR));
+        assertTrue(adaptive.wakeups <= DAY / HOUR + 1);
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.utils.StubHttpServer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.HttpURLConnection;
+
+public class TestWeatherSources extends AndroidTestCase {
+
+    private StubHttpServer mServer;
+    private File mReplayDirectory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new StubHttpServer(ForecastFixtures.responder());
+        mReplayDirectory = new File(mContext.getCacheDir(), "replay-test");
+        mReplayDirectory.mkdirs();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        File[] files = mReplayDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) file.delete();
+        }
+        mReplayDirectory.delete();
+        super.tearDown();
+    }
+
+    private OpenWeatherMapSource fixtureSource() {
+        return new OpenWeatherMapSource(mServer.getUrl() + "/data/2.5/forecast/daily?", "test-key");
+    }
+
+    public void testOpenWeatherMapSource() throws Throwable {
+        Forecast forecast = fixtureSource().fetch(new ForecastRequest("94043", 14, "metric"));
+
+        assertEquals(HttpURLConnection.HTTP_OK, forecast.messageCode);
+        assertEquals(ForecastFixtures.CITY_NAME, forecast.cityName);
+        assertEquals(14, forecast.getDayCount());
+        assertEquals(mServer.getUrl().substring("http://".length()), fixtureSource().getName());
+
+        String path = mServer.getRequests().get(0).path;
+        assertTrue(path.contains("q=94043"));
+        assertTrue(path.contains("cnt=14"));
+        assertTrue(path.contains("APPID=test-key"));
+    }
+
+    public void testUnknownCity() throws Throwable {
+        Forecast forecast = fixtureSource().fetch(new ForecastRequest("00000", 14, "metric"));
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND, forecast.messageCode);
+        assertFalse(forecast.hasCity());
+    }
+
+    public void testReplaySource() throws Throwable {
+        FileOutputStream out = new FileOutputStream(new File(mReplayDirectory, "94043.json"));
+        out.write(ForecastFixtures.forecast(14, 2).getBytes("UTF-8"));
+        out.close();
+        ReplayWeatherSource source = new ReplayWeatherSource(mReplayDirectory);
+
+        ForecastRequest request = new ForecastRequest("94043", 7, "metric");
+        Forecast forecast = source.fetch(request);
+        assertEquals(ForecastFixtures.CITY_NAME, forecast.cityName);
+        assertEquals("Error: replay should honour the requested number of days",
+                7, forecast.getDayCount());
+
+        request.lastModified = forecast.lastModified;
+        assertTrue("Error: an unchanged file should revalidate",
+                source.fetch(request).notModified);
+
+        assertEquals(HttpURLConnection.HTTP_NOT_FOUND,
+                source.fetch(new ForecastRequest("10001", 7, "metric")).messageCode);
+    }
+}
@@ -0,0 +1,218 @@
+package com.example.android.sunshine.app.utils;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A tiny HTTP/1.1 server on the loopback interface, for exercising the sync code against
+ * canned responses without touching the real weather API.  Every request is handed to a
+ * {@link Responder}; the requests received are recorded for assertions.
+ */
+public class StubHttpServer {
+
+    public static class Request {
+        public final String method;
+        public final String path;
+        /** Header names are lower case. */
+        public final Map<String, String> headers;
+
+        Request(String method, String path, Map<String, String> headers) {
+            this.method = method;
+            this.path = path;
+            this.headers = headers;
+        }
+    }
+
+    public static class Response {
+        public int status = 200;
+        public final Map<String, String> headers = new LinkedHashMap<String, String>();
+        public byte[] body = new byte[0];
+        /** Time to wait before answering, to simulate a slow server. */
+        public long delayMillis;
+
+        public static Response of(int status, String body) {
+            Response response = new Response();
+            response.status = status;
+            response.body = body.getBytes(java.nio.charset.Charset.forName("UTF-8"));
+            response.headers.put("Content-Type", "application/json; charset=utf-8");
+            return response;
+        }
+
+        public Response header(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+
+        public Response delay(long millis) {
+            delayMillis = millis;
+            return this;
+        }
+
+        /**
+         * Compresses the body with gzip if the request accepts it.
+         */
+        public Response gzipFor(Request request) throws IOException {
+            String acceptEncoding = request.headers.get("accept-encoding");
+            if (acceptEncoding == null || !acceptEncoding.contains("gzip")) {
+                return this;
+            }
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            GZIPOutputStream out = new GZIPOutputStream(compressed);
+            out.write(body);
+            out.close();
+            body = compressed.toByteArray();
+            return header("Content-Encoding", "gzip");
+        }
+    }
+
+    public interface Responder {
+        Response respond(Request request) throws IOException;
+    }
+
+    private final ServerSocket mServerSocket;
+    private final Responder mResponder;
+    private final List<Request> mRequests = Collections.synchronizedList(new ArrayList<Request>());
+    private volatile int mConnections;
+    private volatile boolean mRunning = true;
+
+    public StubHttpServer(Responder responder) throws IOException {
+        mResponder = responder;
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        Thread acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptLoop();
+            }
+        }, "StubHttpServer");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    /**
+     * @return the base URL of this server, e.g. "http://127.0.0.1:4321".
+     */
+    public String getUrl() {
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort();
+    }
+
+    public List<Request> getRequests() {
+        synchronized (mRequests) {
+            return new ArrayList<Request>(mRequests);
+        }
+    }
+
+    /**
+     * @return how many TCP connections were accepted, to tell apart reused connections.
+     */
+    public int getConnectionCount() {
+        return mConnections;
+    }
+
+    public void shutdown() {
+        mRunning = false;
+        try {
+            mServerSocket.close();
+        } catch (IOException e) {
+            // nothing left to clean up
+        }
+    }
+
+    private void acceptLoop() {
+        while (mRunning) {
+            try {
+                final Socket socket = mServerSocket.accept();
+                mConnections++;
+                Thread connectionThread = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }
+                }, "StubHttpServer-connection");
+                connectionThread.setDaemon(true);
+                connectionThread.start();
+            } catch (SocketException e) {
+                // closed by shutdown()
+                return;
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    // Serves requests on one connection until the client closes it.
+    private void serve(Socket socket) {
+        try {
+            BufferedReader in = new BufferedReader(
+                    new InputStreamReader(socket.getInputStream(), "ISO-8859-1"));
+            OutputStream out = socket.getOutputStream();
+            String requestLine;
+            while (mRunning && (requestLine = in.readLine()) != null) {
+                if (requestLine.length() == 0) {
+                    continue;
+                }
+                String[] parts = requestLine.split(" ");
+                Map<String, String> headers = new HashMap<String, String>();
+                String line;
+                while ((line = in.readLine()) != null && line.length() > 0) {
+                    int colon = line.indexOf(':');
+                    if (colon > 0) {
+                        headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US),
+                                line.substring(colon + 1).trim());
+                    }
+                }
+                Request request = new Request(parts[0], parts.length > 1 ? parts[1] : "/",
+                        headers);
+                mRequests.add(request);
+
+                Response response = mResponder.respond(request);
+                if (response.delayMillis > 0) {
+                    try {
+                        Thread.sleep(response.delayMillis);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                writeResponse(out, response);
+            }
+        } catch (IOException e) {
+            // the client went away
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // already closed
+            }
+        }
+    }
+
+    private static void writeResponse(OutputStream out, Response response) throws IOException {
+        boolean hasBody = response.status != 304 && response.status != 204;
+        StringBuilder head = new StringBuilder();
+        head.append("HTTP/1.1 ").append(response.status).append(" Stub\r\n");
+        for (Map.Entry<String, String> header : response.headers.entrySet()) {
+            head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        head.append("Content-Length: ").append(hasBody ? response.body.length : 0).append("\r\n");
+        head.append("\r\n");
+        out.write(head.toString().getBytes("ISO-8859-1"));
+        if (hasBody) {
+            out.write(response.body);
+        }
+        out.flush();
+    }
+}
@@ -46,6 +46,8 @@ import android.widget.AbsListView;
 import android.widget.TextView;
 
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.sync.ForecastFreshness;
+import com.example.android.sunshine.app.sync.ForecastHorizon;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
 /**
@@ -55,6 +57,8 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     public static final String LOG_TAG = ForecastFragment.class.getSimpleName();
     private ForecastAdapter mForecastAdapter;
     private RecyclerView mRecyclerView;
+    // Rows the user has seen since the fragment was resumed, which the sync horizon follows.
+    private int mDaysShown;
     private boolean mUseTodayLayout, mAutoSelectView;
     private int mChoiceMode;
     private boolean mHoldForTransition;
@@ -121,6 +125,9 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     public void onResume() {
         SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(getActivity());
         sp.registerOnSharedPreferenceChangeListener(this);
+        // The loader shows what is stored; a stale forecast is refreshed behind it.
+        new ForecastFreshness(getActivity())
+                .revalidateIfStale(Utility.getPreferredLocation(getActivity()));
         super.onResume();
     }
 
@@ -128,6 +135,11 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
     public void onPause() {
         SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(getActivity());
         sp.unregisterOnSharedPreferenceChangeListener(this);
+        if (mDaysShown > 0) {
+            new ForecastHorizon(getActivity()).recordNeed(ForecastHorizon.CONSUMER_FORECAST_LIST,
+                    mDaysShown, System.currentTimeMillis());
+            mDaysShown = 0;
+        }
         super.onPause();
     }
 
@@ -200,6 +212,16 @@ public class ForecastFragment extends Fragment implements LoaderManager.LoaderCa
         // specify an adapter (see also next example)
         mRecyclerView.setAdapter(mForecastAdapter);
 
+        final LinearLayoutManager layoutManager =
+                (LinearLayoutManager) mRecyclerView.getLayoutManager();
+        mRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                mDaysShown = Math.max(mDaysShown,
+                        layoutManager.findLastVisibleItemPosition() + 1);
+            }
+        });
+
         final View parallaxView = rootView.findViewById(R.id.parallax_bar);
         if (null != parallaxView) {
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
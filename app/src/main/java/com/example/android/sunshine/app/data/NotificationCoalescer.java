@@ -0,0 +1,185 @@
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Holds back the change notifications of the provider until writes have been quiet for
+ * {@link #QUIET_WINDOW_MILLIS}, so that a burst of writes, like the location upsert and the
+ * ingest of a sync or the rows of a bulk load, reloads every loader once rather than once per
+ * write.  A steady stream of writes is still notified every {@link #MAX_DELAY_MILLIS}.
+ *
+ * The URIs held back are merged before they are notified, see {@link #merge(Collection)}.
+ *
+ * Changes to the location table are notified right away, since caches of location ids, like
+ * the one of the sync, must be dropped as soon as the rows they point to change.  Those writes
+ * are rare, so holding them back would save next to nothing.
+ */
+class NotificationCoalescer {
+
+    static final long QUIET_WINDOW_MILLIS = 100;
+    static final long MAX_DELAY_MILLIS = 500;
+
+    // Siblings merged into their parent: two days of a location are one reload of its list
+    // either way, while merging locations into the table also reaches every other location.
+    static final int MERGE_DAYS = 2;
+    static final int MERGE_LOCATIONS = 4;
+
+    private final ContentResolver mResolver;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Set<Uri> mPending = new LinkedHashSet<Uri>();
+    // Notifications asked for since the last flush, counting every repeat.
+    private int mRequested;
+    private long mFirstPendingTime;
+    private long mNotifiedCount;
+    private long mSuppressedCount;
+
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    NotificationCoalescer(ContentResolver resolver) {
+        mResolver = resolver;
+    }
+
+    void add(Collection<Uri> uris) {
+        List<Uri> immediate = new ArrayList<Uri>();
+        synchronized (this) {
+            List<Uri> held = new ArrayList<Uri>(uris.size());
+            for (Uri uri : uris) {
+                (isLocation(uri) ? immediate : held).add(uri);
+            }
+            mNotifiedCount += immediate.size();
+            if (!held.isEmpty()) {
+                long now = SystemClock.uptimeMillis();
+                if (mPending.isEmpty()) {
+                    mFirstPendingTime = now;
+                }
+                mPending.addAll(held);
+                mRequested += held.size();
+                mHandler.removeCallbacks(mFlush);
+                mHandler.postAtTime(mFlush, Math.min(now + QUIET_WINDOW_MILLIS,
+                        mFirstPendingTime + MAX_DELAY_MILLIS));
+            }
+        }
+        for (Uri uri : immediate) {
+            mResolver.notifyChange(uri, null);
+        }
+    }
+
+    private static boolean isLocation(Uri uri) {
+        List<String> segments = uri.getPathSegments();
+        return !segments.isEmpty() && WeatherContract.PATH_LOCATION.equals(segments.get(0));
+    }
+
+    /**
+     * Notifies what is held back now.
+     */
+    void flush() {
+        List<Uri> uris;
+        synchronized (this) {
+            mHandler.removeCallbacks(mFlush);
+            if (mPending.isEmpty()) {
+                return;
+            }
+            uris = merge(mPending);
+            mNotifiedCount += uris.size();
+            mSuppressedCount += mRequested - uris.size();
+            mPending.clear();
+            mRequested = 0;
+        }
+        for (Uri uri : uris) {
+            mResolver.notifyChange(uri, null);
+        }
+    }
+
+    synchronized long getNotifiedCount() {
+        return mNotifiedCount;
+    }
+
+    synchronized long getSuppressedCount() {
+        return mSuppressedCount;
+    }
+
+    /**
+     * Drops every URI that another one in {@code uris} is an ancestor of, since a notification
+     * reaches all the observers below its URI, and replaces siblings by their parent once there
+     * are {@link #MERGE_DAYS} of them below a location, or {@link #MERGE_LOCATIONS} below a
+     * table.
+     */
+    static List<Uri> merge(Collection<Uri> uris) {
+        Set<Uri> merged = new LinkedHashSet<Uri>(uris);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            Map<Uri, List<Uri>> children = new LinkedHashMap<Uri, List<Uri>>();
+            for (Uri uri : merged) {
+                Uri parent = getParent(uri);
+                if (parent == null) {
+                    continue;
+                }
+                List<Uri> siblings = children.get(parent);
+                if (siblings == null) {
+                    siblings = new ArrayList<Uri>();
+                    children.put(parent, siblings);
+                }
+                siblings.add(uri);
+            }
+            for (Map.Entry<Uri, List<Uri>> entry : children.entrySet()) {
+                Uri parent = entry.getKey();
+                int threshold = parent.getPathSegments().size() > 1
+                        ? MERGE_DAYS : MERGE_LOCATIONS;
+                if (entry.getValue().size() >= threshold) {
+                    merged.removeAll(entry.getValue());
+                    merged.add(parent);
+                    changed = true;
+                }
+            }
+        }
+
+        List<Uri> result = new ArrayList<Uri>(merged.size());
+        for (Uri uri : merged) {
+            if (!hasAncestorIn(uri, merged)) {
+                result.add(uri);
+            }
+        }
+        return result;
+    }
+
+    private static boolean hasAncestorIn(Uri uri, Set<Uri> uris) {
+        for (Uri parent = getParent(uri); parent != null; parent = getParent(parent)) {
+            if (uris.contains(parent)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // The URI of the path one segment up, or null for a table or the authority.
+    private static Uri getParent(Uri uri) {
+        List<String> segments = uri.getPathSegments();
+        if (segments.size() < 2) {
+            return null;
+        }
+        Uri.Builder parent = new Uri.Builder().scheme(uri.getScheme())
+                .encodedAuthority(uri.getEncodedAuthority());
+        for (int i = 0; i < segments.size() - 1; i++) {
+            parent.appendPath(segments.get(i));
+        }
+        return parent.build();
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.android.sunshine.app.data;
+
+import android.os.Bundle;
+
+import java.util.Arrays;
+
+/**
+ * Rows for the weather table kept in one primitive array per column, for
+ * {@link WeatherContract#METHOD_INGEST_WEATHER}.  Unlike a ContentValues per row, adding a row
+ * boxes nothing, and a batch can be cleared and filled again without allocating.
+ *
+ * Dates must already be normalized with {@link WeatherContract#normalizeDate(long)}, or come from
+ * {@code Time.setJulianDay}, which gives the same value.
+ */
+public class WeatherBatch {
+
+    private static final String KEY_SIZE = "size";
+    private static final String KEY_LOCATION_IDS = "location_ids";
+    private static final String KEY_DATES = "dates";
+    private static final String KEY_SHORT_DESCS = "short_descs";
+    private static final String KEY_WEATHER_IDS = "weather_ids";
+    private static final String KEY_MIN_TEMPS = "min_temps";
+    private static final String KEY_MAX_TEMPS = "max_temps";
+    private static final String KEY_HUMIDITIES = "humidities";
+    private static final String KEY_PRESSURES = "pressures";
+    private static final String KEY_WIND_SPEEDS = "wind_speeds";
+    private static final String KEY_DEGREES = "degrees";
+
+    private int mSize;
+    private long[] mLocationIds;
+    private long[] mDates;
+    private String[] mShortDescs;
+    private int[] mWeatherIds;
+    private double[] mMinTemps;
+    private double[] mMaxTemps;
+    private double[] mHumidities;
+    private double[] mPressures;
+    private double[] mWindSpeeds;
+    private double[] mDegrees;
+
+    public WeatherBatch(int capacity) {
+        mLocationIds = new long[capacity];
+        mDates = new long[capacity];
+        mShortDescs = new String[capacity];
+        mWeatherIds = new int[capacity];
+        mMinTemps = new double[capacity];
+        mMaxTemps = new double[capacity];
+        mHumidities = new double[capacity];
+        mPressures = new double[capacity];
+        mWindSpeeds = new double[capacity];
+        mDegrees = new double[capacity];
+    }
+
+    public void add(long locationId, long date, String shortDesc, int weatherId, double minTemp,
+                    double maxTemp, double humidity, double pressure, double windSpeed,
+                    double degrees) {
+        if (mSize == mDates.length) {
+            grow();
+        }
+        mLocationIds[mSize] = locationId;
+        mDates[mSize] = date;
+        mShortDescs[mSize] = shortDesc;
+        mWeatherIds[mSize] = weatherId;
+        mMinTemps[mSize] = minTemp;
+        mMaxTemps[mSize] = maxTemp;
+        mHumidities[mSize] = humidity;
+        mPressures[mSize] = pressure;
+        mWindSpeeds[mSize] = windSpeed;
+        mDegrees[mSize] = degrees;
+        mSize++;
+    }
+
+    /**
+     * Adds a copy of row {@code i} of {@code other}.
+     */
+    public void add(WeatherBatch other, int i) {
+        add(other.mLocationIds[i], other.mDates[i], other.mShortDescs[i], other.mWeatherIds[i],
+                other.mMinTemps[i], other.mMaxTemps[i], other.mHumidities[i],
+                other.mPressures[i], other.mWindSpeeds[i], other.mDegrees[i]);
+    }
+
+    private void grow() {
+        int capacity = Math.max(16, mDates.length * 2);
+        mLocationIds = Arrays.copyOf(mLocationIds, capacity);
+        mDates = Arrays.copyOf(mDates, capacity);
+        mShortDescs = Arrays.copyOf(mShortDescs, capacity);
+        mWeatherIds = Arrays.copyOf(mWeatherIds, capacity);
+        mMinTemps = Arrays.copyOf(mMinTemps, capacity);
+        mMaxTemps = Arrays.copyOf(mMaxTemps, capacity);
+        mHumidities = Arrays.copyOf(mHumidities, capacity);
+        mPressures = Arrays.copyOf(mPressures, capacity);
+        mWindSpeeds = Arrays.copyOf(mWindSpeeds, capacity);
+        mDegrees = Arrays.copyOf(mDegrees, capacity);
+    }
+
+    /**
+     * Empties the batch, keeping its arrays for the next rows.
+     */
+    public void clear() {
+        Arrays.fill(mShortDescs, 0, mSize, null);
+        mSize = 0;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public long getLocationId(int i) {
+        return mLocationIds[i];
+    }
+
+    public long getDate(int i) {
+        return mDates[i];
+    }
+
+    public String getShortDesc(int i) {
+        return mShortDescs[i];
+    }
+
+    public int getWeatherId(int i) {
+        return mWeatherIds[i];
+    }
+
+    public double getMinTemp(int i) {
+        return mMinTemps[i];
+    }
+
+    public double getMaxTemp(int i) {
+        return mMaxTemps[i];
+    }
+
+    public double getHumidity(int i) {
+        return mHumidities[i];
+    }
+
+    public double getPressure(int i) {
+        return mPressures[i];
+    }
+
+    public double getWindSpeed(int i) {
+        return mWindSpeeds[i];
+    }
+
+    public double getDegrees(int i) {
+        return mDegrees[i];
+    }
+
+    /**
+     * Puts the batch into {@code extras}.  The arrays are shared, not copied, so the batch must
+     * not change until the provider call returned.
+     */
+    public void writeTo(Bundle extras) {
+        extras.putInt(KEY_SIZE, mSize);
+        extras.putLongArray(KEY_LOCATION_IDS, mLocationIds);
+        extras.putLongArray(KEY_DATES, mDates);
+        extras.putStringArray(KEY_SHORT_DESCS, mShortDescs);
+        extras.putIntArray(KEY_WEATHER_IDS, mWeatherIds);
+        extras.putDoubleArray(KEY_MIN_TEMPS, mMinTemps);
+        extras.putDoubleArray(KEY_MAX_TEMPS, mMaxTemps);
+        extras.putDoubleArray(KEY_HUMIDITIES, mHumidities);
+        extras.putDoubleArray(KEY_PRESSURES, mPressures);
+        extras.putDoubleArray(KEY_WIND_SPEEDS, mWindSpeeds);
+        extras.putDoubleArray(KEY_DEGREES, mDegrees);
+    }
+
+    /**
+     * @return the batch written to {@code extras} by {@link #writeTo(Bundle)}, sharing its arrays.
+     */
+    public static WeatherBatch readFrom(Bundle extras) {
+        WeatherBatch batch = new WeatherBatch(0);
+        batch.mSize = extras.getInt(KEY_SIZE);
+        batch.mLocationIds = extras.getLongArray(KEY_LOCATION_IDS);
+        batch.mDates = extras.getLongArray(KEY_DATES);
+        batch.mShortDescs = extras.getStringArray(KEY_SHORT_DESCS);
+        batch.mWeatherIds = extras.getIntArray(KEY_WEATHER_IDS);
+        batch.mMinTemps = extras.getDoubleArray(KEY_MIN_TEMPS);
+        batch.mMaxTemps = extras.getDoubleArray(KEY_MAX_TEMPS);
+        batch.mHumidities = extras.getDoubleArray(KEY_HUMIDITIES);
+        batch.mPressures = extras.getDoubleArray(KEY_PRESSURES);
+        batch.mWindSpeeds = extras.getDoubleArray(KEY_WIND_SPEEDS);
+        batch.mDegrees = extras.getDoubleArray(KEY_DEGREES);
+        return batch;
+    }
+}
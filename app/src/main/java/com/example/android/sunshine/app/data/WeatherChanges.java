@@ -0,0 +1,122 @@
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * What a write to the provider changed, turned into the narrowest URIs to notify once it
+ * committed.  Weather rows are kept as the dates written per location, so that a loader of one
+ * location or one day only reloads when its own rows changed:
+ * <ul>
+ *     <li>one day of a location is notified on weather/[location]/[date], which reaches the
+ *     detail of that day and the forecast list of that location;</li>
+ *     <li>several days of a location are notified once on weather/[location], rather than once
+ *     per day, which would reload the forecast list as many times;</li>
+ *     <li>the rows of a location that no longer exists are notified on weather, the only URI
+ *     left that reaches their observers.</li>
+ * </ul>
+ */
+class WeatherChanges {
+
+    // Dates written per location id, in the order written.
+    private final Map<Long, Set<Long>> mDates = new LinkedHashMap<Long, Set<Long>>();
+    private final Set<Uri> mUris = new LinkedHashSet<Uri>();
+
+    void addWeather(long locationId, long date) {
+        Set<Long> dates = mDates.get(locationId);
+        if (dates == null) {
+            dates = new LinkedHashSet<Long>();
+            mDates.put(locationId, dates);
+        }
+        dates.add(date);
+    }
+
+    /**
+     * Adds the location id and date of every row of {@code weather}, which holds the columns
+     * {@link WeatherEntry#COLUMN_LOC_KEY} and {@link WeatherEntry#COLUMN_DATE} in that order.
+     */
+    void addWeather(Cursor weather) {
+        weather.moveToPosition(-1);
+        while (weather.moveToNext()) {
+            addWeather(weather.getLong(0), weather.getLong(1));
+        }
+    }
+
+    void addUri(Uri uri) {
+        mUris.add(uri);
+    }
+
+    void addAll(WeatherChanges other) {
+        for (Map.Entry<Long, Set<Long>> entry : other.mDates.entrySet()) {
+            for (long date : entry.getValue()) {
+                addWeather(entry.getKey(), date);
+            }
+        }
+        mUris.addAll(other.mUris);
+    }
+
+    boolean isEmpty() {
+        return mDates.isEmpty() && mUris.isEmpty();
+    }
+
+    /**
+     * @return the URIs to notify, each once.  Looks up the location setting of every location
+     * written in {@code db}, so call it after the change committed.
+     */
+    List<Uri> toUris(SQLiteDatabase db) {
+        Set<Uri> uris = new LinkedHashSet<Uri>();
+        Map<Long, String> settings = getLocationSettings(db, mDates.keySet());
+        for (Map.Entry<Long, Set<Long>> entry : mDates.entrySet()) {
+            String locationSetting = settings.get(entry.getKey());
+            Set<Long> dates = entry.getValue();
+            if (locationSetting == null) {
+                uris.add(WeatherEntry.CONTENT_URI);
+            } else if (dates.size() == 1) {
+                uris.add(WeatherEntry.buildWeatherLocationWithDate(locationSetting,
+                        dates.iterator().next()));
+            } else {
+                uris.add(WeatherEntry.buildWeatherLocation(locationSetting));
+            }
+        }
+        uris.addAll(mUris);
+        return new ArrayList<Uri>(uris);
+    }
+
+    private static Map<Long, String> getLocationSettings(SQLiteDatabase db, Set<Long> ids) {
+        Map<Long, String> settings = new HashMap<Long, String>();
+        if (ids.isEmpty()) {
+            return settings;
+        }
+        StringBuilder selection = new StringBuilder(LocationEntry._ID).append(" IN (");
+        String[] selectionArgs = new String[ids.size()];
+        int i = 0;
+        for (long id : ids) {
+            selection.append(i == 0 ? "?" : ", ?");
+            selectionArgs[i++] = Long.toString(id);
+        }
+        selection.append(')');
+        Cursor cursor = db.query(LocationEntry.TABLE_NAME,
+                new String[]{LocationEntry._ID, LocationEntry.COLUMN_LOCATION_SETTING},
+                selection.toString(), selectionArgs, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                settings.put(cursor.getLong(0), cursor.getString(1));
+            }
+        } finally {
+            cursor.close();
+        }
+        return settings;
+    }
+}
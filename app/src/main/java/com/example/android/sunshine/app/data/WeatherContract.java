@@ -43,6 +43,59 @@ public class WeatherContract {
     // At least, let's hope not.  Don't be that dev, reader.  Don't be that dev.
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
+    public static final String PATH_SYNC_JOURNAL = "sync_journal";
+
+    // Provider call() returning the duration percentiles of every phase in the sync journal,
+    // as a Bundle of Bundles keyed by phase.
+    public static final String METHOD_SYNC_JOURNAL_PERCENTILES = "syncJournalPercentiles";
+    public static final String KEY_COUNT = "count";
+    public static final String KEY_P50 = "p50";
+    public static final String KEY_P90 = "p90";
+    public static final String KEY_P99 = "p99";
+    public static final String KEY_MAX = "max";
+    public static final String KEY_BYTES = "bytes";
+
+    // Provider call() inserting the location in the extras unless its location setting is
+    // already stored, returning the _id of the row either way under KEY_LOCATION_ID.
+    public static final String METHOD_UPSERT_LOCATION = "upsertLocation";
+    public static final String KEY_LOCATION_ID = "location_id";
+
+    // Provider call() inserting the WeatherBatch in the extras and, if KEY_PRUNE_DATE is given,
+    // deleting the weather dated on or before it, in one transaction.  Returns the numbers of
+    // rows under KEY_INSERTED and KEY_DELETED.
+    public static final String METHOD_INGEST_WEATHER = "ingestWeather";
+    public static final String KEY_PRUNE_DATE = "prune_date";
+    public static final String KEY_INSERTED = "inserted";
+    public static final String KEY_DELETED = "deleted";
+
+    // Provider call() returning how many weather queries for a location were answered from
+    // memory, under KEY_HITS, and how many went to the database, under KEY_MISSES.
+    public static final String METHOD_QUERY_CACHE_STATS = "queryCacheStats";
+    public static final String KEY_HITS = "hits";
+    public static final String KEY_MISSES = "misses";
+
+    // Provider call() returning how many change notifications were sent, under KEY_NOTIFIED, and
+    // how many were merged into others or dropped, under KEY_SUPPRESSED.
+    public static final String METHOD_NOTIFICATION_STATS = "notificationStats";
+    public static final String KEY_NOTIFIED = "notified";
+    public static final String KEY_SUPPRESSED = "suppressed";
+
+    // Provider call() sending the change notifications held back, for a writer that knows it is
+    // done, rather than waiting for writes to be quiet.
+    public static final String METHOD_FLUSH_NOTIFICATIONS = "flushNotifications";
+
+    // Provider call() returning the first day stored from today on for the location setting
+    // given as arg, under WeatherEntry.COLUMN_DATE, COLUMN_WEATHER_ID, COLUMN_MAX_TEMP,
+    // COLUMN_MIN_TEMP and COLUMN_SHORT_DESC, or null if there is none.  A date in the extras
+    // under WeatherEntry.COLUMN_DATE is used instead of today.
+    public static final String METHOD_TODAY_SUMMARY = "todaySummary";
+
+    // Provider call() returning up to WEEK_SUMMARY_DAYS days from today on for the location
+    // setting given as arg, as parallel arrays under WeatherEntry.COLUMN_DATE (long[]),
+    // COLUMN_WEATHER_ID (int[]), COLUMN_MAX_TEMP and COLUMN_MIN_TEMP (double[]).  Takes a date
+    // in the extras like METHOD_TODAY_SUMMARY.
+    public static final String METHOD_WEEK_SUMMARY = "weekSummary";
+    public static final int WEEK_SUMMARY_DAYS = 7;
 
     // To make it easy to query for the exact date, we normalize all dates that go into
     // the database to the start of the the Julian day at UTC.
@@ -86,6 +139,36 @@ public class WeatherContract {
         }
     }
 
+    /* Inner class that defines the table contents of the sync journal table */
+    public static final class SyncJournalEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_SYNC_JOURNAL).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_SYNC_JOURNAL;
+
+        public static final String TABLE_NAME = "sync_journal";
+
+        // The journal only keeps this many rows, the oldest are dropped first.
+        public static final int MAX_ROWS = 5000;
+
+        // Start of the sync the row belongs to, in milliseconds since the epoch
+        public static final String COLUMN_SYNC_TIME = "sync_time";
+
+        // Location that was synced, or empty for phases that are not per location
+        public static final String COLUMN_LOCATION_SETTING = "location_setting";
+
+        // Name of the phase, e.g. "parse" or "bulk_insert"
+        public static final String COLUMN_PHASE = "phase";
+
+        // Time spent in the phase, in microseconds
+        public static final String COLUMN_DURATION = "duration";
+
+        // Bytes transferred during the phase, 0 for phases without network traffic
+        public static final String COLUMN_BYTES = "bytes";
+    }
+
     /* Inner class that defines the table contents of the weather table */
     public static final class WeatherEntry implements BaseColumns {
 
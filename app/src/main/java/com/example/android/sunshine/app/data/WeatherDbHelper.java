@@ -15,11 +15,15 @@
  */
 package com.example.android.sunshine.app.data;
 
+import android.annotation.TargetApi;
 import android.content.Context;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.os.Build;
 
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.SyncJournalEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
 /**
@@ -27,72 +31,175 @@ import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
  */
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
-    // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    // If you change the database schema, you must increment the database version and append
+    // the step from the previous version to sMigrations.
+    static final int DATABASE_VERSION = 4;
 
     static final String DATABASE_NAME = "weather.db";
 
+    // Every weather query of the provider picks a location first and then a day or a range of
+    // days.  The UNIQUE (date, location_id) constraint leads with the date, so it only serves the
+    // prune of old days.
+    static final String INDEX_WEATHER_LOCATION_DATE = "weather_location_date";
+
+    // A sync writes a few pages per location, so checkpoint after a sync or two rather than at
+    // SQLite's default of 1000 pages, which keeps the log, and the part of it every reader has to
+    // look through, short.
+    static final int WAL_AUTOCHECKPOINT_PAGES = 100;
+    // The log is truncated back to this size after a checkpoint instead of keeping its peak size.
+    static final long WAL_SIZE_LIMIT_BYTES = 512 * 1024;
+
+    // Create a table to hold locations.  A location consists of the string supplied in the
+    // location setting, the city name, and the latitude and longitude
+    static final String SQL_CREATE_LOCATION_TABLE = "CREATE TABLE " + LocationEntry.TABLE_NAME + " (" +
+            LocationEntry._ID + " INTEGER PRIMARY KEY," +
+            LocationEntry.COLUMN_LOCATION_SETTING + " TEXT UNIQUE NOT NULL, " +
+            LocationEntry.COLUMN_CITY_NAME + " TEXT NOT NULL, " +
+            LocationEntry.COLUMN_COORD_LAT + " REAL NOT NULL, " +
+            LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL " +
+            " );";
+
+    static final String SQL_CREATE_WEATHER_TABLE = "CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
+            // Why AutoIncrement here, and not above?
+            // Unique keys will be auto-generated in either case.  But for weather
+            // forecasting, it's reasonable to assume the user will want information
+            // for a certain date and all dates *following*, so the forecast data
+            // should be sorted accordingly.
+            WeatherEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+
+            // the ID of the location entry associated with this weather data
+            WeatherEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+            WeatherEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
+            WeatherEntry.COLUMN_SHORT_DESC + " TEXT NOT NULL, " +
+            WeatherEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL," +
+
+            WeatherEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
+            WeatherEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
+
+            WeatherEntry.COLUMN_HUMIDITY + " REAL NOT NULL, " +
+            WeatherEntry.COLUMN_PRESSURE + " REAL NOT NULL, " +
+            WeatherEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
+            WeatherEntry.COLUMN_DEGREES + " REAL NOT NULL, " +
+
+            // Set up the location column as a foreign key to location table.
+            " FOREIGN KEY (" + WeatherEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+            LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+
+            // To assure the application have just one weather entry per day
+            // per location, it's created a UNIQUE constraint with REPLACE strategy
+            " UNIQUE (" + WeatherEntry.COLUMN_DATE + ", " +
+            WeatherEntry.COLUMN_LOC_KEY + ") ON CONFLICT REPLACE);";
+
+    // The sync journal holds the duration of every phase of recent syncs, for profiling.
+    static final String SQL_CREATE_SYNC_JOURNAL_TABLE = "CREATE TABLE " + SyncJournalEntry.TABLE_NAME + " (" +
+            SyncJournalEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
+            SyncJournalEntry.COLUMN_SYNC_TIME + " INTEGER NOT NULL, " +
+            SyncJournalEntry.COLUMN_LOCATION_SETTING + " TEXT NOT NULL, " +
+            SyncJournalEntry.COLUMN_PHASE + " TEXT NOT NULL, " +
+            SyncJournalEntry.COLUMN_DURATION + " INTEGER NOT NULL, " +
+            SyncJournalEntry.COLUMN_BYTES + " INTEGER NOT NULL DEFAULT 0 " +
+            " );";
+
+    // location_setting needs no index of its own, its UNIQUE constraint already has one.
+    static final String SQL_CREATE_WEATHER_LOCATION_DATE_INDEX = "CREATE INDEX " +
+            INDEX_WEATHER_LOCATION_DATE + " ON " + WeatherEntry.TABLE_NAME + " (" +
+            WeatherEntry.COLUMN_LOC_KEY + ", " + WeatherEntry.COLUMN_DATE + ");";
+
+    /**
+     * Brings the schema of weather.db from one version to the next, keeping the data.
+     */
+    interface Migration {
+        void migrate(SQLiteDatabase db);
+    }
+
+    // Databases older than this are dropped and created again on upgrade.
+    static final int OLDEST_MIGRATED_VERSION = 2;
+
+    // sMigrations[i] upgrades version OLDEST_MIGRATED_VERSION + i to the next one.  Append a step
+    // for every new version; never change a step that was released.
+    static final Migration[] sMigrations = {
+            // 2 -> 3: the sync journal
+            new Migration() {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    db.execSQL(SQL_CREATE_SYNC_JOURNAL_TABLE);
+                }
+            },
+            // 3 -> 4: weather by location, then date
+            new Migration() {
+                @Override
+                public void migrate(SQLiteDatabase db) {
+                    db.execSQL(SQL_CREATE_WEATHER_LOCATION_DATE_INDEX);
+                }
+            },
+    };
+
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // With write-ahead logging the widgets, Muzei, the loaders and the watch face read from
+        // their own connections while a sync writes, instead of waiting for its transaction.
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            setWriteAheadLoggingEnabled(true);
+        }
     }
 
     @Override
-    public void onCreate(SQLiteDatabase sqLiteDatabase) {
-        // Create a table to hold locations.  A location consists of the string supplied in the
-        // location setting, the city name, and the latitude and longitude
-        final String SQL_CREATE_LOCATION_TABLE = "CREATE TABLE " + LocationEntry.TABLE_NAME + " (" +
-                LocationEntry._ID + " INTEGER PRIMARY KEY," +
-                LocationEntry.COLUMN_LOCATION_SETTING + " TEXT UNIQUE NOT NULL, " +
-                LocationEntry.COLUMN_CITY_NAME + " TEXT NOT NULL, " +
-                LocationEntry.COLUMN_COORD_LAT + " REAL NOT NULL, " +
-                LocationEntry.COLUMN_COORD_LONG + " REAL NOT NULL " +
-                " );";
-
-        final String SQL_CREATE_WEATHER_TABLE = "CREATE TABLE " + WeatherEntry.TABLE_NAME + " (" +
-                // Why AutoIncrement here, and not above?
-                // Unique keys will be auto-generated in either case.  But for weather
-                // forecasting, it's reasonable to assume the user will want information
-                // for a certain date and all dates *following*, so the forecast data
-                // should be sorted accordingly.
-                WeatherEntry._ID + " INTEGER PRIMARY KEY AUTOINCREMENT," +
-
-                // the ID of the location entry associated with this weather data
-                WeatherEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
-                WeatherEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
-                WeatherEntry.COLUMN_SHORT_DESC + " TEXT NOT NULL, " +
-                WeatherEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL," +
-
-                WeatherEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
-                WeatherEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
-
-                WeatherEntry.COLUMN_HUMIDITY + " REAL NOT NULL, " +
-                WeatherEntry.COLUMN_PRESSURE + " REAL NOT NULL, " +
-                WeatherEntry.COLUMN_WIND_SPEED + " REAL NOT NULL, " +
-                WeatherEntry.COLUMN_DEGREES + " REAL NOT NULL, " +
-
-                // Set up the location column as a foreign key to location table.
-                " FOREIGN KEY (" + WeatherEntry.COLUMN_LOC_KEY + ") REFERENCES " +
-                LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
-
-                // To assure the application have just one weather entry per day
-                // per location, it's created a UNIQUE constraint with REPLACE strategy
-                " UNIQUE (" + WeatherEntry.COLUMN_DATE + ", " +
-                WeatherEntry.COLUMN_LOC_KEY + ") ON CONFLICT REPLACE);";
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (db.isReadOnly()) {
+            return;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                && Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            db.enableWriteAheadLogging();
+        }
+        if (isWriteAheadLogging(db)) {
+            DatabaseUtils.longForQuery(db,
+                    "PRAGMA wal_autocheckpoint=" + WAL_AUTOCHECKPOINT_PAGES, null);
+            DatabaseUtils.longForQuery(db,
+                    "PRAGMA journal_size_limit=" + WAL_SIZE_LIMIT_BYTES, null);
+            // The database is a cache of online data, so a commit lost to a power cut is simply
+            // fetched again.  In WAL mode this only gives up durability, not consistency.
+            db.execSQL("PRAGMA synchronous=NORMAL");
+        }
+    }
+
+    /**
+     * @return true if {@code db} keeps a write-ahead log rather than a rollback journal.
+     */
+    static boolean isWriteAheadLogging(SQLiteDatabase db) {
+        return "wal".equalsIgnoreCase(
+                DatabaseUtils.stringForQuery(db, "PRAGMA journal_mode", null));
+    }
 
+    @Override
+    public void onCreate(SQLiteDatabase sqLiteDatabase) {
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_LOCATION_DATE_INDEX);
+        sqLiteDatabase.execSQL(SQL_CREATE_SYNC_JOURNAL_TABLE);
     }
 
+    /**
+     * Runs every migration step from {@code oldVersion} on, so that an upgrade keeps the stored
+     * forecasts and upgraded devices do not all fetch everything again at once.  The steps run in
+     * the transaction SQLiteOpenHelper opens for the upgrade, so a failing step leaves the old
+     * schema in place.
+     */
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
-        // This database is only a cache for online data, so its upgrade policy is
-        // to simply to discard the data and start over
-        // Note that this only fires if you change the version number for your database.
-        // It does NOT depend on the version number for your application.
-        // If you want to update the schema without wiping data, commenting out the next 2 lines
-        // should be your top priority before modifying this method.
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
-        onCreate(sqLiteDatabase);
+        if (oldVersion < OLDEST_MIGRATED_VERSION) {
+            // This database is only a cache for online data, so a schema too old to migrate is
+            // simply discarded and created again.
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + SyncJournalEntry.TABLE_NAME);
+            onCreate(sqLiteDatabase);
+            return;
+        }
+        for (int version = oldVersion; version < newVersion; version++) {
+            sMigrations[version - OLDEST_MIGRATED_VERSION].migrate(sqLiteDatabase);
+        }
     }
 }
@@ -17,25 +17,73 @@ package com.example.android.sunshine.app.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Bundle;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.SyncJournalEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
 
 public class WeatherProvider extends ContentProvider {
 
     // The URI Matcher used by this content provider.
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
+    private final WeatherQueryCache mQueryCache = new WeatherQueryCache();
+    private NotificationCoalescer mNotifications;
+    // Changes made by an applyBatch() running on this thread, notified once it commits.
+    private final ThreadLocal<WeatherChanges> mPendingChanges = new ThreadLocal<WeatherChanges>();
+    // Compiled once and bound again for every row ingested; guarded by ingestWeather().
+    private SQLiteStatement mInsertWeatherStatement;
+
+    // The columns of mInsertWeatherStatement, in the order they are bound.
+    private static final String sInsertWeatherSql = "INSERT INTO " + WeatherEntry.TABLE_NAME + " ("
+            + WeatherEntry.COLUMN_LOC_KEY + ", "
+            + WeatherEntry.COLUMN_DATE + ", "
+            + WeatherEntry.COLUMN_SHORT_DESC + ", "
+            + WeatherEntry.COLUMN_WEATHER_ID + ", "
+            + WeatherEntry.COLUMN_MIN_TEMP + ", "
+            + WeatherEntry.COLUMN_MAX_TEMP + ", "
+            + WeatherEntry.COLUMN_HUMIDITY + ", "
+            + WeatherEntry.COLUMN_PRESSURE + ", "
+            + WeatherEntry.COLUMN_WIND_SPEED + ", "
+            + WeatherEntry.COLUMN_DEGREES
+            + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // The columns of the summaries, in this order.
+    private static final String[] sSummaryColumns = {
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_SHORT_DESC
+    };
+    private static final int SUMMARY_DATE = 0;
+    private static final int SUMMARY_WEATHER_ID = 1;
+    private static final int SUMMARY_MAX_TEMP = 2;
+    private static final int SUMMARY_MIN_TEMP = 3;
+    private static final int SUMMARY_SHORT_DESC = 4;
 
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
     static final int LOCATION = 300;
+    static final int SYNC_JOURNAL = 400;
 
-    private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
+    static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
 
     static{
         sWeatherByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
@@ -52,18 +100,18 @@ public class WeatherProvider extends ContentProvider {
     }
 
     //location.location_setting = ?
-    private static final String sLocationSettingSelection =
+    static final String sLocationSettingSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? ";
 
     //location.location_setting = ? AND date >= ?
-    private static final String sLocationSettingWithStartDateSelection =
+    static final String sLocationSettingWithStartDateSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ";
 
     //location.location_setting = ? AND date = ?
-    private static final String sLocationSettingAndDaySelection =
+    static final String sLocationSettingAndDaySelection =
             WeatherContract.LocationEntry.TABLE_NAME +
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
@@ -108,6 +156,24 @@ public class WeatherProvider extends ContentProvider {
         );
     }
 
+    /**
+     * Answers the queries for a location from {@link WeatherQueryCache} if it can, and from the
+     * database otherwise.
+     */
+    private Cursor getWeatherByLocationSettingCached(Uri uri, String[] projection,
+                                                     String sortOrder) {
+        String key = WeatherQueryCache.keyFor(uri, projection, sortOrder);
+        Cursor cached = mQueryCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        int generation = mQueryCache.getGeneration();
+        Cursor cursor = sUriMatcher.match(uri) == WEATHER_WITH_LOCATION_AND_DATE
+                ? getWeatherByLocationSettingAndDate(uri, projection, sortOrder)
+                : getWeatherByLocationSetting(uri, projection, sortOrder);
+        return mQueryCache.put(key, generation, cursor);
+    }
+
     /*
         Students: Here is where you need to create the UriMatcher. This UriMatcher will
         match each URI to the WEATHER, WEATHER_WITH_LOCATION, WEATHER_WITH_LOCATION_AND_DATE,
@@ -130,6 +196,7 @@ public class WeatherProvider extends ContentProvider {
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/#", WEATHER_WITH_LOCATION_AND_DATE);
 
         matcher.addURI(authority, WeatherContract.PATH_LOCATION, LOCATION);
+        matcher.addURI(authority, WeatherContract.PATH_SYNC_JOURNAL, SYNC_JOURNAL);
         return matcher;
     }
 
@@ -140,6 +207,7 @@ public class WeatherProvider extends ContentProvider {
     @Override
     public boolean onCreate() {
         mOpenHelper = new WeatherDbHelper(getContext());
+        mNotifications = new NotificationCoalescer(getContext().getContentResolver());
         return true;
     }
 
@@ -164,6 +232,8 @@ public class WeatherProvider extends ContentProvider {
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case LOCATION:
                 return WeatherContract.LocationEntry.CONTENT_TYPE;
+            case SYNC_JOURNAL:
+                return SyncJournalEntry.CONTENT_TYPE;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -178,13 +248,9 @@ public class WeatherProvider extends ContentProvider {
         switch (sUriMatcher.match(uri)) {
             // "weather/*/*"
             case WEATHER_WITH_LOCATION_AND_DATE:
-            {
-                retCursor = getWeatherByLocationSettingAndDate(uri, projection, sortOrder);
-                break;
-            }
             // "weather/*"
             case WEATHER_WITH_LOCATION: {
-                retCursor = getWeatherByLocationSetting(uri, projection, sortOrder);
+                retCursor = getWeatherByLocationSettingCached(uri, projection, sortOrder);
                 break;
             }
             // "weather"
@@ -213,6 +279,19 @@ public class WeatherProvider extends ContentProvider {
                 );
                 break;
             }
+            // "sync_journal"
+            case SYNC_JOURNAL: {
+                retCursor = mOpenHelper.getReadableDatabase().query(
+                        SyncJournalEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder
+                );
+                break;
+            }
 
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
@@ -229,6 +308,7 @@ public class WeatherProvider extends ContentProvider {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         Uri returnUri;
+        WeatherChanges changes = new WeatherChanges();
 
         switch (match) {
             case WEATHER: {
@@ -238,6 +318,8 @@ public class WeatherProvider extends ContentProvider {
                     returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                changes.addWeather(values.getAsLong(WeatherEntry.COLUMN_LOC_KEY),
+                        values.getAsLong(WeatherEntry.COLUMN_DATE));
                 break;
             }
             case LOCATION: {
@@ -246,12 +328,14 @@ public class WeatherProvider extends ContentProvider {
                     returnUri = WeatherContract.LocationEntry.buildLocationUri(_id);
                 else
                     throw new android.database.SQLException("Failed to insert row into " + uri);
+                // A new location does not move any other, see upsertLocation().
+                changes.addUri(returnUri);
                 break;
             }
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
+        notifyChange(changes);
         return returnUri;
     }
 
@@ -260,23 +344,36 @@ public class WeatherProvider extends ContentProvider {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         int rowsDeleted;
+        WeatherChanges changes = new WeatherChanges();
         // this makes delete all rows return the number of rows deleted
         if ( null == selection ) selection = "1";
         switch (match) {
             case WEATHER:
-                rowsDeleted = db.delete(
-                        WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+                db.beginTransaction();
+                try {
+                    addWeatherChanges(db, selection, selectionArgs, changes);
+                    rowsDeleted = db.delete(
+                            WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
                 break;
             case LOCATION:
                 rowsDeleted = db.delete(
                         WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
+                changes.addUri(uri);
+                break;
+            case SYNC_JOURNAL:
+                rowsDeleted = db.delete(SyncJournalEntry.TABLE_NAME, selection, selectionArgs);
+                changes.addUri(uri);
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         // Because a null deletes all rows
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(changes);
         }
         return rowsDeleted;
     }
@@ -295,22 +392,40 @@ public class WeatherProvider extends ContentProvider {
         final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         int rowsUpdated;
+        WeatherChanges changes = new WeatherChanges();
 
         switch (match) {
             case WEATHER:
                 normalizeDate(values);
-                rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values, selection,
-                        selectionArgs);
+                db.beginTransaction();
+                try {
+                    addWeatherChanges(db, selection, selectionArgs, changes);
+                    rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values,
+                            selection, selectionArgs);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+                // Rows moved to another location or day are also notified where they went.
+                boolean movesLocation = values.containsKey(WeatherEntry.COLUMN_LOC_KEY);
+                boolean movesDate = values.containsKey(WeatherEntry.COLUMN_DATE);
+                if (movesLocation && movesDate) {
+                    changes.addWeather(values.getAsLong(WeatherEntry.COLUMN_LOC_KEY),
+                            values.getAsLong(WeatherEntry.COLUMN_DATE));
+                } else if (movesLocation || movesDate) {
+                    changes.addUri(WeatherEntry.CONTENT_URI);
+                }
                 break;
             case LOCATION:
                 rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
                         selectionArgs);
+                changes.addUri(uri);
                 break;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(changes);
         }
         return rowsUpdated;
     }
@@ -323,31 +438,376 @@ public class WeatherProvider extends ContentProvider {
             case WEATHER:
                 db.beginTransaction();
                 int returnCount = 0;
+                WeatherChanges changes = new WeatherChanges();
                 try {
                     for (ContentValues value : values) {
                         normalizeDate(value);
                         long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
                         if (_id != -1) {
                             returnCount++;
+                            changes.addWeather(value.getAsLong(WeatherEntry.COLUMN_LOC_KEY),
+                                    value.getAsLong(WeatherEntry.COLUMN_DATE));
                         }
                     }
                     db.setTransactionSuccessful();
                 } finally {
                     db.endTransaction();
                 }
-                getContext().getContentResolver().notifyChange(uri, null);
+                if (returnCount > 0) {
+                    notifyChange(changes);
+                }
                 return returnCount;
+            case SYNC_JOURNAL:
+                return insertSyncJournal(db, values);
             default:
                 return super.bulkInsert(uri, values);
         }
     }
 
+    /**
+     * Applies the operations in a single transaction, so that observers never see part of them.
+     * The changes are notified once the transaction committed, as if they were one write.
+     *
+     * The sync stores forecasts this way on devices before Honeycomb, which cannot reach
+     * {@link WeatherContract#METHOD_INGEST_WEATHER}.  Everything else is other callers' batches.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        WeatherChanges pending = new WeatherChanges();
+        ContentProviderResult[] results;
+        mPendingChanges.set(pending);
+        db.beginTransaction();
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            mPendingChanges.remove();
+        }
+        notifyChange(pending);
+        return results;
+    }
+
+    /**
+     * Drops the cached query results a committed change may have made stale, and tells observers
+     * about it on the narrowest URIs that cover it, through {@link NotificationCoalescer}.  Only
+     * ever called after the change was committed, so that a query cannot put the old rows back
+     * into the cache.
+     */
+    private void notifyChange(WeatherChanges changes) {
+        WeatherChanges pending = mPendingChanges.get();
+        if (pending != null) {
+            pending.addAll(changes);
+        } else if (!changes.isEmpty()) {
+            mQueryCache.invalidate();
+            mNotifications.add(changes.toUris(mOpenHelper.getReadableDatabase()));
+        }
+    }
+
+    /**
+     * Adds the weather rows matching {@code selection} to {@code changes}, before they are
+     * updated or deleted.  Deleting every row is notified on weather without looking them up.
+     */
+    private static void addWeatherChanges(SQLiteDatabase db, String selection,
+                                          String[] selectionArgs, WeatherChanges changes) {
+        if (selection == null || "1".equals(selection)) {
+            changes.addUri(WeatherEntry.CONTENT_URI);
+            return;
+        }
+        Cursor rows = db.query(true, WeatherEntry.TABLE_NAME,
+                new String[]{WeatherEntry.COLUMN_LOC_KEY, WeatherEntry.COLUMN_DATE},
+                selection, selectionArgs, null, null, null, null);
+        try {
+            changes.addWeather(rows);
+        } finally {
+            rows.close();
+        }
+    }
+
+    /**
+     * Appends rows to the sync journal and drops the oldest rows beyond
+     * {@link SyncJournalEntry#MAX_ROWS}, in one transaction.  Nobody observes the journal, so no
+     * change is notified.
+     */
+    private int insertSyncJournal(SQLiteDatabase db, ContentValues[] values) {
+        int returnCount = 0;
+        db.beginTransaction();
+        try {
+            long lastId = -1;
+            for (ContentValues value : values) {
+                long _id = db.insert(SyncJournalEntry.TABLE_NAME, null, value);
+                if (_id != -1) {
+                    lastId = _id;
+                    returnCount++;
+                }
+            }
+            if (lastId > SyncJournalEntry.MAX_ROWS) {
+                db.delete(SyncJournalEntry.TABLE_NAME, SyncJournalEntry._ID + " <= ?",
+                        new String[]{Long.toString(lastId - SyncJournalEntry.MAX_ROWS)});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return returnCount;
+    }
+
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (WeatherContract.METHOD_SYNC_JOURNAL_PERCENTILES.equals(method)) {
+            return getSyncJournalPercentiles();
+        } else if (WeatherContract.METHOD_UPSERT_LOCATION.equals(method)) {
+            return upsertLocation(extras);
+        } else if (WeatherContract.METHOD_INGEST_WEATHER.equals(method)) {
+            return ingestWeather(extras);
+        } else if (WeatherContract.METHOD_QUERY_CACHE_STATS.equals(method)) {
+            Bundle result = new Bundle();
+            result.putLong(WeatherContract.KEY_HITS, mQueryCache.getHitCount());
+            result.putLong(WeatherContract.KEY_MISSES, mQueryCache.getMissCount());
+            return result;
+        } else if (WeatherContract.METHOD_NOTIFICATION_STATS.equals(method)) {
+            Bundle result = new Bundle();
+            result.putLong(WeatherContract.KEY_NOTIFIED, mNotifications.getNotifiedCount());
+            result.putLong(WeatherContract.KEY_SUPPRESSED, mNotifications.getSuppressedCount());
+            return result;
+        } else if (WeatherContract.METHOD_FLUSH_NOTIFICATIONS.equals(method)) {
+            mNotifications.flush();
+            return null;
+        } else if (WeatherContract.METHOD_TODAY_SUMMARY.equals(method)) {
+            return getTodaySummary(arg, extras);
+        } else if (WeatherContract.METHOD_WEEK_SUMMARY.equals(method)) {
+            return getWeekSummary(arg, extras);
+        }
+        return super.call(method, arg, extras);
+    }
+
+    /**
+     * The days of {@code locationSetting} from today on, or from the date in {@code extras},
+     * through {@link WeatherQueryCache}, so that the consumers asking for them after every sync
+     * share one query until the next write.
+     */
+    private Cursor getSummaryCursor(String locationSetting, Bundle extras) {
+        if (locationSetting == null) {
+            throw new IllegalArgumentException("No location setting");
+        }
+        long date = extras != null && extras.containsKey(WeatherEntry.COLUMN_DATE)
+                ? extras.getLong(WeatherEntry.COLUMN_DATE) : System.currentTimeMillis();
+        Uri uri = WeatherEntry.buildWeatherLocationWithStartDate(locationSetting, date);
+        return getWeatherByLocationSettingCached(uri, sSummaryColumns,
+                WeatherEntry.COLUMN_DATE + " ASC");
+    }
+
+    /**
+     * Today's weather as a handful of values in a Bundle, for the consumers that show nothing
+     * else and would otherwise go through a cursor, a projection and column indices for them.
+     */
+    private Bundle getTodaySummary(String locationSetting, Bundle extras) {
+        Cursor cursor = getSummaryCursor(locationSetting, extras);
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            Bundle today = new Bundle();
+            today.putLong(WeatherEntry.COLUMN_DATE, cursor.getLong(SUMMARY_DATE));
+            today.putInt(WeatherEntry.COLUMN_WEATHER_ID, cursor.getInt(SUMMARY_WEATHER_ID));
+            today.putDouble(WeatherEntry.COLUMN_MAX_TEMP, cursor.getDouble(SUMMARY_MAX_TEMP));
+            today.putDouble(WeatherEntry.COLUMN_MIN_TEMP, cursor.getDouble(SUMMARY_MIN_TEMP));
+            today.putString(WeatherEntry.COLUMN_SHORT_DESC, cursor.getString(SUMMARY_SHORT_DESC));
+            return today;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * The week ahead packed into one primitive array per column.
+     */
+    private Bundle getWeekSummary(String locationSetting, Bundle extras) {
+        Cursor cursor = getSummaryCursor(locationSetting, extras);
+        try {
+            int days = Math.min(cursor.getCount(), WeatherContract.WEEK_SUMMARY_DAYS);
+            long[] dates = new long[days];
+            int[] weatherIds = new int[days];
+            double[] highs = new double[days];
+            double[] lows = new double[days];
+            for (int day = 0; day < days && cursor.moveToPosition(day); day++) {
+                dates[day] = cursor.getLong(SUMMARY_DATE);
+                weatherIds[day] = cursor.getInt(SUMMARY_WEATHER_ID);
+                highs[day] = cursor.getDouble(SUMMARY_MAX_TEMP);
+                lows[day] = cursor.getDouble(SUMMARY_MIN_TEMP);
+            }
+            Bundle week = new Bundle();
+            week.putLongArray(WeatherEntry.COLUMN_DATE, dates);
+            week.putIntArray(WeatherEntry.COLUMN_WEATHER_ID, weatherIds);
+            week.putDoubleArray(WeatherEntry.COLUMN_MAX_TEMP, highs);
+            week.putDoubleArray(WeatherEntry.COLUMN_MIN_TEMP, lows);
+            return week;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Inserts a location unless one with the same location setting is stored, and looks up the
+     * _id of the stored one otherwise, in a single round trip for the caller.  The values of an
+     * already stored location are left alone, as the sync always did.  An insert is notified on
+     * the URI of the new row, which observers of the whole table without descendants do not see,
+     * since a new row does not move any other.
+     */
+    private Bundle upsertLocation(Bundle extras) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        String locationSetting = extras.getString(LocationEntry.COLUMN_LOCATION_SETTING);
+        ContentValues values = new ContentValues();
+        values.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        values.put(LocationEntry.COLUMN_CITY_NAME, extras.getString(LocationEntry.COLUMN_CITY_NAME));
+        values.put(LocationEntry.COLUMN_COORD_LAT, extras.getDouble(LocationEntry.COLUMN_COORD_LAT));
+        values.put(LocationEntry.COLUMN_COORD_LONG, extras.getDouble(LocationEntry.COLUMN_COORD_LONG));
+
+        long _id = db.insertWithOnConflict(LocationEntry.TABLE_NAME, null, values,
+                SQLiteDatabase.CONFLICT_IGNORE);
+        if (_id > 0) {
+            WeatherChanges changes = new WeatherChanges();
+            changes.addUri(LocationEntry.buildLocationUri(_id));
+            notifyChange(changes);
+        } else {
+            _id = DatabaseUtils.longForQuery(db, "SELECT " + LocationEntry._ID + " FROM "
+                    + LocationEntry.TABLE_NAME + " WHERE "
+                    + LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                    new String[]{locationSetting});
+        }
+        Bundle result = new Bundle();
+        result.putLong(WeatherContract.KEY_LOCATION_ID, _id);
+        return result;
+    }
+
+    /**
+     * The bulk insert of the sync.  Binds the primitives of a {@link WeatherBatch} straight into
+     * one compiled statement, rather than going through a ContentValues and SQLiteDatabase.insert()
+     * per row, and prunes old days in the same transaction.  A day that is already stored is
+     * replaced through the ON CONFLICT REPLACE constraint of the table.
+     */
+    private synchronized Bundle ingestWeather(Bundle extras) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        WeatherBatch batch = WeatherBatch.readFrom(extras);
+        int inserted = 0;
+        int deleted = 0;
+        WeatherChanges changes = new WeatherChanges();
+        db.beginTransaction();
+        try {
+            if (mInsertWeatherStatement == null) {
+                mInsertWeatherStatement = db.compileStatement(sInsertWeatherSql);
+            }
+            SQLiteStatement insert = mInsertWeatherStatement;
+            for (int i = 0; i < batch.size(); i++) {
+                insert.bindLong(1, batch.getLocationId(i));
+                insert.bindLong(2, batch.getDate(i));
+                insert.bindString(3, batch.getShortDesc(i));
+                insert.bindLong(4, batch.getWeatherId(i));
+                insert.bindDouble(5, batch.getMinTemp(i));
+                insert.bindDouble(6, batch.getMaxTemp(i));
+                insert.bindDouble(7, batch.getHumidity(i));
+                insert.bindDouble(8, batch.getPressure(i));
+                insert.bindDouble(9, batch.getWindSpeed(i));
+                insert.bindDouble(10, batch.getDegrees(i));
+                if (insert.executeInsert() != -1) {
+                    inserted++;
+                    changes.addWeather(batch.getLocationId(i), batch.getDate(i));
+                }
+            }
+            if (extras.containsKey(WeatherContract.KEY_PRUNE_DATE)) {
+                String selection = WeatherEntry.COLUMN_DATE + " <= ?";
+                String[] selectionArgs = new String[]{
+                        Long.toString(extras.getLong(WeatherContract.KEY_PRUNE_DATE))};
+                addWeatherChanges(db, selection, selectionArgs, changes);
+                deleted = db.delete(WeatherEntry.TABLE_NAME, selection, selectionArgs);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        if (inserted + deleted > 0) {
+            notifyChange(changes);
+        }
+        Bundle result = new Bundle();
+        result.putInt(WeatherContract.KEY_INSERTED, inserted);
+        result.putInt(WeatherContract.KEY_DELETED, deleted);
+        return result;
+    }
+
+    /**
+     * Summarizes the sync journal per phase: number of samples, 50th, 90th and 99th percentile
+     * and maximum duration in microseconds, and the total bytes transferred.
+     */
+    private Bundle getSyncJournalPercentiles() {
+        Cursor cursor = mOpenHelper.getReadableDatabase().query(SyncJournalEntry.TABLE_NAME,
+                new String[]{SyncJournalEntry.COLUMN_PHASE, SyncJournalEntry.COLUMN_DURATION,
+                        SyncJournalEntry.COLUMN_BYTES},
+                null, null, null, null,
+                SyncJournalEntry.COLUMN_PHASE + ", " + SyncJournalEntry.COLUMN_DURATION);
+        Bundle result = new Bundle();
+        try {
+            String phase = null;
+            long[] durations = new long[64];
+            int count = 0;
+            long bytes = 0;
+            while (cursor.moveToNext()) {
+                String rowPhase = cursor.getString(0);
+                if (!rowPhase.equals(phase)) {
+                    if (phase != null) {
+                        result.putBundle(phase, summarize(durations, count, bytes));
+                    }
+                    phase = rowPhase;
+                    count = 0;
+                    bytes = 0;
+                }
+                if (count == durations.length) {
+                    durations = Arrays.copyOf(durations, count * 2);
+                }
+                durations[count++] = cursor.getLong(1);
+                bytes += cursor.getLong(2);
+            }
+            if (phase != null) {
+                result.putBundle(phase, summarize(durations, count, bytes));
+            }
+        } finally {
+            cursor.close();
+        }
+        return result;
+    }
+
+    // durations must be sorted ascending
+    private static Bundle summarize(long[] durations, int count, long bytes) {
+        Bundle summary = new Bundle();
+        summary.putInt(WeatherContract.KEY_COUNT, count);
+        summary.putLong(WeatherContract.KEY_P50, percentile(durations, count, 50));
+        summary.putLong(WeatherContract.KEY_P90, percentile(durations, count, 90));
+        summary.putLong(WeatherContract.KEY_P99, percentile(durations, count, 99));
+        summary.putLong(WeatherContract.KEY_MAX, durations[count - 1]);
+        summary.putLong(WeatherContract.KEY_BYTES, bytes);
+        return summary;
+    }
+
+    // Nearest-rank percentile of the first count values of a sorted array.
+    static long percentile(long[] sorted, int count, int percent) {
+        int rank = (int) Math.ceil(percent / 100.0 * count);
+        return sorted[Math.max(0, Math.min(count, rank) - 1)];
+    }
+
     // You do not need to call this method. This is a method specifically to assist the testing
     // framework in running smoothly. You can read more at:
     // http://developer.android.com/reference/android/content/ContentProvider.html#shutdown()
     @Override
     @TargetApi(11)
     public void shutdown() {
+        mNotifications.flush();
+        synchronized (this) {
+            if (mInsertWeatherStatement != null) {
+                mInsertWeatherStatement.close();
+                mInsertWeatherStatement = null;
+            }
+        }
         mOpenHelper.close();
         super.shutdown();
     }
@@ -0,0 +1,146 @@
+package com.example.android.sunshine.app.data;
+
+import android.annotation.TargetApi;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.Build;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the results of the weather queries for one location, i.e. today and the days from today
+ * on, which the watch face, the notification, the widgets, Muzei and the detail pane all ask
+ * for again and again between two syncs.  A hit is answered from memory without touching SQLite.
+ *
+ * The provider drops everything on every committed write to the weather or location table.  A
+ * query that started before a write may not store its result, since it could hold rows the write
+ * replaced.
+ */
+class WeatherQueryCache {
+
+    // Queries kept, least recently used first out.  Results of more rows are not kept.
+    static final int MAX_ENTRIES = 16;
+    static final int MAX_ROWS = 32;
+
+    private static class Result {
+        final String[] columns;
+        final Object[][] rows;
+
+        Result(String[] columns, Object[][] rows) {
+            this.columns = columns;
+            this.rows = rows;
+        }
+    }
+
+    private final Map<String, Result> mResults =
+            new LinkedHashMap<String, Result>(MAX_ENTRIES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Result> eldest) {
+                    return size() > MAX_ENTRIES;
+                }
+            };
+    // Bumped by every invalidate().
+    private int mGeneration;
+    private long mHits;
+    private long mMisses;
+
+    static String keyFor(Uri uri, String[] projection, String sortOrder) {
+        return uri + "|" + Arrays.toString(projection) + "|" + sortOrder;
+    }
+
+    /**
+     * @return a cursor over the stored result of {@code key}, or null on a miss.
+     */
+    synchronized Cursor get(String key) {
+        Result result = mResults.get(key);
+        if (result == null) {
+            mMisses++;
+            return null;
+        }
+        mHits++;
+        return toCursor(result);
+    }
+
+    /**
+     * @return the generation to pass to {@link #put(String, int, Cursor)} for a query that is
+     * about to run.
+     */
+    synchronized int getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * Stores the result of a query that ran after {@link #getGeneration()} returned
+     * {@code generation}, unless a write came in since.
+     *
+     * @return a cursor over the same rows; {@code cursor} itself if it was not stored.
+     */
+    Cursor put(String key, int generation, Cursor cursor) {
+        if (cursor == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB
+                || cursor.getCount() > MAX_ROWS) {
+            return cursor;
+        }
+        Result result = read(cursor);
+        cursor.close();
+        synchronized (this) {
+            if (generation == mGeneration) {
+                mResults.put(key, result);
+            }
+        }
+        return toCursor(result);
+    }
+
+    private static Cursor toCursor(Result result) {
+        MatrixCursor cursor = new MatrixCursor(result.columns, result.rows.length);
+        for (Object[] row : result.rows) {
+            cursor.addRow(row);
+        }
+        return cursor;
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static Result read(Cursor cursor) {
+        String[] columns = cursor.getColumnNames();
+        Object[][] rows = new Object[cursor.getCount()][];
+        cursor.moveToPosition(-1);
+        while (cursor.moveToNext()) {
+            Object[] row = new Object[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                switch (cursor.getType(i)) {
+                    case Cursor.FIELD_TYPE_INTEGER:
+                        row[i] = cursor.getLong(i);
+                        break;
+                    case Cursor.FIELD_TYPE_FLOAT:
+                        row[i] = cursor.getDouble(i);
+                        break;
+                    case Cursor.FIELD_TYPE_STRING:
+                        row[i] = cursor.getString(i);
+                        break;
+                    case Cursor.FIELD_TYPE_BLOB:
+                        row[i] = cursor.getBlob(i);
+                        break;
+                    default:
+                        row[i] = null;
+                }
+            }
+            rows[cursor.getPosition()] = row;
+        }
+        return new Result(columns, rows);
+    }
+
+    synchronized void invalidate() {
+        mResults.clear();
+        mGeneration++;
+    }
+
+    synchronized long getHitCount() {
+        return mHits;
+    }
+
+    synchronized long getMissCount() {
+        return mMisses;
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.android.sunshine.app.sync;
+
+/**
+ * Stops calling a host after it failed too many times in a row.
+ *
+ * The breaker starts closed.  After {@code failureThreshold} consecutive failures it opens and
+ * rejects every request for the open period.  Once that has passed, a single trial request is
+ * let through: if it succeeds the breaker closes again, if it fails the breaker reopens for
+ * twice as long, up to {@code maxOpenMillis}.  Only the outcome of the trial itself decides;
+ * requests let through before the breaker opened may still come back while it is open, and are
+ * not counted then.
+ *
+ * Times are passed in by the caller, so the breaker can be tested without waiting.
+ */
+public class CircuitBreaker {
+
+    /**
+     * Lets one request through; its outcome must be reported back with it.
+     */
+    public static final class Permit {
+        private Permit() {
+        }
+    }
+
+    private static final Permit CLOSED_PERMIT = new Permit();
+
+    private final int mFailureThreshold;
+    private final long mBaseOpenMillis;
+    private final long mMaxOpenMillis;
+
+    private int mConsecutiveFailures;
+    private long mOpenMillis;
+    private long mOpenUntil;
+    // The permit of the trial request in flight, null if there is none.
+    private Permit mTrial;
+
+    public CircuitBreaker(int failureThreshold, long baseOpenMillis, long maxOpenMillis) {
+        mFailureThreshold = failureThreshold;
+        mBaseOpenMillis = baseOpenMillis;
+        mMaxOpenMillis = maxOpenMillis;
+        mOpenMillis = baseOpenMillis;
+    }
+
+    /**
+     * @return the permit to send a request now, or null if the breaker is open.  A permit given
+     * after the open period is the single trial request.
+     */
+    public synchronized Permit allowRequest(long now) {
+        if (mConsecutiveFailures < mFailureThreshold) {
+            return CLOSED_PERMIT;
+        }
+        if (now < mOpenUntil || mTrial != null) {
+            return null;
+        }
+        mTrial = new Permit();
+        return mTrial;
+    }
+
+    public synchronized void recordSuccess(Permit permit) {
+        if (permit == mTrial) {
+            mTrial = null;
+        } else if (isTripped()) {
+            // Sent before the breaker opened; only the trial may close it.
+            return;
+        }
+        mConsecutiveFailures = 0;
+        mOpenMillis = mBaseOpenMillis;
+    }
+
+    public synchronized void recordFailure(Permit permit, long now) {
+        if (permit == mTrial) {
+            // The trial failed, back off further.
+            mTrial = null;
+            mOpenMillis = Math.min(mOpenMillis * 2, mMaxOpenMillis);
+            mOpenUntil = now + mOpenMillis;
+            return;
+        }
+        if (isTripped()) {
+            // Sent before the breaker opened, and already counted against the host.
+            return;
+        }
+        mConsecutiveFailures++;
+        if (mConsecutiveFailures == mFailureThreshold) {
+            mOpenUntil = now + mOpenMillis;
+        }
+    }
+
+    private boolean isTripped() {
+        return mConsecutiveFailures >= mFailureThreshold;
+    }
+
+    public synchronized boolean isOpen(long now) {
+        return isTripped() && (now < mOpenUntil || mTrial != null);
+    }
+
+    /**
+     * @return how long until the breaker lets a request through again, 0 if it does now.
+     */
+    public synchronized long getRetryAfterMillis(long now) {
+        if (!isTripped()) {
+            return 0;
+        }
+        return Math.max(0, mOpenUntil - now);
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.android.sunshine.app.sync;
+
+import java.net.HttpURLConnection;
+import java.util.Arrays;
+
+/**
+ * A forecast as returned by any {@link WeatherSource}, independent of the backend format.
+ *
+ * Days are kept in parallel primitive arrays, in order starting with today, so filling a
+ * forecast from a {@link ForecastJsonParser} stream allocates nothing per day besides the
+ * description string.
+ */
+public class Forecast implements ForecastJsonParser.Handler {
+
+    // Message code of the response, as OpenWeatherMap reports it in "cod".
+    public int messageCode = HttpURLConnection.HTTP_OK;
+    // True if the source confirmed that the stored forecast is still current.
+    public boolean notModified;
+
+    public String cityName;
+    public double cityLatitude;
+    public double cityLongitude;
+
+    // Validators to send with the next request for the same forecast.
+    public String etag;
+    public String lastModified;
+    // Name of the backend that answered, which is the only one the validators may go to.
+    public String source;
+
+    private int mSize;
+    public double[] pressure = new double[16];
+    public int[] humidity = new int[16];
+    public double[] windSpeed = new double[16];
+    public double[] windDirection = new double[16];
+    public double[] high = new double[16];
+    public double[] low = new double[16];
+    public String[] description = new String[16];
+    public int[] weatherId = new int[16];
+
+    public static Forecast notModified() {
+        Forecast forecast = new Forecast();
+        forecast.notModified = true;
+        return forecast;
+    }
+
+    /**
+     * @return the number of days, which index the day arrays.
+     */
+    public int getDayCount() {
+        return mSize;
+    }
+
+    public boolean hasCity() {
+        return cityName != null;
+    }
+
+    /**
+     * Drops every day after the first {@code numDays}.
+     */
+    public void truncate(int numDays) {
+        mSize = Math.min(mSize, numDays);
+    }
+
+    @Override
+    public boolean onMessageCode(int code) {
+        messageCode = code;
+        return code == HttpURLConnection.HTTP_OK;
+    }
+
+    @Override
+    public void onCity(String cityName, double lat, double lon) {
+        this.cityName = cityName;
+        cityLatitude = lat;
+        cityLongitude = lon;
+    }
+
+    @Override
+    public void onDay(ForecastJsonParser.Day day) {
+        if (mSize == pressure.length) {
+            int capacity = mSize * 2;
+            pressure = Arrays.copyOf(pressure, capacity);
+            humidity = Arrays.copyOf(humidity, capacity);
+            windSpeed = Arrays.copyOf(windSpeed, capacity);
+            windDirection = Arrays.copyOf(windDirection, capacity);
+            high = Arrays.copyOf(high, capacity);
+            low = Arrays.copyOf(low, capacity);
+            description = Arrays.copyOf(description, capacity);
+            weatherId = Arrays.copyOf(weatherId, capacity);
+        }
+        pressure[mSize] = day.pressure;
+        humidity[mSize] = day.humidity;
+        windSpeed[mSize] = day.windSpeed;
+        windDirection[mSize] = day.windDirection;
+        high[mSize] = day.high;
+        low[mSize] = day.low;
+        description[mSize] = day.description;
+        weatherId[mSize] = day.weatherId;
+        mSize++;
+    }
+}
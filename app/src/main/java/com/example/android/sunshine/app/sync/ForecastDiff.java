@@ -0,0 +1,117 @@
+package com.example.android.sunshine.app.sync;
+
+import android.database.Cursor;
+
+import com.example.android.sunshine.app.data.WeatherBatch;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compares a freshly downloaded forecast with the rows already stored for its location and
+ * keeps only the days that are new or differ from what we have.
+ */
+public class ForecastDiff {
+
+    /**
+     * The weather columns compared between stored and incoming rows.  The date and the location
+     * key identify the row and are not part of the comparison.
+     */
+    static final String[] COMPARED_COLUMNS = {
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES
+    };
+
+    // these indices must match the projection
+    private static final int INDEX_DATE = 0;
+    private static final int INDEX_SHORT_DESC = 1;
+    private static final int INDEX_WEATHER_ID = 2;
+    private static final int INDEX_MIN_TEMP = 3;
+    private static final int INDEX_MAX_TEMP = 4;
+    private static final int INDEX_HUMIDITY = 5;
+    private static final int INDEX_PRESSURE = 6;
+    private static final int INDEX_WIND_SPEED = 7;
+    private static final int INDEX_DEGREES = 8;
+
+    private final WeatherBatch mChanged;
+    private int mUnchanged;
+    private int mUpdated;
+    private int mInserted;
+
+    private ForecastDiff(int capacity) {
+        mChanged = new WeatherBatch(capacity);
+    }
+
+    /**
+     * @param stored rows of the location, projected with {@link #COMPARED_COLUMNS}.  The cursor
+     *               is read but not closed.
+     * @param incoming the downloaded rows for the same location, with normalized dates.
+     */
+    public static ForecastDiff compute(Cursor stored, WeatherBatch incoming) {
+        ForecastDiff diff = new ForecastDiff(incoming.size());
+
+        Map<Long, Integer> positionByDate = new HashMap<Long, Integer>();
+        if (stored != null) {
+            while (stored.moveToNext()) {
+                positionByDate.put(stored.getLong(INDEX_DATE), stored.getPosition());
+            }
+        }
+
+        for (int i = 0; i < incoming.size(); i++) {
+            Integer position = positionByDate.get(incoming.getDate(i));
+            if (position == null) {
+                diff.mInserted++;
+                diff.mChanged.add(incoming, i);
+            } else if (stored.moveToPosition(position) && sameWeather(stored, incoming, i)) {
+                diff.mUnchanged++;
+            } else {
+                diff.mUpdated++;
+                diff.mChanged.add(incoming, i);
+            }
+        }
+        return diff;
+    }
+
+    private static boolean sameWeather(Cursor stored, WeatherBatch incoming, int i) {
+        String description = incoming.getShortDesc(i);
+        return description != null && description.equals(stored.getString(INDEX_SHORT_DESC))
+                && incoming.getWeatherId(i) == stored.getInt(INDEX_WEATHER_ID)
+                && incoming.getMinTemp(i) == stored.getDouble(INDEX_MIN_TEMP)
+                && incoming.getMaxTemp(i) == stored.getDouble(INDEX_MAX_TEMP)
+                && incoming.getHumidity(i) == stored.getDouble(INDEX_HUMIDITY)
+                && incoming.getPressure(i) == stored.getDouble(INDEX_PRESSURE)
+                && incoming.getWindSpeed(i) == stored.getDouble(INDEX_WIND_SPEED)
+                && incoming.getDegrees(i) == stored.getDouble(INDEX_DEGREES);
+    }
+
+    /**
+     * @return the rows that have to be written, i.e. the inserted and updated days.
+     */
+    public WeatherBatch getChangedRows() {
+        return mChanged;
+    }
+
+    public boolean hasChanges() {
+        return mChanged.size() > 0;
+    }
+
+    public int getUnchangedCount() {
+        return mUnchanged;
+    }
+
+    public int getUpdatedCount() {
+        return mUpdated;
+    }
+
+    public int getInsertedCount() {
+        return mInserted;
+    }
+}
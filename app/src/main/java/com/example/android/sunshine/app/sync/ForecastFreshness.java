@@ -0,0 +1,127 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.support.annotation.IntDef;
+
+import com.example.android.sunshine.app.Utility;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Knows how old the stored forecast of each location is, and lets consumers serve it while it
+ * is being revalidated.
+ *
+ * A forecast is fresh for the TTL after its last successful sync, a 304 included.  After that
+ * it is stale: consumers still show it right away, and {@link #revalidateIfStale(String)}
+ * requests a background sync, which the {@link SyncCoalescer} deduplicates.  Past the max age it
+ * is expired, which only differs from stale in what consumers may choose to tell the user; the
+ * periodic sync is never scheduled further apart than the max age, so it is only reached when
+ * syncs fail.
+ *
+ * Like the validators, the timestamps and bounds live in their own preferences file, so that
+ * writing them does not wake up the OnSharedPreferenceChangeListeners of the UI.
+ */
+public class ForecastFreshness {
+
+    static final String PREFS_NAME = "forecast_freshness";
+
+    public static final long DEFAULT_TTL_MILLIS = SunshineSyncAdapter.SYNC_INTERVAL * 1000L;
+    public static final long DEFAULT_MAX_AGE_MILLIS = SyncScheduler.MAX_SYNC_INTERVAL * 1000L;
+
+    @Retention(RetentionPolicy.SOURCE)
+    @IntDef({STATE_FRESH, STATE_STALE, STATE_EXPIRED, STATE_MISSING})
+    public @interface State {}
+
+    public static final int STATE_FRESH = 0;
+    public static final int STATE_STALE = 1;
+    public static final int STATE_EXPIRED = 2;
+    public static final int STATE_MISSING = 3;
+
+    private static final String KEY_SYNCED = "synced:";
+    private static final String KEY_TTL = "ttl";
+    private static final String KEY_MAX_AGE = "max_age";
+
+    private final Context mContext;
+    private final SharedPreferences mPrefs;
+
+    public ForecastFreshness(Context context) {
+        mContext = context.getApplicationContext();
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return the state of a forecast last synced at {@code lastSynced}, 0 if never.
+     */
+    @State
+    public static int stateOf(long lastSynced, long now, long ttlMillis, long maxAgeMillis) {
+        if (lastSynced <= 0) {
+            return STATE_MISSING;
+        }
+        long age = now - lastSynced;
+        if (age < ttlMillis) {
+            return STATE_FRESH;
+        }
+        return age < maxAgeMillis ? STATE_STALE : STATE_EXPIRED;
+    }
+
+    public long getTtlMillis() {
+        return mPrefs.getLong(KEY_TTL, DEFAULT_TTL_MILLIS);
+    }
+
+    public long getMaxAgeMillis() {
+        return mPrefs.getLong(KEY_MAX_AGE, DEFAULT_MAX_AGE_MILLIS);
+    }
+
+    /**
+     * Changes how long a forecast stays fresh, and how old it may get at most.
+     */
+    public void setBounds(long ttlMillis, long maxAgeMillis) {
+        if (ttlMillis <= 0 || maxAgeMillis < ttlMillis) {
+            throw new IllegalArgumentException("Need 0 < ttl <= max age, got "
+                    + ttlMillis + " and " + maxAgeMillis);
+        }
+        mPrefs.edit().putLong(KEY_TTL, ttlMillis).putLong(KEY_MAX_AGE, maxAgeMillis).apply();
+    }
+
+    /**
+     * Notes that the stored forecast of {@code locationSetting} was confirmed by the server.
+     * Called by the sync once the forecast is stored, or answered with 304.
+     */
+    public void recordSync(String locationSetting, long now) {
+        mPrefs.edit().putLong(KEY_SYNCED + locationSetting, now).apply();
+    }
+
+    /**
+     * @return when the forecast of {@code locationSetting} was last synced, 0 if never.
+     */
+    public long getLastSynced(String locationSetting) {
+        return mPrefs.getLong(KEY_SYNCED + locationSetting, 0);
+    }
+
+    @State
+    public int getState(String locationSetting) {
+        return stateOf(getLastSynced(locationSetting), System.currentTimeMillis(),
+                getTtlMillis(), getMaxAgeMillis());
+    }
+
+    /**
+     * Requests a background sync of {@code locationSetting} unless its forecast is fresh.  Never
+     * blocks on the network, so consumers call it right before reading what is stored.
+     *
+     * @return the state of the forecast before the sync.
+     */
+    @State
+    public int revalidateIfStale(String locationSetting) {
+        @State int state = getState(locationSetting);
+        if (state != STATE_FRESH) {
+            if (locationSetting.equals(Utility.getPreferredLocation(mContext))) {
+                SunshineSyncAdapter.syncImmediately(mContext);
+            } else {
+                SunshineSyncAdapter.syncAllLocationsImmediately(mContext);
+            }
+        }
+        return state;
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.Map;
+
+/**
+ * Decides how many days of forecast a sync asks for.
+ *
+ * Consumers record how many days they actually show.  Most syncs only fetch that many, and
+ * once a day a location gets the full horizon, so the days further out are at most a day old
+ * when somebody scrolls to them.  Days a short sync does not fetch stay in the database
+ * untouched.
+ *
+ * Today-only consumers, i.e. the watch face, the today widget, Muzei and the notification,
+ * are covered by {@link #MIN_DAYS} and do not record a need.
+ */
+public class ForecastHorizon {
+
+    static final String PREFS_NAME = "forecast_horizon";
+
+    public static final int MIN_DAYS = 1;
+    public static final int FULL_DAYS = 14;
+    public static final long FULL_SYNC_INTERVAL_MILLIS = 24 * 60 * 60 * 1000L;
+    // A need that was not recorded again for this long is forgotten.
+    static final long NEED_TTL_MILLIS = 7 * 24 * 60 * 60 * 1000L;
+
+    public static final String CONSUMER_FORECAST_LIST = "forecast_list";
+    public static final String CONSUMER_DETAIL_WIDGET = "detail_widget";
+
+    private static final String KEY_NEED = "need:";
+    private static final String KEY_NEED_TIME = "need_time:";
+    private static final String KEY_FULL_SYNC = "full_sync:";
+
+    private final SharedPreferences mPrefs;
+
+    public ForecastHorizon(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return the number of days to ask for: everything if the last full sync is
+     * {@code fullIntervalMillis} old, otherwise what the consumers need.
+     */
+    public static int daysFor(int neededDays, long lastFullSync, long now,
+                              long fullIntervalMillis) {
+        if (now - lastFullSync >= fullIntervalMillis) {
+            return FULL_DAYS;
+        }
+        return Math.max(MIN_DAYS, Math.min(neededDays, FULL_DAYS));
+    }
+
+    /**
+     * Notes that {@code consumer} shows {@code days} days of forecast.
+     */
+    public void recordNeed(String consumer, int days, long now) {
+        mPrefs.edit()
+                .putInt(KEY_NEED + consumer, days)
+                .putLong(KEY_NEED_TIME + consumer, now)
+                .apply();
+    }
+
+    /**
+     * @return the most days any consumer recorded within {@link #NEED_TTL_MILLIS}, at least
+     * {@link #MIN_DAYS}.
+     */
+    public int getNeededDays(long now) {
+        int needed = MIN_DAYS;
+        for (Map.Entry<String, ?> entry : mPrefs.getAll().entrySet()) {
+            if (!entry.getKey().startsWith(KEY_NEED)) {
+                continue;
+            }
+            String consumer = entry.getKey().substring(KEY_NEED.length());
+            if (now - mPrefs.getLong(KEY_NEED_TIME + consumer, 0) < NEED_TTL_MILLIS) {
+                needed = Math.max(needed, (Integer) entry.getValue());
+            }
+        }
+        return needed;
+    }
+
+    /**
+     * @return the number of days the next sync of {@code locationSetting} should ask for.
+     */
+    public int daysForSync(String locationSetting, long now) {
+        return daysFor(getNeededDays(now), mPrefs.getLong(KEY_FULL_SYNC + locationSetting, 0),
+                now, FULL_SYNC_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Notes that {@code locationSetting} was synced for {@code days} days.  Call once the
+     * forecast is stored or confirmed.
+     */
+    public void recordSync(String locationSetting, int days, long now) {
+        if (days >= FULL_DAYS) {
+            mPrefs.edit().putLong(KEY_FULL_SYNC + locationSetting, now).apply();
+        }
+    }
+}
@@ -0,0 +1,287 @@
+package com.example.android.sunshine.app.sync;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.MalformedJsonException;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Parses the OpenWeatherMap daily forecast response and hands every day to a {@link Handler}
+ * as soon as it has been read.
+ *
+ * {@link #parse(Reader, Handler)} walks the response token by token with a {@link JsonReader},
+ * so neither the raw response string nor an org.json object tree is ever built.
+ * {@link #parseTree(String, Handler)} is the original org.json based path; it is kept for
+ * devices below Honeycomb, where JsonReader is not available, and for benchmarking.
+ */
+public class ForecastJsonParser {
+
+    // Location information
+    static final String OWM_CITY = "city";
+    static final String OWM_CITY_NAME = "name";
+    static final String OWM_COORD = "coord";
+
+    // Location coordinate
+    static final String OWM_LATITUDE = "lat";
+    static final String OWM_LONGITUDE = "lon";
+
+    // Weather information.  Each day's forecast info is an element of the "list" array.
+    static final String OWM_LIST = "list";
+
+    static final String OWM_PRESSURE = "pressure";
+    static final String OWM_HUMIDITY = "humidity";
+    static final String OWM_WINDSPEED = "speed";
+    static final String OWM_WIND_DIRECTION = "deg";
+
+    // All temperatures are children of the "temp" object.
+    static final String OWM_TEMPERATURE = "temp";
+    static final String OWM_MAX = "max";
+    static final String OWM_MIN = "min";
+
+    static final String OWM_WEATHER = "weather";
+    static final String OWM_DESCRIPTION = "main";
+    static final String OWM_WEATHER_ID = "id";
+
+    static final String OWM_MESSAGE_CODE = "cod";
+
+    /**
+     * One day of forecast.  The parser reuses a single instance for every day of a response,
+     * so handlers must copy out whatever they want to keep.
+     */
+    public static class Day {
+        public int index;
+        public double pressure;
+        public int humidity;
+        public double windSpeed;
+        public double windDirection;
+        public double high;
+        public double low;
+        public String description;
+        public int weatherId;
+    }
+
+    /**
+     * Receives the parsed pieces of a forecast response, in the order they appear in the stream.
+     */
+    public interface Handler {
+        /**
+         * Called with the "cod" value of the response.
+         * @return false to stop parsing, e.g. because the code reports an error.
+         */
+        boolean onMessageCode(int code);
+
+        void onCity(String cityName, double lat, double lon);
+
+        void onDay(Day day);
+    }
+
+    /**
+     * Streams the forecast out of {@code in}.  The reader is not closed.
+     *
+     * @throws JSONException if the response is not a well formed forecast.
+     * @throws IOException if reading from {@code in} fails.
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    public static void parse(Reader in, Handler handler) throws JSONException, IOException {
+        JsonReader reader = new JsonReader(in);
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (OWM_MESSAGE_CODE.equals(name)) {
+                    if (!handler.onMessageCode(reader.nextInt())) {
+                        return;
+                    }
+                } else if (OWM_CITY.equals(name)) {
+                    readCity(reader, handler);
+                } else if (OWM_LIST.equals(name)) {
+                    readDays(reader, handler);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (MalformedJsonException | IllegalStateException | NumberFormatException e) {
+            JSONException jsonException = new JSONException(e.getMessage());
+            jsonException.initCause(e);
+            throw jsonException;
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void readCity(JsonReader reader, Handler handler)
+            throws JSONException, IOException {
+        String cityName = null;
+        double lat = 0;
+        double lon = 0;
+        boolean hasCoord = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_CITY_NAME.equals(name)) {
+                cityName = reader.nextString();
+            } else if (OWM_COORD.equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String coordName = reader.nextName();
+                    if (OWM_LATITUDE.equals(coordName)) {
+                        lat = reader.nextDouble();
+                    } else if (OWM_LONGITUDE.equals(coordName)) {
+                        lon = reader.nextDouble();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                hasCoord = true;
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (cityName == null || !hasCoord) {
+            throw new JSONException("Incomplete " + OWM_CITY + " object");
+        }
+        handler.onCity(cityName, lat, lon);
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void readDays(JsonReader reader, Handler handler)
+            throws JSONException, IOException {
+        Day day = new Day();
+        reader.beginArray();
+        for (int i = 0; reader.hasNext(); i++) {
+            day.index = i;
+            day.description = null;
+            boolean hasTemperature = false;
+
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (OWM_PRESSURE.equals(name)) {
+                    day.pressure = reader.nextDouble();
+                } else if (OWM_HUMIDITY.equals(name)) {
+                    day.humidity = reader.nextInt();
+                } else if (OWM_WINDSPEED.equals(name)) {
+                    day.windSpeed = reader.nextDouble();
+                } else if (OWM_WIND_DIRECTION.equals(name)) {
+                    day.windDirection = reader.nextDouble();
+                } else if (OWM_TEMPERATURE.equals(name)) {
+                    readTemperature(reader, day);
+                    hasTemperature = true;
+                } else if (OWM_WEATHER.equals(name)) {
+                    readWeather(reader, day);
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            if (!hasTemperature || day.description == null) {
+                throw new JSONException("Incomplete forecast for day " + i);
+            }
+            handler.onDay(day);
+        }
+        reader.endArray();
+    }
+
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void readTemperature(JsonReader reader, Day day) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_MAX.equals(name)) {
+                day.high = reader.nextDouble();
+            } else if (OWM_MIN.equals(name)) {
+                day.low = reader.nextDouble();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    // Description is in a child array called "weather", which is 1 element long.
+    // That element also contains a weather code.
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    private static void readWeather(JsonReader reader, Day day) throws IOException {
+        reader.beginArray();
+        boolean first = true;
+        while (reader.hasNext()) {
+            if (!first || reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+            first = false;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (OWM_DESCRIPTION.equals(name)) {
+                    day.description = reader.nextString();
+                } else if (OWM_WEATHER_ID.equals(name)) {
+                    day.weatherId = reader.nextInt();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        }
+        reader.endArray();
+    }
+
+    /**
+     * Parses a complete response held in memory by building the org.json object tree first.
+     */
+    public static void parseTree(String forecastJsonStr, Handler handler) throws JSONException {
+        JSONObject forecastJson = new JSONObject(forecastJsonStr);
+
+        // do we have an error?
+        if (forecastJson.has(OWM_MESSAGE_CODE)) {
+            if (!handler.onMessageCode(forecastJson.getInt(OWM_MESSAGE_CODE))) {
+                return;
+            }
+        }
+
+        JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
+
+        JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
+        JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
+        handler.onCity(cityJson.getString(OWM_CITY_NAME),
+                cityCoord.getDouble(OWM_LATITUDE), cityCoord.getDouble(OWM_LONGITUDE));
+
+        Day day = new Day();
+        for (int i = 0; i < weatherArray.length(); i++) {
+            // Get the JSON object representing the day
+            JSONObject dayForecast = weatherArray.getJSONObject(i);
+
+            day.index = i;
+            day.pressure = dayForecast.getDouble(OWM_PRESSURE);
+            day.humidity = dayForecast.getInt(OWM_HUMIDITY);
+            day.windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
+            day.windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
+
+            JSONObject weatherObject =
+                    dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
+            day.description = weatherObject.getString(OWM_DESCRIPTION);
+            day.weatherId = weatherObject.getInt(OWM_WEATHER_ID);
+
+            // Temperatures are in a child object called "temp".  Try not to name variables
+            // "temp" when working with temperature.  It confuses everybody.
+            JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
+            day.high = temperatureObject.getDouble(OWM_MAX);
+            day.low = temperatureObject.getDouble(OWM_MIN);
+
+            handler.onDay(day);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.android.sunshine.app.sync;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * What a {@link WeatherSource} is asked for: the forecast of one location for a number of days,
+ * optionally only if it changed since the response the validators came from.
+ */
+public class ForecastRequest {
+    public final String locationSetting;
+    public final int numDays;
+    public final String units;
+
+    // Validators of the stored forecast, null when the request is unconditional.
+    public String etag;
+    public String lastModified;
+    // Name of the backend the validators came from, null if not recorded.
+    public String validatorSource;
+
+    // Where the source records its connect, download and parse times, may be null.
+    public SyncTrace trace;
+    // Counts every failed attempt at a backend, retries and hedges included, may be null.
+    public AtomicInteger failures;
+
+    public ForecastRequest(String locationSetting, int numDays, String units) {
+        this.locationSetting = locationSetting;
+        this.numDays = numDays;
+        this.units = units;
+    }
+
+    public boolean isConditional() {
+        return etag != null || lastModified != null;
+    }
+
+    /**
+     * @return a copy of this request without validators, for a backend that did not issue them.
+     */
+    public ForecastRequest unconditional() {
+        ForecastRequest request = new ForecastRequest(locationSetting, numDays, units);
+        request.trace = trace;
+        request.failures = failures;
+        return request;
+    }
+}
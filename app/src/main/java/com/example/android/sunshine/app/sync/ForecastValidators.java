@@ -0,0 +1,98 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Remembers the HTTP cache validators (ETag and Last-Modified) of the last forecast stored for
+ * each request, so the next sync can ask the server whether anything changed at all.
+ *
+ * Validators live in their own preferences file rather than the default one, so that writing
+ * them does not wake up the OnSharedPreferenceChangeListeners of the UI.
+ */
+public class ForecastValidators {
+
+    static final String PREFS_NAME = "forecast_validators";
+
+    private static final String KEY_ETAG = "etag:";
+    private static final String KEY_LAST_MODIFIED = "last_modified:";
+    private static final String KEY_SOURCE = "source:";
+    private static final String KEY_HITS = "hits";
+    private static final String KEY_MISSES = "misses";
+
+    private final SharedPreferences mPrefs;
+
+    public ForecastValidators(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Builds the key validators are stored under.  Everything that changes the response body
+     * has to be part of it, otherwise a 304 could confirm a forecast we never stored.
+     */
+    public static String requestKey(String locationSetting, int numDays) {
+        return locationSetting + "|" + numDays;
+    }
+
+    /**
+     * Makes {@code request} conditional if we have validators for {@code requestKey}.
+     *
+     * @return true if the request is now conditional.
+     */
+    public boolean applyTo(ForecastRequest request, String requestKey) {
+        request.etag = mPrefs.getString(KEY_ETAG + requestKey, null);
+        request.lastModified = mPrefs.getString(KEY_LAST_MODIFIED + requestKey, null);
+        request.validatorSource = mPrefs.getString(KEY_SOURCE + requestKey, null);
+        return request.isConditional();
+    }
+
+    /**
+     * Remembers the validators of a response, and the backend that issued them.  Only call this
+     * once the forecast it carried has been stored, so a failed sync is never confirmed by a
+     * later 304.
+     */
+    public void store(String requestKey, String etag, String lastModified, String source) {
+        mPrefs.edit()
+                .putString(KEY_ETAG + requestKey, etag)
+                .putString(KEY_LAST_MODIFIED + requestKey, lastModified)
+                .putString(KEY_SOURCE + requestKey, source)
+                .apply();
+    }
+
+    /**
+     * Forgets the validators for {@code requestKey}, so the next request downloads everything.
+     */
+    public void clear(String requestKey) {
+        mPrefs.edit()
+                .remove(KEY_ETAG + requestKey)
+                .remove(KEY_LAST_MODIFIED + requestKey)
+                .remove(KEY_SOURCE + requestKey)
+                .apply();
+    }
+
+    /**
+     * Counts a conditional request answered with 304 Not Modified.
+     */
+    public void recordHit() {
+        increment(KEY_HITS);
+    }
+
+    /**
+     * Counts a request that had to download and store the forecast.
+     */
+    public void recordMiss() {
+        increment(KEY_MISSES);
+    }
+
+    public long getHits() {
+        return mPrefs.getLong(KEY_HITS, 0);
+    }
+
+    public long getMisses() {
+        return mPrefs.getLong(KEY_MISSES, 0);
+    }
+
+    private synchronized void increment(String key) {
+        mPrefs.edit().putLong(key, mPrefs.getLong(key, 0) + 1).apply();
+    }
+}
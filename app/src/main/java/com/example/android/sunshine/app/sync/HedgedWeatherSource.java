@@ -0,0 +1,310 @@
+package com.example.android.sunshine.app.sync;
+
+import android.util.Log;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asks several backends for the same forecast, so that one slow or failing backend does not
+ * hold up the sync.
+ *
+ * The fastest backend, by median latency over its recent requests, is asked first.  If it has
+ * not answered within the 95th percentile of its own latency, the next one is asked as well, and
+ * whichever answers first wins.  A backend that fails, or answers anything but a forecast or
+ * not modified, is replaced by the next one right away.  Requests that lost the race are left
+ * to finish, so that their latency is still recorded.
+ *
+ * Given a {@link SourceGuard}, every backend is retried and limited on its own, and a backend
+ * whose circuit breaker is open is not asked at all.
+ *
+ * Validators are only sent to the backend that issued them, since another backend could confirm
+ * a forecast it never served.
+ */
+public class HedgedWeatherSource implements WeatherSource {
+    private static final String LOG_TAG = HedgedWeatherSource.class.getSimpleName();
+
+    // Latencies kept per backend, and how many it takes before they are trusted.
+    private static final int LATENCY_WINDOW = 50;
+    private static final int MIN_SAMPLES = 5;
+    private static final int HEDGE_PERCENTILE = 95;
+
+    private static final ExecutorService sExecutor =
+            Executors.newCachedThreadPool(new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable,
+                            "SunshineHedge-" + mCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    static class Backend {
+        final WeatherSource source;
+        final int rank;
+        final LatencyTracker latency = new LatencyTracker(LATENCY_WINDOW);
+
+        Backend(WeatherSource source, int rank) {
+            this.source = source;
+            this.rank = rank;
+        }
+
+        boolean isMeasured() {
+            return latency.getCount() >= MIN_SAMPLES;
+        }
+
+        long medianMillis() {
+            return latency.percentile(50, 0);
+        }
+    }
+
+    // The outcome of asking one backend; exactly one of the two is set.  A forecast may still
+    // carry an error from the server in its message code.
+    private static class Answer {
+        final int index;
+        Forecast forecast;
+        Exception failure;
+
+        Answer(int index) {
+            this.index = index;
+        }
+    }
+
+    private final List<Backend> mBackends = new ArrayList<Backend>();
+    private final String mName;
+    private final long mDefaultHedgeDelayMillis;
+    private final long mMinHedgeDelayMillis;
+    private final long mMaxHedgeDelayMillis;
+    private final SourceGuard mGuard;
+
+    public HedgedWeatherSource(List<WeatherSource> sources, long defaultHedgeDelayMillis,
+                               long minHedgeDelayMillis, long maxHedgeDelayMillis) {
+        this(sources, defaultHedgeDelayMillis, minHedgeDelayMillis, maxHedgeDelayMillis, null);
+    }
+
+    /**
+     * @param sources backends in order of preference until their latencies are known.
+     * @param defaultHedgeDelayMillis how long to wait for a backend with too few latencies.
+     * @param guard retries and breakers of the backends, null to ask them once, unguarded.
+     */
+    public HedgedWeatherSource(List<WeatherSource> sources, long defaultHedgeDelayMillis,
+                               long minHedgeDelayMillis, long maxHedgeDelayMillis,
+                               SourceGuard guard) {
+        if (sources.isEmpty()) {
+            throw new IllegalArgumentException("No backends");
+        }
+        StringBuilder name = new StringBuilder("hedged:");
+        for (int i = 0; i < sources.size(); i++) {
+            mBackends.add(new Backend(sources.get(i), i));
+            name.append(i == 0 ? "" : ",").append(sources.get(i).getName());
+        }
+        mName = name.toString();
+        mDefaultHedgeDelayMillis = defaultHedgeDelayMillis;
+        mMinHedgeDelayMillis = minHedgeDelayMillis;
+        mMaxHedgeDelayMillis = maxHedgeDelayMillis;
+        mGuard = guard;
+    }
+
+    @Override
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * @return the backends in the order they are asked.  Measured backends come first, fastest
+     * median first, then the others in their configured order.
+     */
+    List<Backend> getOrder() {
+        List<Backend> order = new ArrayList<Backend>(mBackends);
+        Collections.sort(order, new Comparator<Backend>() {
+            @Override
+            public int compare(Backend lhs, Backend rhs) {
+                if (lhs.isMeasured() != rhs.isMeasured()) {
+                    return lhs.isMeasured() ? -1 : 1;
+                }
+                if (lhs.isMeasured()) {
+                    long difference = lhs.medianMillis() - rhs.medianMillis();
+                    if (difference != 0) {
+                        return difference < 0 ? -1 : 1;
+                    }
+                }
+                return lhs.rank - rhs.rank;
+            }
+        });
+        return order;
+    }
+
+    /**
+     * @return how long {@code backend} gets to answer before the next one is asked as well.
+     */
+    long hedgeDelayMillis(Backend backend) {
+        if (!backend.isMeasured()) {
+            return mDefaultHedgeDelayMillis;
+        }
+        long p95 = backend.latency.percentile(HEDGE_PERCENTILE, mDefaultHedgeDelayMillis);
+        return Math.max(mMinHedgeDelayMillis, Math.min(p95, mMaxHedgeDelayMillis));
+    }
+
+    @Override
+    public Forecast fetch(ForecastRequest request) throws IOException, JSONException {
+        List<Backend> order = getOrder();
+        long now = System.currentTimeMillis();
+        if (mGuard != null) {
+            // Backends whose breaker is open are not asked, not even as a hedge.
+            Iterator<Backend> backends = order.iterator();
+            while (backends.hasNext()) {
+                if (mGuard.breakerFor(backends.next().source.getName()).isOpen(now)) {
+                    backends.remove();
+                }
+            }
+        }
+        if (order.isEmpty()) {
+            throw new RetryPolicy.CircuitOpenException(getRetryAfterMillis(now));
+        }
+        CompletionService<Answer> answers = new ExecutorCompletionService<Answer>(sExecutor);
+        Answer[] failures = new Answer[order.size()];
+        long start = SyncTrace.start();
+        int started = 0;
+        int pending = 0;
+
+        try {
+            submit(answers, order, started++, request);
+            pending++;
+            while (pending > 0) {
+                Future<Answer> done;
+                if (started < order.size()) {
+                    done = answers.poll(hedgeDelayMillis(order.get(started - 1)),
+                            TimeUnit.MILLISECONDS);
+                    if (done == null) {
+                        // The last backend asked is slower than usual, ask the next one too.
+                        Log.d(LOG_TAG, "Hedging " + request.locationSetting + " to "
+                                + order.get(started).source.getName());
+                        if (request.trace != null) {
+                            request.trace.end(request.locationSetting, SyncTrace.PHASE_HEDGE,
+                                    start);
+                        }
+                        submit(answers, order, started++, request);
+                        pending++;
+                        continue;
+                    }
+                } else {
+                    done = answers.take();
+                }
+                pending--;
+
+                Answer answer = done.get();
+                if (answer.forecast != null && (answer.forecast.notModified
+                        || answer.forecast.messageCode == HttpURLConnection.HTTP_OK)) {
+                    return answer.forecast;
+                }
+                failures[answer.index] = answer;
+                if (pending == 0 && started < order.size()) {
+                    // Fail over at once rather than waiting out the hedge delay.
+                    submit(answers, order, started++, request);
+                    pending++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.toString());
+        } catch (ExecutionException e) {
+            // Answers carry their failures, so only an Error gets here.
+            throw new IllegalStateException(e.getCause());
+        }
+
+        // Every backend failed.  Report the answer of the one that was asked first.
+        for (Answer answer : failures) {
+            if (answer == null) {
+                continue;
+            }
+            Exception failure = answer.failure;
+            if (answer.forecast != null) {
+                return answer.forecast;
+            } else if (failure instanceof IOException) {
+                throw (IOException) failure;
+            } else if (failure instanceof JSONException) {
+                throw (JSONException) failure;
+            } else if (failure instanceof RuntimeException) {
+                throw (RuntimeException) failure;
+            }
+        }
+        throw new IOException("No backend answered");
+    }
+
+    // How long until the first backend lets a request through again.
+    private long getRetryAfterMillis(long now) {
+        long retryAfter = Long.MAX_VALUE;
+        for (Backend backend : mBackends) {
+            retryAfter = Math.min(retryAfter,
+                    mGuard.breakerFor(backend.source.getName()).getRetryAfterMillis(now));
+        }
+        return retryAfter;
+    }
+
+    private void submit(CompletionService<Answer> answers, List<Backend> order, final int index,
+                        ForecastRequest request) {
+        final Backend backend = order.get(index);
+        final ForecastRequest backendRequest = issuedBy(request, backend)
+                ? request : request.unconditional();
+        answers.submit(new Callable<Answer>() {
+            @Override
+            public Answer call() {
+                Answer answer = new Answer(index);
+                long start = System.currentTimeMillis();
+                try {
+                    answer.forecast = mGuard == null ? backend.source.fetch(backendRequest)
+                            : mGuard.fetch(backend.source, backendRequest);
+                    answer.forecast.source = backend.source.getName();
+                    backend.latency.record(System.currentTimeMillis() - start);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    answer.failure = new InterruptedIOException(e.toString());
+                } catch (Exception e) {
+                    answer.failure = e;
+                    if (mGuard == null && backendRequest.failures != null) {
+                        // A guard counts its own attempts.
+                        backendRequest.failures.incrementAndGet();
+                    }
+                    // A failure costs at least as much as the longest wait for an answer, so
+                    // that failing backends drop down the order.
+                    backend.latency.record(Math.max(System.currentTimeMillis() - start,
+                            mMaxHedgeDelayMillis));
+                }
+                return answer;
+            }
+        });
+    }
+
+    /**
+     * Validators without a source were stored before there was more than one backend, so they
+     * came from the first one.
+     */
+    private boolean issuedBy(ForecastRequest request, Backend backend) {
+        if (!request.isConditional()) {
+            return true;
+        }
+        return request.validatorSource == null
+                ? backend.rank == 0 : request.validatorSource.equals(backend.source.getName());
+    }
+}
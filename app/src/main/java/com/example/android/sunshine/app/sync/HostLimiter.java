@@ -0,0 +1,39 @@
+package com.example.android.sunshine.app.sync;
+
+import java.util.HashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Caps how many requests run against the same host at once, however many sync workers
+ * are busy.
+ */
+public class HostLimiter {
+
+    private final int mPermitsPerHost;
+    private final HashMap<String, Semaphore> mSemaphores = new HashMap<String, Semaphore>();
+
+    public HostLimiter(int permitsPerHost) {
+        mPermitsPerHost = permitsPerHost;
+    }
+
+    private synchronized Semaphore semaphoreFor(String host) {
+        Semaphore semaphore = mSemaphores.get(host);
+        if (semaphore == null) {
+            semaphore = new Semaphore(mPermitsPerHost, true);
+            mSemaphores.put(host, semaphore);
+        }
+        return semaphore;
+    }
+
+    /**
+     * Blocks until a request to {@code host} may start.  Every call must be paired with a call
+     * to {@link #release(String)}.
+     */
+    public void acquire(String host) throws InterruptedException {
+        semaphoreFor(host).acquire();
+    }
+
+    public void release(String host) {
+        semaphoreFor(host).release();
+    }
+}
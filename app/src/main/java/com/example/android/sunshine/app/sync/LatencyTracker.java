@@ -0,0 +1,45 @@
+package com.example.android.sunshine.app.sync;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the latencies of the most recent requests to one backend and answers percentiles over
+ * them, so that estimates follow the backend as it speeds up or slows down.
+ */
+public class LatencyTracker {
+
+    private final long[] mSamples;
+    private int mCount;
+    private int mNext;
+
+    public LatencyTracker(int windowSize) {
+        mSamples = new long[windowSize];
+    }
+
+    public synchronized void record(long latencyMillis) {
+        mSamples[mNext] = latencyMillis;
+        mNext = (mNext + 1) % mSamples.length;
+        if (mCount < mSamples.length) {
+            mCount++;
+        }
+    }
+
+    public synchronized int getCount() {
+        return mCount;
+    }
+
+    /**
+     * @param percentile between 0 and 100.
+     * @return the latency that {@code percentile} percent of the recorded requests beat or met,
+     * or {@code fallback} if nothing was recorded yet.
+     */
+    public synchronized long percentile(int percentile, long fallback) {
+        if (mCount == 0) {
+            return fallback;
+        }
+        long[] sorted = Arrays.copyOf(mSamples, mCount);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * mCount) - 1;
+        return sorted[Math.max(0, Math.min(index, mCount - 1))];
+    }
+}
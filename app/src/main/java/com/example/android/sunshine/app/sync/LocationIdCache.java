@@ -0,0 +1,146 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembers the row ID of every location setting the sync has stored, so that a sync of a known
+ * location does not have to ask the provider for it.  A location the cache does not know is
+ * resolved with a single upsert call to the provider, or before Honeycomb, with the query and
+ * insert the sync always did.
+ *
+ * The cache is dropped whenever the location table changes, since a deleted location's _id can
+ * be handed out again to a different one.  The provider notifies upserted locations on their
+ * own URI, which the cache does not observe, so its own inserts do not drop it.
+ */
+public class LocationIdCache {
+
+    private static LocationIdCache sInstance;
+
+    private final Context mContext;
+    private final Map<String, Long> mIds = new HashMap<String, Long>();
+    // Bumped by every clear(), so that an upsert racing with one is not cached.
+    private int mGeneration;
+    private int mLookups;
+    private int mMisses;
+
+    /**
+     * @return the cache shared by every sync of the process.
+     */
+    public static synchronized LocationIdCache getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new LocationIdCache(context.getApplicationContext());
+            sInstance.observeLocations();
+        }
+        return sInstance;
+    }
+
+    LocationIdCache(Context context) {
+        mContext = context;
+    }
+
+    void observeLocations() {
+        // Without a handler the observer is called on a binder thread, which is all it needs.
+        mContext.getContentResolver().registerContentObserver(LocationEntry.CONTENT_URI, false,
+                new ContentObserver(null) {
+                    @Override
+                    public void onChange(boolean selfChange) {
+                        clear();
+                    }
+                });
+    }
+
+    /**
+     * @return the row ID of {@code locationSetting}, inserting the location if it is not stored.
+     */
+    public long resolve(String locationSetting, String cityName, double lat, double lon) {
+        int generation;
+        synchronized (this) {
+            mLookups++;
+            Long id = mIds.get(locationSetting);
+            if (id != null) {
+                return id;
+            }
+            mMisses++;
+            generation = mGeneration;
+        }
+
+        long id = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                ? upsert(locationSetting, cityName, lat, lon)
+                : queryOrInsert(locationSetting, cityName, lat, lon);
+
+        synchronized (this) {
+            if (generation == mGeneration) {
+                mIds.put(locationSetting, id);
+            }
+        }
+        return id;
+    }
+
+    private long upsert(String locationSetting, String cityName, double lat, double lon) {
+        Bundle extras = new Bundle();
+        extras.putString(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        extras.putString(LocationEntry.COLUMN_CITY_NAME, cityName);
+        extras.putDouble(LocationEntry.COLUMN_COORD_LAT, lat);
+        extras.putDouble(LocationEntry.COLUMN_COORD_LONG, lon);
+        Bundle result = mContext.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_UPSERT_LOCATION, null, extras);
+        return result.getLong(WeatherContract.KEY_LOCATION_ID);
+    }
+
+    /**
+     * Looks the location up and inserts it if it is not stored, in two round trips.  Devices
+     * before Honeycomb have no ContentResolver.call() to upsert with.
+     */
+    private long queryOrInsert(String locationSetting, String cityName, double lat, double lon) {
+        Cursor locationCursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                new String[]{LocationEntry._ID},
+                LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                new String[]{locationSetting},
+                null);
+        try {
+            if (locationCursor.moveToFirst()) {
+                return locationCursor.getLong(0);
+            }
+        } finally {
+            locationCursor.close();
+        }
+
+        ContentValues locationValues = new ContentValues();
+        locationValues.put(LocationEntry.COLUMN_CITY_NAME, cityName);
+        locationValues.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        locationValues.put(LocationEntry.COLUMN_COORD_LAT, lat);
+        locationValues.put(LocationEntry.COLUMN_COORD_LONG, lon);
+        Uri insertedUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI,
+                locationValues);
+        return ContentUris.parseId(insertedUri);
+    }
+
+    public synchronized void clear() {
+        mIds.clear();
+        mGeneration++;
+    }
+
+    public synchronized int getLookupCount() {
+        return mLookups;
+    }
+
+    /**
+     * @return how many lookups went to the provider.
+     */
+    public synchronized int getMissCount() {
+        return mMisses;
+    }
+}
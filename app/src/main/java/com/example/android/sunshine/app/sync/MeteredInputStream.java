@@ -0,0 +1,58 @@
+package com.example.android.sunshine.app.sync;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts the bytes read from a stream and the time spent waiting for them, so that downloading
+ * a response can be told apart from parsing it while both happen in the same loop.
+ */
+public class MeteredInputStream extends FilterInputStream {
+
+    private long mBytes;
+    private long mReadNanos;
+
+    public MeteredInputStream(InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        long start = System.nanoTime();
+        int b = super.read();
+        mReadNanos += System.nanoTime() - start;
+        if (b != -1) {
+            mBytes++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int count) throws IOException {
+        long start = System.nanoTime();
+        int read = super.read(buffer, offset, count);
+        mReadNanos += System.nanoTime() - start;
+        if (read > 0) {
+            mBytes += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long count) throws IOException {
+        long start = System.nanoTime();
+        long skipped = super.skip(count);
+        mReadNanos += System.nanoTime() - start;
+        mBytes += skipped;
+        return skipped;
+    }
+
+    public long getBytes() {
+        return mBytes;
+    }
+
+    public long getReadNanos() {
+        return mReadNanos;
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.android.sunshine.app.sync;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the sync of several locations on a bounded pool of workers.  Each location is synced
+ * independently, so a failing location does not hold up or abort the others.
+ */
+public class MultiLocationSync {
+    private static final String LOG_TAG = MultiLocationSync.class.getSimpleName();
+
+    /**
+     * Syncs a single location.  Called on a worker thread.
+     */
+    public interface LocationTask {
+        /**
+         * @return true if the stored forecast of the location changed.
+         */
+        boolean syncLocation(String locationSetting) throws Exception;
+    }
+
+    private final int mMaxWorkers;
+
+    public MultiLocationSync(int maxWorkers) {
+        mMaxWorkers = maxWorkers;
+    }
+
+    /**
+     * Syncs every location and waits for all of them to finish.
+     *
+     * @return the locations whose stored forecast changed.
+     */
+    public List<String> run(List<String> locationSettings, final LocationTask task)
+            throws InterruptedException {
+        List<String> changed = new ArrayList<String>();
+        if (locationSettings.isEmpty()) {
+            return changed;
+        }
+
+        int workers = Math.min(mMaxWorkers, locationSettings.size());
+        ExecutorService executor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "SunshineSync-" + mCount.incrementAndGet());
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        try {
+            List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>(locationSettings.size());
+            for (final String locationSetting : locationSettings) {
+                futures.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() throws Exception {
+                        return task.syncLocation(locationSetting);
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    if (futures.get(i).get()) {
+                        changed.add(locationSettings.get(i));
+                    }
+                } catch (ExecutionException e) {
+                    Log.e(LOG_TAG, "Sync of " + locationSettings.get(i) + " failed", e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return changed;
+    }
+}
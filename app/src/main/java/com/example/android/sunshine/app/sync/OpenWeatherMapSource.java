@@ -0,0 +1,144 @@
+package com.example.android.sunshine.app.sync;
+
+import android.net.Uri;
+import android.os.Build;
+
+import org.json.JSONException;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+
+/**
+ * Gets the daily forecast from OpenWeatherMap, or from any server speaking the same API such as
+ * a local fixture server.
+ */
+public class OpenWeatherMapSource implements WeatherSource {
+
+    // Possible parameters are avaiable at OWM's forecast API page, at
+    // http://openweathermap.org/API#forecast
+    public static final String FORECAST_BASE_URL =
+            "http://api.openweathermap.org/data/2.5/forecast/daily?";
+    private static final String QUERY_PARAM = "q";
+    private static final String FORMAT_PARAM = "mode";
+    private static final String UNITS_PARAM = "units";
+    private static final String DAYS_PARAM = "cnt";
+    private static final String APPID_PARAM = "APPID";
+
+    private final String mBaseUrl;
+    private final String mApiKey;
+    private final String mHost;
+    private final SyncHttpClient mHttpClient;
+
+    public OpenWeatherMapSource(String baseUrl, String apiKey) {
+        this(baseUrl, apiKey, SyncHttpClient.getInstance());
+    }
+
+    public OpenWeatherMapSource(String baseUrl, String apiKey, SyncHttpClient httpClient) {
+        mBaseUrl = baseUrl;
+        mApiKey = apiKey;
+        // The port tells apart backends on one host, such as local fixture servers.
+        Uri uri = Uri.parse(baseUrl);
+        mHost = uri.getPort() == -1 ? uri.getHost() : uri.getHost() + ":" + uri.getPort();
+        mHttpClient = httpClient;
+    }
+
+    @Override
+    public String getName() {
+        return mHost;
+    }
+
+    URL buildUrl(ForecastRequest request) throws IOException {
+        Uri builtUri = Uri.parse(mBaseUrl).buildUpon()
+                .appendQueryParameter(QUERY_PARAM, request.locationSetting)
+                .appendQueryParameter(FORMAT_PARAM, "json")
+                .appendQueryParameter(UNITS_PARAM, request.units)
+                .appendQueryParameter(DAYS_PARAM, Integer.toString(request.numDays))
+                .appendQueryParameter(APPID_PARAM, mApiKey)
+                .build();
+        return new URL(builtUri.toString());
+    }
+
+    @Override
+    public Forecast fetch(ForecastRequest request) throws IOException, JSONException {
+        SyncTrace trace = request.trace;
+        HashMap<String, String> headers = new HashMap<String, String>();
+        if (request.etag != null) {
+            headers.put("If-None-Match", request.etag);
+        }
+        if (request.lastModified != null) {
+            headers.put("If-Modified-Since", request.lastModified);
+        }
+
+        // Create the request to OpenWeatherMap on a pooled connection
+        long connectStart = SyncTrace.start();
+        SyncHttpClient.Response response = mHttpClient.get(buildUrl(request), headers);
+        try {
+            int responseCode = response.getCode();
+            if (trace != null) {
+                // Covers DNS, the handshake and the wait for the response headers, unless a
+                // kept-alive connection was reused.
+                trace.end(request.locationSetting, SyncTrace.PHASE_CONNECT, connectStart);
+            }
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                return Forecast.notModified();
+            }
+            if (responseCode >= 400 && responseCode < 500) {
+                throw new RetryPolicy.PermanentException("HTTP " + responseCode);
+            }
+
+            Forecast forecast = new Forecast();
+            forecast.etag = response.getHeader("ETag");
+            forecast.lastModified = response.getHeader("Last-Modified");
+            long bodyStart = SyncTrace.start();
+            Reader reader = new BufferedReader(new InputStreamReader(response.getBody(), "UTF-8"));
+
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                // Stream the days out of the response as they arrive, so the payload is
+                // never held as a String or as an org.json tree.  An empty stream surfaces
+                // here as an EOFException, and is reported as the server being down.
+                ForecastJsonParser.parse(reader, forecast);
+            } else {
+                String forecastJsonStr = readFully(reader);
+                if (forecastJsonStr.length() == 0) {
+                    // Stream was empty.  No point in parsing.
+                    throw new EOFException("Empty forecast response");
+                }
+                ForecastJsonParser.parseTree(forecastJsonStr, forecast);
+            }
+            if (trace != null) {
+                // Reading, inflating and parsing are interleaved, so parsing is whatever time
+                // was spent neither waiting for the stream nor inflating it.
+                long bodyNanos = System.nanoTime() - bodyStart;
+                long wireNanos = response.getWireReadNanos();
+                long inflateNanos = response.getInflateNanos();
+                trace.record(request.locationSetting, SyncTrace.PHASE_DOWNLOAD,
+                        wireNanos / 1000, response.getWireBytes());
+                if (response.isCompressed()) {
+                    trace.record(request.locationSetting, SyncTrace.PHASE_INFLATE,
+                            inflateNanos / 1000, response.getDecodedBytes());
+                }
+                trace.record(request.locationSetting, SyncTrace.PHASE_PARSE,
+                        (bodyNanos - wireNanos - inflateNanos) / 1000, 0);
+            }
+            return forecast;
+        } finally {
+            response.close();
+        }
+    }
+
+    static String readFully(Reader reader) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        char[] buffer = new char[4096];
+        int read;
+        while ((read = reader.read(buffer)) != -1) {
+            builder.append(buffer, 0, read);
+        }
+        return builder.toString();
+    }
+}
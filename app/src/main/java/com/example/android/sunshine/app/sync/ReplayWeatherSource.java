@@ -0,0 +1,67 @@
+package com.example.android.sunshine.app.sync;
+
+import android.net.Uri;
+import android.os.Build;
+
+import org.json.JSONException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+
+/**
+ * Replays recorded forecast responses from files instead of calling a server, so the sync can
+ * be exercised and measured offline without spending API quota.
+ *
+ * The response for a location is read from {@code <directory>/<location setting>.json}.  A
+ * missing file is answered like OpenWeatherMap answers an unknown city.  The modification time
+ * of the file serves as its Last-Modified validator, so replacing a file is seen as new data.
+ */
+public class ReplayWeatherSource implements WeatherSource {
+
+    private final File mDirectory;
+
+    public ReplayWeatherSource(File directory) {
+        mDirectory = directory;
+    }
+
+    @Override
+    public String getName() {
+        return "replay:" + mDirectory.getPath();
+    }
+
+    @Override
+    public Forecast fetch(ForecastRequest request) throws IOException, JSONException {
+        File file = new File(mDirectory, Uri.encode(request.locationSetting) + ".json");
+        if (!file.isFile()) {
+            Forecast forecast = new Forecast();
+            forecast.messageCode = HttpURLConnection.HTTP_NOT_FOUND;
+            return forecast;
+        }
+
+        String lastModified = Long.toString(file.lastModified());
+        if (lastModified.equals(request.lastModified)) {
+            return Forecast.notModified();
+        }
+
+        Forecast forecast = new Forecast();
+        forecast.lastModified = lastModified;
+        Reader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+                ForecastJsonParser.parse(reader, forecast);
+            } else {
+                ForecastJsonParser.parseTree(OpenWeatherMapSource.readFully(reader), forecast);
+            }
+        } finally {
+            reader.close();
+        }
+        forecast.truncate(request.numDays);
+        return forecast;
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.android.sunshine.app.sync;
+
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Retries a failing request with jittered exponential backoff, and stops early once the
+ * {@link CircuitBreaker} of the host opens.
+ *
+ * The delay before retry {@code n} (counting from 0) is picked uniformly between 0 and
+ * {@code min(maxDelay, baseDelay * 2^n)}, so clients that failed together do not come back
+ * together.
+ */
+public class RetryPolicy {
+
+    /**
+     * One try of the request.
+     */
+    public interface Attempt<T> {
+        T run() throws IOException;
+    }
+
+    /**
+     * Thrown for failures that retrying cannot fix, e.g. a 4xx response.  The host answered,
+     * so these count as a success for the circuit breaker.
+     */
+    public static class PermanentException extends IOException {
+        public PermanentException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Thrown instead of calling a host whose circuit breaker is open.
+     */
+    public static class CircuitOpenException extends IOException {
+        public final long retryAfterMillis;
+
+        public CircuitOpenException(long retryAfterMillis) {
+            super("Circuit open, retry in " + retryAfterMillis + "ms");
+            this.retryAfterMillis = retryAfterMillis;
+        }
+    }
+
+    private final int mMaxAttempts;
+    private final long mBaseDelayMillis;
+    private final long mMaxDelayMillis;
+    private final Random mRandom;
+
+    public RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis, Random random) {
+        mMaxAttempts = maxAttempts;
+        mBaseDelayMillis = baseDelayMillis;
+        mMaxDelayMillis = maxDelayMillis;
+        mRandom = random;
+    }
+
+    public int getMaxAttempts() {
+        return mMaxAttempts;
+    }
+
+    /**
+     * @param retry 0 for the wait before the first retry.
+     */
+    public long delayMillis(int retry) {
+        long ceiling = mBaseDelayMillis << Math.min(retry, 30);
+        if (ceiling <= 0 || ceiling > mMaxDelayMillis) {
+            ceiling = mMaxDelayMillis;
+        }
+        synchronized (mRandom) {
+            return (long) (mRandom.nextDouble() * ceiling);
+        }
+    }
+
+    /**
+     * Runs {@code attempt} until it succeeds, fails permanently, runs out of attempts or the
+     * breaker opens.  The last failure is rethrown.
+     *
+     * @param failures counts every failed attempt, may be null.
+     */
+    public <T> T execute(CircuitBreaker breaker, Attempt<T> attempt, int[] failures)
+            throws IOException, InterruptedException {
+        for (int i = 0; ; i++) {
+            long now = System.currentTimeMillis();
+            CircuitBreaker.Permit permit = breaker.allowRequest(now);
+            if (permit == null) {
+                throw new CircuitOpenException(breaker.getRetryAfterMillis(now));
+            }
+            try {
+                T result = attempt.run();
+                breaker.recordSuccess(permit);
+                return result;
+            } catch (PermanentException e) {
+                breaker.recordSuccess(permit);
+                throw e;
+            } catch (IOException e) {
+                breaker.recordFailure(permit, System.currentTimeMillis());
+                if (failures != null) failures[0]++;
+                if (i + 1 >= mMaxAttempts) {
+                    throw e;
+                }
+                Thread.sleep(delayMillis(i));
+            }
+        }
+    }
+}
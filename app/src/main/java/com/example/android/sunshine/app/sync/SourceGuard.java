@@ -0,0 +1,122 @@
+package com.example.android.sunshine.app.sync;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+
+/**
+ * Sends the requests to a {@link WeatherSource} through its retries, its circuit breaker and
+ * its concurrency limit.  Breakers and limits are kept per {@link WeatherSource#getName()}, so
+ * that every backend of a {@link HedgedWeatherSource} has its own.
+ */
+public class SourceGuard {
+
+    /**
+     * Wraps a malformed response so that it is not retried, since the server answered.
+     */
+    static class ParseFailure extends RetryPolicy.PermanentException {
+        ParseFailure(JSONException cause) {
+            super(cause.getMessage());
+            initCause(cause);
+        }
+    }
+
+    private final RetryPolicy mRetryPolicy;
+    private final HostLimiter mHostLimiter;
+    private final int mFailureThreshold;
+    private final long mOpenMillis;
+    private final long mMaxOpenMillis;
+    private final HashMap<String, CircuitBreaker> mBreakers =
+            new HashMap<String, CircuitBreaker>();
+
+    /**
+     * @param failureThreshold consecutive failures that open the breaker of a source.
+     * @param openMillis how long a breaker first stays open.
+     */
+    public SourceGuard(RetryPolicy retryPolicy, HostLimiter hostLimiter, int failureThreshold,
+                       long openMillis, long maxOpenMillis) {
+        mRetryPolicy = retryPolicy;
+        mHostLimiter = hostLimiter;
+        mFailureThreshold = failureThreshold;
+        mOpenMillis = openMillis;
+        mMaxOpenMillis = maxOpenMillis;
+    }
+
+    synchronized CircuitBreaker breakerFor(String sourceName) {
+        CircuitBreaker breaker = mBreakers.get(sourceName);
+        if (breaker == null) {
+            breaker = new CircuitBreaker(mFailureThreshold, mOpenMillis, mMaxOpenMillis);
+            mBreakers.put(sourceName, breaker);
+        }
+        return breaker;
+    }
+
+    /**
+     * @return {@code source} behind this guard, under the same name.
+     */
+    public WeatherSource wrap(final WeatherSource source) {
+        return new WeatherSource() {
+            @Override
+            public String getName() {
+                return source.getName();
+            }
+
+            @Override
+            public Forecast fetch(ForecastRequest request) throws IOException {
+                try {
+                    return SourceGuard.this.fetch(source, request);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException(e.toString());
+                }
+            }
+        };
+    }
+
+    /**
+     * Fetches from {@code source}, retrying transient failures with backoff.  A source that
+     * keeps failing is left alone until its circuit breaker lets a trial request through again,
+     * in the meantime a {@link RetryPolicy.CircuitOpenException} is thrown.  A malformed
+     * response is thrown as a {@link ParseFailure}.  Failed attempts are counted in
+     * {@link ForecastRequest#failures}.
+     */
+    public Forecast fetch(final WeatherSource source, final ForecastRequest request)
+            throws IOException, InterruptedException {
+        int[] failures = new int[1];
+        try {
+            return mRetryPolicy.execute(breakerFor(source.getName()),
+                    new RetryPolicy.Attempt<Forecast>() {
+                        @Override
+                        public Forecast run() throws IOException {
+                            return fetchOnce(source, request);
+                        }
+                    }, failures);
+        } finally {
+            if (request.failures != null) {
+                request.failures.addAndGet(failures[0]);
+            }
+        }
+    }
+
+    /**
+     * Makes one request to {@code source}, holding one of its concurrency slots for as long as
+     * the response is being read and parsed.
+     */
+    private Forecast fetchOnce(WeatherSource source, ForecastRequest request) throws IOException {
+        try {
+            mHostLimiter.acquire(source.getName());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.toString());
+        }
+        try {
+            return source.fetch(request);
+        } catch (JSONException e) {
+            throw new ParseFailure(e);
+        } finally {
+            mHostLimiter.release(source.getName());
+        }
+    }
+}
@@ -7,21 +7,24 @@ import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.AbstractThreadedSyncAdapter;
 import android.content.ContentProviderClient;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentResolver;
-import android.content.ContentUris;
-import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
+import android.content.OperationApplicationException;
 import android.content.SharedPreferences;
 import android.content.SyncRequest;
 import android.content.SyncResult;
 import android.content.res.Resources;
 import android.database.Cursor;
+import android.database.SQLException;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.RemoteException;
 import android.preference.PreferenceManager;
 import android.support.annotation.IntDef;
 import android.support.v4.app.NotificationCompat;
@@ -34,47 +37,77 @@ import com.example.android.sunshine.app.BuildConfig;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.WeatherBatch;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
 
-import org.json.JSONArray;
 import org.json.JSONException;
-import org.json.JSONObject;
 
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.Vector;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
     public static final String ACTION_DATA_UPDATED =
             "com.example.android.sunshine.app.ACTION_DATA_UPDATED";
-    // Interval at which to sync with the weather, in seconds.
+    // Interval at which to sync with the weather, in seconds, before SyncScheduler
+    // adapts it to the device conditions.
     // 60 seconds (1 minute) * 180 = 3 hours
     public static final int SYNC_INTERVAL = 60 * 180;
     public static final int SYNC_FLEXTIME = SYNC_INTERVAL/3;
     private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
     private static final int WEATHER_NOTIFICATION_ID = 3004;
+    // Locations synced at once by an all-locations sync, and requests in flight per host.
+    private static final int MAX_SYNC_WORKERS = 4;
+    private static final int MAX_REQUESTS_PER_HOST = 2;
+    // Directory under getFilesDir() that switches debug builds to replayed forecasts.
+    static final String REPLAY_DIRECTORY = "replay";
+    // Up to 3 tries per sync, 2s then 4s apart at most, and a source that failed 5 times in a
+    // row is left alone for 5 minutes, doubling up to 3 hours while it keeps failing.
+    private static final int MAX_FETCH_ATTEMPTS = 3;
+    private static final long RETRY_BASE_DELAY_MILLIS = 2000;
+    private static final long RETRY_MAX_DELAY_MILLIS = 30000;
+    private static final int CIRCUIT_FAILURE_THRESHOLD = 5;
+    private static final long CIRCUIT_OPEN_MILLIS = 5 * 60 * 1000;
+    private static final long CIRCUIT_MAX_OPEN_MILLIS = SYNC_INTERVAL * 1000L;
+    // How long the fan-out waits for each consumer.  The notification may download its art,
+    // which gets a deadline of its own so that it can fall back to the bundled icon in time.
+    private static final long FANOUT_TIMEOUT_MILLIS = 5000;
+    private static final long NOTIFICATION_TIMEOUT_MILLIS = 20000;
+    private static final long NOTIFICATION_ART_TIMEOUT_MILLIS = 15000;
+    // A hedged request goes to the next backend after the 95th percentile latency of the one
+    // asked, bounded by these, or after the default while too few latencies are known.
+    private static final long DEFAULT_HEDGE_DELAY_MILLIS = 2000;
+    private static final long MIN_HEDGE_DELAY_MILLIS = 250;
+    private static final long MAX_HEDGE_DELAY_MILLIS = 8000;
+    // Requests for a location that is already waiting to be synced are dropped, for at most
+    // this long after the first one.
+    private static final long COALESCE_WINDOW_MILLIS = 30000;
+
+    // Breakers outlive a single sync, so they are kept per process and per source.
+    private static final SourceGuard sGuard = new SourceGuard(
+            new RetryPolicy(MAX_FETCH_ATTEMPTS, RETRY_BASE_DELAY_MILLIS, RETRY_MAX_DELAY_MILLIS,
+                    new Random()),
+            new HostLimiter(MAX_REQUESTS_PER_HOST),
+            CIRCUIT_FAILURE_THRESHOLD, CIRCUIT_OPEN_MILLIS, CIRCUIT_MAX_OPEN_MILLIS);
+    // Shared by the request helpers, which run in the app, and the syncs of this process.
+    static final SyncCoalescer sCoalescer = new SyncCoalescer(COALESCE_WINDOW_MILLIS);
 
-    private static final String[] NOTIFY_WEATHER_PROJECTION = new String[] {
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
-    };
-
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_MAX_TEMP = 1;
-    private static final int INDEX_MIN_TEMP = 2;
-    private static final int INDEX_SHORT_DESC = 3;
+    /**
+     * Sync extra asking to refresh every stored location, not only the preferred one.
+     */
+    public static final String SYNC_EXTRAS_ALL_LOCATIONS = "all_locations";
 
     @Retention(RetentionPolicy.SOURCE)
     @IntDef({LOCATION_STATUS_OK, LOCATION_STATUS_SERVER_DOWN, LOCATION_STATUS_SERVER_INVALID,  LOCATION_STATUS_UNKNOWN, LOCATION_STATUS_INVALID})
@@ -87,278 +120,511 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public static final int LOCATION_STATUS_INVALID = 4;
 
     SunshineWatchFaceNotifier mWatchFaceNotifier;
+    ForecastValidators mValidators;
+    ForecastFreshness mFreshness;
+    ForecastHorizon mHorizon;
+    SyncGovernor mGovernor;
+    LocationIdCache mLocationIds;
+    WeatherSource mWeatherSource;
 
     public SunshineSyncAdapter(Context context, boolean autoInitialize) {
         super(context, autoInitialize);
         mWatchFaceNotifier = new SunshineWatchFaceNotifier(context);
+        mValidators = new ForecastValidators(context);
+        mFreshness = new ForecastFreshness(context);
+        mHorizon = new ForecastHorizon(context);
+        mGovernor = new SyncGovernor(context, SyncGovernor.systemNetworkState(context));
+        SyncHttpClient.getInstance().setTrafficListener(mGovernor);
+        mLocationIds = LocationIdCache.getInstance(context);
+        mWeatherSource = createWeatherSource(context);
+    }
+
+    /**
+     * Debug builds replay recorded responses when the replay directory holds any, so the sync
+     * can be benchmarked offline.  Everything else talks to OpenWeatherMap, hedged across the
+     * fallback endpoints if the build configures any.  Every backend is behind {@link #sGuard},
+     * a hedged source guards each of its own.
+     */
+    private static WeatherSource createWeatherSource(Context context) {
+        File replayDirectory = new File(context.getFilesDir(), REPLAY_DIRECTORY);
+        if (BuildConfig.DEBUG && replayDirectory.isDirectory()) {
+            String[] files = replayDirectory.list();
+            if (files != null && files.length > 0) {
+                Log.i(SunshineSyncAdapter.class.getSimpleName(),
+                        "Replaying forecasts from " + replayDirectory);
+                return sGuard.wrap(new ReplayWeatherSource(replayDirectory));
+            }
+        }
+        WeatherSource primary = new OpenWeatherMapSource(OpenWeatherMapSource.FORECAST_BASE_URL,
+                BuildConfig.OPEN_WEATHER_MAP_API_KEY);
+        if (BuildConfig.FORECAST_FALLBACK_BASE_URLS.length() == 0) {
+            return sGuard.wrap(primary);
+        }
+        List<WeatherSource> sources = new ArrayList<WeatherSource>();
+        sources.add(primary);
+        for (String baseUrl : BuildConfig.FORECAST_FALLBACK_BASE_URLS.split(",")) {
+            sources.add(new OpenWeatherMapSource(baseUrl.trim(),
+                    BuildConfig.OPEN_WEATHER_MAP_API_KEY));
+        }
+        return new HedgedWeatherSource(sources, DEFAULT_HEDGE_DELAY_MILLIS,
+                MIN_HEDGE_DELAY_MILLIS, MAX_HEDGE_DELAY_MILLIS, sGuard);
+    }
+
+    /**
+     * Replaces the backend, e.g. with a local fixture server in tests.
+     */
+    void setWeatherSource(WeatherSource weatherSource) {
+        mWeatherSource = weatherSource;
     }
 
     @Override
     public void onPerformSync(Account account, Bundle extras, String authority, ContentProviderClient provider, SyncResult syncResult) {
         Log.d(LOG_TAG, "Starting sync");
-        String locationQuery = Utility.getPreferredLocation(getContext());
+        long syncStart = SyncTrace.start();
+        SyncTrace trace = new SyncTrace(System.currentTimeMillis());
+        String preferredLocation = Utility.getPreferredLocation(getContext());
+
+        boolean preferredChanged;
+        if (extras.getBoolean(SYNC_EXTRAS_ALL_LOCATIONS, false)) {
+            preferredChanged = syncAllLocations(preferredLocation, syncResult, trace);
+            sCoalescer.finished(SYNC_EXTRAS_ALL_LOCATIONS);
+        } else {
+            preferredChanged = syncLocation(preferredLocation, syncResult, trace);
+        }
+        SyncScheduler.onSyncFinished(getContext(), syncResult.stats.numUpdates > 0
+                || syncResult.stats.numInserts > 0);
+        // Done writing: the loaders reload now rather than once the provider saw writes go quiet.
+        // Before Honeycomb there is no call(), and they reload after the quiet window instead.
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            getContext().getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                    WeatherContract.METHOD_FLUSH_NOTIFICATIONS, null, null);
+        }
 
-        // These two need to be declared outside the try/catch
-        // so that they can be closed in the finally block.
-        HttpURLConnection urlConnection = null;
-        BufferedReader reader = null;
+        // Everything we announce shows the preferred location, and only days that were
+        // inserted or updated are visible.  Pruning past days alone is not worth a refresh.
+        if (preferredChanged) {
+            fanOut(preferredLocation, trace);
+        }
+        trace.end(SyncTrace.NO_LOCATION, SyncTrace.PHASE_TOTAL, syncStart);
+        trace.writeTo(getContext().getContentResolver());
+        Log.d(LOG_TAG, "Sync requests absorbed so far: " + sCoalescer.getAbsorbedRequestCount()
+                + ", syncs joined: " + sCoalescer.getJoinedSyncCount());
+    }
 
-        // Will contain the raw JSON response as a string.
-        String forecastJsonStr = null;
+    /**
+     * Reads today's forecast once and hands it to every consumer concurrently.  The watch face
+     * goes first and has a short deadline; the notification, which may download art, goes last
+     * and cannot hold up the others.
+     */
+    private void fanOut(String locationSetting, SyncTrace trace) {
+        TodaySnapshot snapshot = TodaySnapshot.load(getContext(), locationSetting);
+        if (snapshot == null) {
+            return;
+        }
+        List<SyncFanOut.Target> targets = new ArrayList<SyncFanOut.Target>();
+        targets.add(new SyncFanOut.Target(SyncTrace.PHASE_FANOUT_WATCH_FACE,
+                Thread.MAX_PRIORITY, FANOUT_TIMEOUT_MILLIS) {
+            @Override
+            protected void deliver(TodaySnapshot snapshot) {
+                mWatchFaceNotifier.notifyWatchFace(snapshot.weatherId, snapshot.high,
+                        snapshot.low);
+            }
+        });
+        targets.add(new SyncFanOut.Target(SyncTrace.PHASE_FANOUT_WIDGETS,
+                Thread.NORM_PRIORITY, FANOUT_TIMEOUT_MILLIS) {
+            @Override
+            protected void deliver(TodaySnapshot snapshot) {
+                updateWidgets();
+            }
+        });
+        targets.add(new SyncFanOut.Target(SyncTrace.PHASE_FANOUT_MUZEI,
+                Thread.NORM_PRIORITY, FANOUT_TIMEOUT_MILLIS) {
+            @Override
+            protected void deliver(TodaySnapshot snapshot) {
+                updateMuzei();
+            }
+        });
+        targets.add(new SyncFanOut.Target(SyncTrace.PHASE_FANOUT_NOTIFICATION,
+                Thread.MIN_PRIORITY, NOTIFICATION_TIMEOUT_MILLIS) {
+            @Override
+            protected void deliver(TodaySnapshot snapshot) {
+                notifyWeather(snapshot);
+            }
+        });
+        try {
+            SyncFanOut.run(snapshot, targets, trace);
+        } catch (InterruptedException e) {
+            // The sync was cancelled.
+            Thread.currentThread().interrupt();
+        }
+    }
 
-        String format = "json";
-        String units = "metric";
-        int numDays = 14;
+    /**
+     * Syncs every location in the location table, plus the preferred one, in parallel.
+     *
+     * @return true if the forecast of the preferred location changed.
+     */
+    private boolean syncAllLocations(String preferredLocation, final SyncResult syncResult,
+                                     final SyncTrace trace) {
+        List<String> locationSettings = new ArrayList<String>();
+        locationSettings.add(preferredLocation);
+        Cursor cursor = getContext().getContentResolver().query(
+                WeatherContract.LocationEntry.CONTENT_URI,
+                new String[]{WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                null, null, null);
+        if (cursor != null) {
+            while (cursor.moveToNext()) {
+                String locationSetting = cursor.getString(0);
+                if (!locationSettings.contains(locationSetting)) {
+                    locationSettings.add(locationSetting);
+                }
+            }
+            cursor.close();
+        }
 
         try {
-            // Construct the URL for the OpenWeatherMap query
-            // Possible parameters are avaiable at OWM's forecast API page, at
-            // http://openweathermap.org/API#forecast
-            final String FORECAST_BASE_URL =
-                    "http://api.openweathermap.org/data/2.5/forecast/daily?";
-            final String QUERY_PARAM = "q";
-            final String FORMAT_PARAM = "mode";
-            final String UNITS_PARAM = "units";
-            final String DAYS_PARAM = "cnt";
-            final String APPID_PARAM = "APPID";
-
-            Uri builtUri = Uri.parse(FORECAST_BASE_URL).buildUpon()
-                    .appendQueryParameter(QUERY_PARAM, locationQuery)
-                    .appendQueryParameter(FORMAT_PARAM, format)
-                    .appendQueryParameter(UNITS_PARAM, units)
-                    .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
-                    .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
-                    .build();
-
-            URL url = new URL(builtUri.toString());
-
-            // Create the request to OpenWeatherMap, and open the connection
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
-
-            // Read the input stream into a String
-            InputStream inputStream = urlConnection.getInputStream();
-            StringBuffer buffer = new StringBuffer();
-            if (inputStream == null) {
-                // Nothing to do.
-                return;
-            }
-            reader = new BufferedReader(new InputStreamReader(inputStream));
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
-                // But it does make debugging a *lot* easier if you print out the completed
-                // buffer for debugging.
-                buffer.append(line + "\n");
+            List<String> changed = new MultiLocationSync(MAX_SYNC_WORKERS).run(locationSettings,
+                    new MultiLocationSync.LocationTask() {
+                        @Override
+                        public boolean syncLocation(String locationSetting) {
+                            return SunshineSyncAdapter.this.syncLocation(locationSetting,
+                                    syncResult, trace);
+                        }
+                    });
+            return changed.contains(preferredLocation);
+        } catch (InterruptedException e) {
+            // The sync was cancelled.
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Fetches the forecast for one location and stores whatever changed.  May run on several
+     * threads at once, one location each.  The location status preference is only updated for
+     * the preferred location, since that is the one the UI reports on.
+     *
+     * @return true if a day of the stored forecast was inserted or updated.
+     */
+    boolean syncLocation(String locationQuery, SyncResult syncResult) {
+        return syncLocation(locationQuery, syncResult, new SyncTrace(System.currentTimeMillis()));
+    }
+
+    /**
+     * Same as {@link #syncLocation(String, SyncResult)}, recording the time of every phase in
+     * {@code trace}.  If another thread is already syncing the location, waits for it and
+     * returns its result instead of fetching the forecast again.
+     */
+    boolean syncLocation(String locationQuery, final SyncResult syncResult,
+                         final SyncTrace trace) {
+        try {
+            return sCoalescer.sync(locationQuery, new MultiLocationSync.LocationTask() {
+                @Override
+                public boolean syncLocation(String locationSetting) {
+                    return fetchAndStore(locationSetting, syncResult, trace);
+                }
+            });
+        } catch (InterruptedException e) {
+            // The sync was cancelled while waiting for the one in flight.
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            // fetchAndStore handles its own failures.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private boolean fetchAndStore(String locationQuery, SyncResult syncResult, SyncTrace trace) {
+        boolean preferred = locationQuery.equals(Utility.getPreferredLocation(getContext()));
+        @LocationStatus int status = LOCATION_STATUS_OK;
+        boolean changed = false;
+
+        // Only ask for the days that are shown, unless the full horizon is due or nothing is
+        // stored for the location.  On a metered network or over the data budget, never ask
+        // for more than is shown.
+        long now = System.currentTimeMillis();
+        boolean reduced = mGovernor.isReduced(now);
+        boolean stored = hasStoredForecast(locationQuery);
+        final int numDays;
+        if (reduced) {
+            numDays = mHorizon.getNeededDays(now);
+        } else if (stored) {
+            numDays = mHorizon.daysForSync(locationQuery, now);
+        } else {
+            numDays = ForecastHorizon.FULL_DAYS;
+        }
+        final ForecastRequest request = new ForecastRequest(locationQuery, numDays, "metric");
+        request.trace = trace;
+
+        // If we still hold the forecast from the last download, only ask for it if it changed.
+        String requestKey = ForecastValidators.requestKey(locationQuery, request.numDays);
+        if (stored) {
+            mValidators.applyTo(request, requestKey);
+        } else {
+            mValidators.clear(requestKey);
+        }
+        if (reduced && stored && !request.isConditional()
+                && mFreshness.getState(locationQuery) != ForecastFreshness.STATE_EXPIRED) {
+            // Reduced mode only revalidates what we hold, until it gets too old to show.
+            Log.d(LOG_TAG, "Not syncing " + locationQuery + ": data budget reduced, "
+                    + mGovernor.getTotalBytes(now) + " bytes used today");
+            synchronized (syncResult) {
+                syncResult.stats.numSkippedEntries++;
             }
+            return false;
+        }
 
-            if (buffer.length() == 0) {
-                // Stream was empty.  No point in parsing.
-                setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                return;
+        WeatherSource source = mWeatherSource;
+        request.failures = new AtomicInteger();
+        try {
+            // Transient failures are retried with backoff; a source that keeps failing is left
+            // alone until its circuit breaker lets a trial request through again.
+            Forecast forecast = source.fetch(request);
+
+            if (forecast.notModified) {
+                // Nothing new was published, so there is nothing to parse, store or announce.
+                Log.d(LOG_TAG, "Sync of " + locationQuery + " complete. Forecast not modified");
+                mValidators.recordHit();
+                mFreshness.recordSync(locationQuery, System.currentTimeMillis());
+                mHorizon.recordSync(locationQuery, numDays, System.currentTimeMillis());
+                synchronized (syncResult) {
+                    syncResult.stats.numSkippedEntries++;
+                }
+                return false;
+            }
+            mValidators.recordMiss();
+
+            switch (forecast.messageCode) {
+                case HttpURLConnection.HTTP_OK:
+                    break;
+                case HttpURLConnection.HTTP_NOT_FOUND:
+                    status = LOCATION_STATUS_INVALID;
+                    return false;
+                default:
+                    status = LOCATION_STATUS_SERVER_DOWN;
+                    return false;
             }
-            forecastJsonStr = buffer.toString();
-            getWeatherDataFromJson(forecastJsonStr, locationQuery);
+            changed = storeForecast(locationQuery, forecast, syncResult, trace);
+            mValidators.store(requestKey, forecast.etag, forecast.lastModified,
+                    forecast.source != null ? forecast.source : source.getName());
+            mFreshness.recordSync(locationQuery, System.currentTimeMillis());
+            mHorizon.recordSync(locationQuery, numDays, System.currentTimeMillis());
+        } catch (SourceGuard.ParseFailure e) {
+            Log.e(LOG_TAG, e.getCause().getMessage(), e.getCause());
+            status = LOCATION_STATUS_SERVER_INVALID;
+            synchronized (syncResult) {
+                syncResult.stats.numParseExceptions++;
+            }
+        } catch (RetryPolicy.CircuitOpenException e) {
+            Log.d(LOG_TAG, "Not syncing " + locationQuery + ": " + e.getMessage());
+            status = LOCATION_STATUS_SERVER_DOWN;
+            synchronized (syncResult) {
+                // Ask the SyncManager not to come back before the source may be called again.
+                syncResult.delayUntil = Math.max(syncResult.delayUntil,
+                        (e.retryAfterMillis + 999) / 1000);
+            }
+        } catch (InterruptedIOException e) {
+            // The sync was cancelled while backing off.
+            Thread.currentThread().interrupt();
         } catch (IOException e) {
             Log.e(LOG_TAG, "Error ", e);
             // If the code didn't successfully get the weather data, there's no point in attempting
             // to parse it.
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
+            status = LOCATION_STATUS_SERVER_DOWN;
         } catch (JSONException e) {
             Log.e(LOG_TAG, e.getMessage(), e);
             e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+            status = LOCATION_STATUS_SERVER_INVALID;
+            synchronized (syncResult) {
+                syncResult.stats.numParseExceptions++;
+            }
+        } catch (SQLException | RemoteException | OperationApplicationException e) {
+            Log.e(LOG_TAG, "Error storing " + locationQuery, e);
+            synchronized (syncResult) {
+                syncResult.databaseError = true;
+            }
         } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
+            synchronized (syncResult) {
+                syncResult.stats.numIoExceptions += request.failures.get();
             }
-            if (reader != null) {
-                try {
-                    reader.close();
-                } catch (final IOException e) {
-                    Log.e(LOG_TAG, "Error closing stream", e);
-                }
+            if (preferred) {
+                setLocationStatus(getContext(), status);
             }
         }
-        return;
+        return changed;
     }
 
     /**
-     * Take the String representing the complete forecast in JSON Format and
-     * pull out the data we need to construct the Strings needed for the wireframes.
+     * Turns a forecast into rows for the weather table.
      *
-     * Fortunately parsing is easy:  constructor takes the JSON string and converts it
-     * into an Object hierarchy for us.
+     * OWM returns daily forecasts based upon the local time of the city that is being
+     * asked for, which means that we need to know the GMT offset to translate this data
+     * properly.  Since this data is also sent in-order and the first day is always the
+     * current day, we're going to take advantage of that to get a nice normalized UTC date
+     * for all of our weather.
      */
-    private void getWeatherDataFromJson(String forecastJsonStr,
-                                        String locationSetting)
-            throws JSONException {
-
-        // Now we have a String representing the complete forecast in JSON Format.
-        // Fortunately parsing is easy:  constructor takes the JSON string and converts it
-        // into an Object hierarchy for us.
-
-        // These are the names of the JSON objects that need to be extracted.
-
-        // Location information
-        final String OWM_CITY = "city";
-        final String OWM_CITY_NAME = "name";
-        final String OWM_COORD = "coord";
-
-        // Location coordinate
-        final String OWM_LATITUDE = "lat";
-        final String OWM_LONGITUDE = "lon";
-
-        // Weather information.  Each day's forecast info is an element of the "list" array.
-        final String OWM_LIST = "list";
-
-        final String OWM_PRESSURE = "pressure";
-        final String OWM_HUMIDITY = "humidity";
-        final String OWM_WINDSPEED = "speed";
-        final String OWM_WIND_DIRECTION = "deg";
+    static WeatherBatch toWeatherBatch(Forecast forecast, long locationId, int julianStartDay) {
+        // now we work exclusively in UTC
+        Time dayTime = new Time();
+        WeatherBatch rows = new WeatherBatch(forecast.getDayCount());
+        for (int i = 0; i < forecast.getDayCount(); i++) {
+            rows.add(locationId,
+                    // Cheating to convert this to UTC time, which is what we want anyhow
+                    dayTime.setJulianDay(julianStartDay + i),
+                    forecast.description[i],
+                    forecast.weatherId[i],
+                    forecast.low[i],
+                    forecast.high[i],
+                    forecast.humidity[i],
+                    forecast.pressure[i],
+                    forecast.windSpeed[i],
+                    forecast.windDirection[i]);
+        }
+        return rows;
+    }
 
-        // All temperatures are children of the "temp" object.
-        final String OWM_TEMPERATURE = "temp";
-        final String OWM_MAX = "max";
-        final String OWM_MIN = "min";
+    /**
+     * @return the Julian day of today in local time, which is the first day of every forecast.
+     */
+    static int getJulianStartDay() {
+        Time dayTime = new Time();
+        dayTime.setToNow();
 
-        final String OWM_WEATHER = "weather";
-        final String OWM_DESCRIPTION = "main";
-        final String OWM_WEATHER_ID = "id";
+        // we start at the day returned by local time. Otherwise this is a mess.
+        return Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
+    }
 
-        final String OWM_MESSAGE_CODE = "cod";
+    /**
+     * Writes the days of {@code forecast} that differ from what is stored to the provider and
+     * drops the days that are now in the past.  Each call is its own ingest transaction, so
+     * parallel syncs commit one location at a time.
+     *
+     * The counts of unchanged, updated, inserted and pruned days end up in {@code syncResult}.
+     *
+     * @return true if a day was inserted or updated.
+     */
+    private boolean storeForecast(String locationSetting, Forecast forecast, SyncResult syncResult,
+                                  SyncTrace trace)
+            throws JSONException, RemoteException, OperationApplicationException {
+        if (!forecast.hasCity()) {
+            throw new JSONException("Forecast has no " + ForecastJsonParser.OWM_CITY);
+        }
+        if ( forecast.getDayCount() == 0 ) {
+            Log.d(LOG_TAG, "Sync of " + locationSetting + " complete. Forecast was empty");
+            return false;
+        }
 
+        long start = SyncTrace.start();
+        long locationId = addLocation(locationSetting, forecast.cityName,
+                forecast.cityLatitude, forecast.cityLongitude);
+        trace.end(locationSetting, SyncTrace.PHASE_LOCATION_UPSERT, start);
+        int julianStartDay = getJulianStartDay();
+        WeatherBatch rows = toWeatherBatch(forecast, locationId, julianStartDay);
+
+        // Only write the days that differ from what we already have.  Rewriting an unchanged
+        // day costs a delete plus an insert because of the ON CONFLICT REPLACE constraint.
+        ForecastDiff diff;
+        start = SyncTrace.start();
+        Cursor stored = getContext().getContentResolver().query(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                ForecastDiff.COMPARED_COLUMNS,
+                WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ?",
+                new String[] {Long.toString(locationId)},
+                null);
         try {
-            JSONObject forecastJson = new JSONObject(forecastJsonStr);
-
-            // do we have an error?
-            if ( forecastJson.has(OWM_MESSAGE_CODE) ) {
-                int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
-
-                switch (errorCode) {
-                    case HttpURLConnection.HTTP_OK:
-                        break;
-                    case HttpURLConnection.HTTP_NOT_FOUND:
-                        setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
-                        return;
-                    default:
-                        setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                        return;
-                }
-            }
-
-            JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
-
-            JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
-            String cityName = cityJson.getString(OWM_CITY_NAME);
-
-            JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
-            double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
-            double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
-
-            long locationId = addLocation(locationSetting, cityName, cityLatitude, cityLongitude);
-
-            // Insert the new weather information into the database
-            Vector<ContentValues> cVVector = new Vector<ContentValues>(weatherArray.length());
-
-            // OWM returns daily forecasts based upon the local time of the city that is being
-            // asked for, which means that we need to know the GMT offset to translate this data
-            // properly.
-
-            // Since this data is also sent in-order and the first day is always the
-            // current day, we're going to take advantage of that to get a nice
-            // normalized UTC date for all of our weather.
-
-            Time dayTime = new Time();
-            dayTime.setToNow();
-
-            // we start at the day returned by local time. Otherwise this is a mess.
-            int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
-
-            // now we work exclusively in UTC
-            dayTime = new Time();
-
-            for(int i = 0; i < weatherArray.length(); i++) {
-                // These are the values that will be collected.
-                long dateTime;
-                double pressure;
-                int humidity;
-                double windSpeed;
-                double windDirection;
-
-                double high;
-                double low;
-
-                String description;
-                int weatherId;
-
-                // Get the JSON object representing the day
-                JSONObject dayForecast = weatherArray.getJSONObject(i);
-
-                // Cheating to convert this to UTC time, which is what we want anyhow
-                dateTime = dayTime.setJulianDay(julianStartDay+i);
-
-                pressure = dayForecast.getDouble(OWM_PRESSURE);
-                humidity = dayForecast.getInt(OWM_HUMIDITY);
-                windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
-                windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
-
-                // Description is in a child array called "weather", which is 1 element long.
-                // That element also contains a weather code.
-                JSONObject weatherObject =
-                        dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
-                description = weatherObject.getString(OWM_DESCRIPTION);
-                weatherId = weatherObject.getInt(OWM_WEATHER_ID);
-
-                // Temperatures are in a child object called "temp".  Try not to name variables
-                // "temp" when working with temperature.  It confuses everybody.
-                JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-                high = temperatureObject.getDouble(OWM_MAX);
-                low = temperatureObject.getDouble(OWM_MIN);
-
-                ContentValues weatherValues = new ContentValues();
-
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTime);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, description);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
-
-                cVVector.add(weatherValues);
+            diff = ForecastDiff.compute(stored, rows);
+        } finally {
+            if (stored != null) {
+                stored.close();
             }
+        }
+        trace.end(locationSetting, SyncTrace.PHASE_DIFF, start);
+
+        // Add the changed days and delete old data so we don't build up an endless history, in
+        // one transaction, so that observers reload once and never see half a forecast.
+        long pruneDate = new Time().setJulianDay(julianStartDay - 1);
+        int pruned;
+        start = SyncTrace.start();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+            Bundle extras = new Bundle();
+            diff.getChangedRows().writeTo(extras);
+            extras.putLong(WeatherContract.KEY_PRUNE_DATE, pruneDate);
+            Bundle ingested = getContext().getContentResolver().call(
+                    WeatherContract.BASE_CONTENT_URI, WeatherContract.METHOD_INGEST_WEATHER,
+                    null, extras);
+            pruned = ingested.getInt(WeatherContract.KEY_DELETED);
+        } else {
+            pruned = applyIngest(diff.getChangedRows(), pruneDate);
+        }
+        trace.end(locationSetting, SyncTrace.PHASE_INGEST, start);
 
-            int inserted = 0;
-            // add to database
-            if ( cVVector.size() > 0 ) {
-                ContentValues[] cvArray = new ContentValues[cVVector.size()];
-                cVVector.toArray(cvArray);
-                getContext().getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
+        synchronized (syncResult) {
+            syncResult.stats.numSkippedEntries += diff.getUnchangedCount();
+            syncResult.stats.numUpdates += diff.getUpdatedCount();
+            syncResult.stats.numInserts += diff.getInsertedCount();
+            syncResult.stats.numDeletes += pruned;
+        }
 
-                // delete old data so we don't build up an endless history
-                getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
-                        new String[] {Long.toString(dayTime.setJulianDay(julianStartDay-1))});
+        Log.d(LOG_TAG, "Sync of " + locationSetting + " complete. "
+                + forecast.getDayCount() + " Days, " + diff.getUnchangedCount() + " Unchanged, "
+                + diff.getUpdatedCount() + " Updated, " + diff.getInsertedCount() + " Inserted, "
+                + pruned + " Pruned");
+        return diff.hasChanges();
+    }
 
-                updateWidgets();
-                updateMuzei();
-                notifyWeather();
-                notifyWatchFace();
-            }
-            Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
-            setLocationStatus(getContext(), LOCATION_STATUS_OK);
+    /**
+     * Inserts {@code rows} and deletes the days up to {@code pruneDate} in one applyBatch
+     * transaction.  This is the ingest of devices before Honeycomb, which have no
+     * ContentResolver.call().
+     *
+     * @return the number of days pruned.
+     */
+    private int applyIngest(WeatherBatch rows, long pruneDate)
+            throws RemoteException, OperationApplicationException {
+        ArrayList<ContentProviderOperation> operations =
+                new ArrayList<ContentProviderOperation>(rows.size() + 1);
+        for (int i = 0; i < rows.size(); i++) {
+            operations.add(ContentProviderOperation
+                    .newInsert(WeatherContract.WeatherEntry.CONTENT_URI)
+                    .withValue(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, rows.getLocationId(i))
+                    .withValue(WeatherContract.WeatherEntry.COLUMN_DATE, rows.getDate(i))
+                    .withValue(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, rows.getShortDesc(i))
+                    .withValue(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, rows.getWeatherId(i))
+                    .withValue(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, rows.getMinTemp(i))
+                    .withValue(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, rows.getMaxTemp(i))
+                    .withValue(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, rows.getHumidity(i))
+                    .withValue(WeatherContract.WeatherEntry.COLUMN_PRESSURE, rows.getPressure(i))
+                    .withValue(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, rows.getWindSpeed(i))
+                    .withValue(WeatherContract.WeatherEntry.COLUMN_DEGREES, rows.getDegrees(i))
+                    .build());
+        }
+        operations.add(ContentProviderOperation
+                .newDelete(WeatherContract.WeatherEntry.CONTENT_URI)
+                .withSelection(WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
+                        new String[] {Long.toString(pruneDate)})
+                .build());
+        ContentProviderResult[] results = getContext().getContentResolver().applyBatch(
+                WeatherContract.CONTENT_AUTHORITY, operations);
+        return results[results.length - 1].count;
+    }
 
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+    /**
+     * Checks that the forecast a 304 would confirm is still in the database, e.g. that the
+     * database was not wiped since the validators were stored.
+     */
+    private boolean hasStoredForecast(String locationSetting) {
+        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationSetting,
+                System.currentTimeMillis());
+        Cursor cursor = getContext().getContentResolver().query(weatherUri,
+                new String[]{WeatherContract.WeatherEntry.COLUMN_DATE}, null, null, null);
+        if (cursor == null) {
+            return false;
         }
+        boolean stored = cursor.moveToFirst();
+        cursor.close();
+        return stored;
     }
 
     private void updateWidgets() {
@@ -379,24 +645,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         }
     }
 
-    private void notifyWatchFace()
-    {
-        Context context = getContext();
-        String locationQuery = Utility.getPreferredLocation(context);
-        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery,
-                System.currentTimeMillis());
-        Cursor cursor = context.getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION,
-                null, null, null);
-        if (cursor.moveToFirst()) {
-            int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-            double high = cursor.getDouble(INDEX_MAX_TEMP);
-            double low = cursor.getDouble(INDEX_MIN_TEMP);
-            mWatchFaceNotifier.notifyWatchFace(weatherId, high, low);
-        }
-        cursor.close();
-    }
-
-    private void notifyWeather() {
+    private void notifyWeather(TodaySnapshot today) {
         Context context = getContext();
         //checking the last update and notify if it' the first of the day
         SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
@@ -411,100 +660,96 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
 
             if (System.currentTimeMillis() - lastSync >= DAY_IN_MILLIS) {
                 // Last sync was more than 1 day ago, let's send a notification with the weather.
-                String locationQuery = Utility.getPreferredLocation(context);
-
-                Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
-
-                // we'll query our contentProvider, as always
-                Cursor cursor = context.getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
-
-                if (cursor.moveToFirst()) {
-                    int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-                    double high = cursor.getDouble(INDEX_MAX_TEMP);
-                    double low = cursor.getDouble(INDEX_MIN_TEMP);
-                    String desc = cursor.getString(INDEX_SHORT_DESC);
-
-                    int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
-                    Resources resources = context.getResources();
-                    int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-                    String artUrl = Utility.getArtUrlForWeatherCondition(context, weatherId);
-
-                    // On Honeycomb and higher devices, we can retrieve the size of the large icon
-                    // Prior to that, we use a fixed size
-                    @SuppressLint("InlinedApi")
-                    int largeIconWidth = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
-                            ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
-                            : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
-                    @SuppressLint("InlinedApi")
-                    int largeIconHeight = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
-                            ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)
-                            : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
-
-                    // Retrieve the large icon
-                    Bitmap largeIcon;
+                int weatherId = today.weatherId;
+                double high = today.high;
+                double low = today.low;
+                String desc = today.description;
+
+                int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
+                Resources resources = context.getResources();
+                int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
+                String artUrl = Utility.getArtUrlForWeatherCondition(context, weatherId);
+
+                // On Honeycomb and higher devices, we can retrieve the size of the large icon
+                // Prior to that, we use a fixed size
+                @SuppressLint("InlinedApi")
+                int largeIconWidth = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                        ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_width)
+                        : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+                @SuppressLint("InlinedApi")
+                int largeIconHeight = Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB
+                        ? resources.getDimensionPixelSize(android.R.dimen.notification_large_icon_height)
+                        : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
+
+                // Retrieve the large icon, from the bundled art when data is scarce
+                Bitmap largeIcon;
+                if (mGovernor.isReduced(System.currentTimeMillis())) {
+                    largeIcon = BitmapFactory.decodeResource(resources, artResourceId);
+                } else {
                     try {
                         largeIcon = Glide.with(context)
                                 .load(artUrl)
                                 .asBitmap()
                                 .error(artResourceId)
                                 .fitCenter()
-                                .into(largeIconWidth, largeIconHeight).get();
-                    } catch (InterruptedException | ExecutionException e) {
+                                .into(largeIconWidth, largeIconHeight)
+                                .get(NOTIFICATION_ART_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException | ExecutionException | TimeoutException e) {
                         Log.e(LOG_TAG, "Error retrieving large icon from " + artUrl, e);
                         largeIcon = BitmapFactory.decodeResource(resources, artResourceId);
                     }
-                    String title = context.getString(R.string.app_name);
-
-                    // Define the text of the forecast.
-                    String contentText = String.format(context.getString(R.string.format_notification),
-                            desc,
-                            Utility.formatTemperature(context, high),
-                            Utility.formatTemperature(context, low));
-
-                    // NotificationCompatBuilder is a very convenient way to build backward-compatible
-                    // notifications.  Just throw in some data.
-                    NotificationCompat.Builder mBuilder =
-                            new NotificationCompat.Builder(getContext())
-                                    .setColor(resources.getColor(R.color.primary_light))
-                                    .setSmallIcon(iconId)
-                                    .setLargeIcon(largeIcon)
-                                    .setContentTitle(title)
-                                    .setContentText(contentText);
-
-                    // Make something interesting happen when the user clicks on the notification.
-                    // In this case, opening the app is sufficient.
-                    Intent resultIntent = new Intent(context, MainActivity.class);
-
-                    // The stack builder object will contain an artificial back stack for the
-                    // started Activity.
-                    // This ensures that navigating backward from the Activity leads out of
-                    // your application to the Home screen.
-                    TaskStackBuilder stackBuilder = TaskStackBuilder.create(context);
-                    stackBuilder.addNextIntent(resultIntent);
-                    PendingIntent resultPendingIntent =
-                            stackBuilder.getPendingIntent(
-                                    0,
-                                    PendingIntent.FLAG_UPDATE_CURRENT
-                            );
-                    mBuilder.setContentIntent(resultPendingIntent);
-
-                    NotificationManager mNotificationManager =
-                            (NotificationManager) getContext().getSystemService(Context.NOTIFICATION_SERVICE);
-                    // WEATHER_NOTIFICATION_ID allows you to update the notification later on.
-                    mNotificationManager.notify(WEATHER_NOTIFICATION_ID, mBuilder.build());
-
-                    //refreshing last sync
-                    SharedPreferences.Editor editor = prefs.edit();
-                    editor.putLong(lastNotificationKey, System.currentTimeMillis());
-                    editor.commit();
                 }
-                cursor.close();
+                String title = context.getString(R.string.app_name);
+
+                // Define the text of the forecast.
+                String contentText = String.format(context.getString(R.string.format_notification),
+                        desc,
+                        Utility.formatTemperature(context, high),
+                        Utility.formatTemperature(context, low));
+
+                // NotificationCompatBuilder is a very convenient way to build backward-compatible
+                // notifications.  Just throw in some data.
+                NotificationCompat.Builder mBuilder =
+                        new NotificationCompat.Builder(getContext())
+                                .setColor(resources.getColor(R.color.primary_light))
+                                .setSmallIcon(iconId)
+                                .setLargeIcon(largeIcon)
+                                .setContentTitle(title)
+                                .setContentText(contentText);
+
+                // Make something interesting happen when the user clicks on the notification.
+                // In this case, opening the app is sufficient.
+                Intent resultIntent = new Intent(context, MainActivity.class);
+
+                // The stack builder object will contain an artificial back stack for the
+                // started Activity.
+                // This ensures that navigating backward from the Activity leads out of
+                // your application to the Home screen.
+                TaskStackBuilder stackBuilder = TaskStackBuilder.create(context);
+                stackBuilder.addNextIntent(resultIntent);
+                PendingIntent resultPendingIntent =
+                        stackBuilder.getPendingIntent(
+                                0,
+                                PendingIntent.FLAG_UPDATE_CURRENT
+                        );
+                mBuilder.setContentIntent(resultPendingIntent);
+
+                NotificationManager mNotificationManager =
+                        (NotificationManager) getContext().getSystemService(Context.NOTIFICATION_SERVICE);
+                // WEATHER_NOTIFICATION_ID allows you to update the notification later on.
+                mNotificationManager.notify(WEATHER_NOTIFICATION_ID, mBuilder.build());
+
+                //refreshing last sync
+                SharedPreferences.Editor editor = prefs.edit();
+                editor.putLong(lastNotificationKey, System.currentTimeMillis());
+                editor.commit();
             }
         }
     }
 
     /**
-     * Helper method to handle insertion of a new location in the weather database.
+     * Helper method to handle insertion of a new location in the weather database.  Known
+     * locations are answered from {@link LocationIdCache} without asking the provider.
      *
      * @param locationSetting The location string used to request updates from the server.
      * @param cityName A human-readable city name, e.g "Mountain View"
@@ -513,44 +758,7 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
      * @return the row ID of the added location.
      */
     long addLocation(String locationSetting, String cityName, double lat, double lon) {
-        long locationId;
-
-        // First, check if the location with this city name exists in the db
-        Cursor locationCursor = getContext().getContentResolver().query(
-                WeatherContract.LocationEntry.CONTENT_URI,
-                new String[]{WeatherContract.LocationEntry._ID},
-                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
-                new String[]{locationSetting},
-                null);
-
-        if (locationCursor.moveToFirst()) {
-            int locationIdIndex = locationCursor.getColumnIndex(WeatherContract.LocationEntry._ID);
-            locationId = locationCursor.getLong(locationIdIndex);
-        } else {
-            // Now that the content provider is set up, inserting rows of data is pretty simple.
-            // First create a ContentValues object to hold the data you want to insert.
-            ContentValues locationValues = new ContentValues();
-
-            // Then add the data, along with the corresponding name of the data type,
-            // so the content provider knows what kind of value is being inserted.
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lat);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, lon);
-
-            // Finally, insert location data into the database.
-            Uri insertedUri = getContext().getContentResolver().insert(
-                    WeatherContract.LocationEntry.CONTENT_URI,
-                    locationValues
-            );
-
-            // The resulting URI contains the ID for the row.  Extract the locationId from the Uri.
-            locationId = ContentUris.parseId(insertedUri);
-        }
-
-        locationCursor.close();
-        // Wait, that worked?  Yes!
-        return locationId;
+        return mLocationIds.resolve(locationSetting, cityName, lat, lon);
     }
 
     /**
@@ -577,9 +785,32 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
      * @param context The context used to access the account service
      */
     public static void syncImmediately(Context context) {
+        String locationSetting = Utility.getPreferredLocation(context);
+        if (!sCoalescer.offer(locationSetting, System.currentTimeMillis())) {
+            Log.d(SunshineSyncAdapter.class.getSimpleName(),
+                    "Sync of " + locationSetting + " already pending");
+            return;
+        }
+        Bundle bundle = new Bundle();
+        bundle.putBoolean(ContentResolver.SYNC_EXTRAS_EXPEDITED, true);
+        bundle.putBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, true);
+        ContentResolver.requestSync(getSyncAccount(context),
+                context.getString(R.string.content_authority), bundle);
+    }
+
+    /**
+     * Helper method to have the sync adapter refresh every stored location right away
+     * @param context The context used to access the account service
+     */
+    public static void syncAllLocationsImmediately(Context context) {
+        if (!sCoalescer.offer(SYNC_EXTRAS_ALL_LOCATIONS, System.currentTimeMillis())) {
+            Log.d(SunshineSyncAdapter.class.getSimpleName(), "Sync of all locations already pending");
+            return;
+        }
         Bundle bundle = new Bundle();
         bundle.putBoolean(ContentResolver.SYNC_EXTRAS_EXPEDITED, true);
         bundle.putBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, true);
+        bundle.putBoolean(SYNC_EXTRAS_ALL_LOCATIONS, true);
         ContentResolver.requestSync(getSyncAccount(context),
                 context.getString(R.string.content_authority), bundle);
     }
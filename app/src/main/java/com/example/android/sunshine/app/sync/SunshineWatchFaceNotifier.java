@@ -9,6 +9,7 @@ import com.google.android.gms.common.api.PendingResult;
 import com.google.android.gms.common.api.ResultCallback;
 import com.google.android.gms.wearable.DataApi;
 import com.google.android.gms.wearable.DataMap;
+import com.google.android.gms.wearable.NodeApi;
 import com.google.android.gms.wearable.PutDataMapRequest;
 import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
@@ -22,6 +23,7 @@ public class SunshineWatchFaceNotifier implements GoogleApiClient.ConnectionCall
         GoogleApiClient.OnConnectionFailedListener {
 
     private final String TAG = "ShWatchFaceNotifier";
+    private final Context mContext;
     private GoogleApiClient mGoogleApiClient;
 
     private int mWeatherId;
@@ -29,6 +31,7 @@ public class SunshineWatchFaceNotifier implements GoogleApiClient.ConnectionCall
     private double mHighTemperature;
 
     public SunshineWatchFaceNotifier(Context context) {
+        mContext = context.getApplicationContext();
         mGoogleApiClient = new GoogleApiClient.Builder(context)
                 .addConnectionCallbacks(this)
                 .addOnConnectionFailedListener(this)
@@ -70,6 +73,26 @@ public class SunshineWatchFaceNotifier implements GoogleApiClient.ConnectionCall
                 String msg = "Successfully ";
                 if (!result.getStatus().isSuccess()) msg = "Failed to ";
                 Log.d(TAG, msg + " set data item set: " + result.getDataItem().getUri());
+                if (result.getStatus().isSuccess()) {
+                    recordReachedNodes();
+                } else {
+                    mGoogleApiClient.disconnect();
+                }
+            }
+        });
+    }
+
+    // A data item is stored even without a wearable, so only a connected node means the watch
+    // face got the forecast.
+    private void recordReachedNodes() {
+        Wearable.NodeApi
+                .getConnectedNodes(mGoogleApiClient)
+                .setResultCallback(new ResultCallback<NodeApi.GetConnectedNodesResult>() {
+            @Override
+            public void onResult(NodeApi.GetConnectedNodesResult result) {
+                if (result.getStatus().isSuccess() && !result.getNodes().isEmpty()) {
+                    SyncScheduler.onWatchFaceReached(mContext);
+                }
                 mGoogleApiClient.disconnect();
             }
         });
@@ -0,0 +1,118 @@
+package com.example.android.sunshine.app.sync;
+
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Merges sync requests that would fetch the same forecast twice.
+ *
+ * A request for a location is absorbed if a sync of it is running right now, or if the same
+ * location was requested less than {@code windowMillis} ago and no sync of it has finished
+ * since.  The window only bounds how long a request that never ran, e.g. for lack of a network,
+ * keeps absorbing the ones after it.
+ *
+ * A sync started while another thread is already syncing the same location waits for that one
+ * and shares its result instead of downloading and writing the forecast again.
+ *
+ * Times are passed in by the caller, so the window can be tested without waiting.
+ */
+public class SyncCoalescer {
+
+    private final long mWindowMillis;
+    private final HashMap<String, Long> mLastRequested = new HashMap<String, Long>();
+    private final HashMap<String, InFlight> mInFlight = new HashMap<String, InFlight>();
+
+    private int mAbsorbedRequests;
+    private int mJoinedSyncs;
+
+    private static class InFlight {
+        final CountDownLatch mDone = new CountDownLatch(1);
+        volatile boolean mChanged;
+        volatile Exception mFailure;
+    }
+
+    public SyncCoalescer(long windowMillis) {
+        mWindowMillis = windowMillis;
+    }
+
+    /**
+     * @return true if a sync of {@code key} should be requested now, false if the request was
+     * absorbed by a pending or running one.
+     */
+    public synchronized boolean offer(String key, long now) {
+        Long lastRequested = mLastRequested.get(key);
+        if (mInFlight.containsKey(key)
+                || (lastRequested != null && now - lastRequested < mWindowMillis)) {
+            mAbsorbedRequests++;
+            return false;
+        }
+        mLastRequested.put(key, now);
+        return true;
+    }
+
+    /**
+     * Runs {@code task} for {@code locationSetting}, unless another thread is already syncing
+     * it, in which case this waits for that sync and returns its result.
+     *
+     * @return true if the stored forecast of the location changed.
+     */
+    public boolean sync(String locationSetting, MultiLocationSync.LocationTask task)
+            throws Exception {
+        InFlight inFlight;
+        boolean owner;
+        synchronized (this) {
+            inFlight = mInFlight.get(locationSetting);
+            owner = inFlight == null;
+            if (owner) {
+                inFlight = new InFlight();
+                mInFlight.put(locationSetting, inFlight);
+            } else {
+                mJoinedSyncs++;
+            }
+        }
+
+        if (!owner) {
+            inFlight.mDone.await();
+            if (inFlight.mFailure != null) {
+                throw inFlight.mFailure;
+            }
+            return inFlight.mChanged;
+        }
+
+        try {
+            inFlight.mChanged = task.syncLocation(locationSetting);
+            return inFlight.mChanged;
+        } catch (Exception e) {
+            inFlight.mFailure = e;
+            throw e;
+        } finally {
+            synchronized (this) {
+                mInFlight.remove(locationSetting);
+                mLastRequested.remove(locationSetting);
+            }
+            inFlight.mDone.countDown();
+        }
+    }
+
+    /**
+     * Notes that a sync of {@code key} finished, so that the next request for it goes through.
+     * Syncs run by {@link #sync(String, MultiLocationSync.LocationTask)} do this on their own.
+     */
+    public synchronized void finished(String key) {
+        mLastRequested.remove(key);
+    }
+
+    /**
+     * @return how many requests were absorbed by {@link #offer(String, long)}.
+     */
+    public synchronized int getAbsorbedRequestCount() {
+        return mAbsorbedRequests;
+    }
+
+    /**
+     * @return how many syncs joined one that was already running.
+     */
+    public synchronized int getJoinedSyncCount() {
+        return mJoinedSyncs;
+    }
+}
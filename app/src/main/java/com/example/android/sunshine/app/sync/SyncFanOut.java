@@ -0,0 +1,136 @@
+package com.example.android.sunshine.app.sync;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands today's forecast to every consumer at once, each on its own thread, so that a slow
+ * consumer (say, one downloading art for a notification) cannot hold up the others.
+ *
+ * Targets start in order of priority, and each one gets its own deadline counted from the start
+ * of the fan-out.  A target that misses its deadline is interrupted and left behind.
+ */
+public class SyncFanOut {
+    private static final String LOG_TAG = SyncFanOut.class.getSimpleName();
+
+    /**
+     * One consumer of the forecast.
+     */
+    public static abstract class Target {
+        final String mName;
+        final int mPriority;
+        final long mTimeoutMillis;
+
+        /**
+         * @param name the name the delivery is traced under.
+         * @param priority a thread priority, from {@link Thread#MIN_PRIORITY} to
+         *                 {@link Thread#MAX_PRIORITY}.  Higher priority targets start first.
+         * @param timeoutMillis how long the fan-out waits for this target.
+         */
+        protected Target(String name, int priority, long timeoutMillis) {
+            mName = name;
+            mPriority = priority;
+            mTimeoutMillis = timeoutMillis;
+        }
+
+        /**
+         * Called on a worker thread.  Should give up when the thread is interrupted.
+         */
+        protected abstract void deliver(TodaySnapshot snapshot) throws Exception;
+    }
+
+    private static final Comparator<Target> BY_PRIORITY = new Comparator<Target>() {
+        @Override
+        public int compare(Target lhs, Target rhs) {
+            return rhs.mPriority - lhs.mPriority;
+        }
+    };
+
+    /**
+     * Delivers {@code snapshot} to every target and waits until each has finished or missed
+     * its deadline.  The time each target took ends up in {@code trace}; a target that timed out
+     * is recorded with its timeout.
+     *
+     * @return the number of targets that finished successfully in time.
+     */
+    public static int run(final TodaySnapshot snapshot, List<Target> targets, SyncTrace trace)
+            throws InterruptedException {
+        if (targets.isEmpty()) {
+            return 0;
+        }
+        List<Target> ordered = new ArrayList<Target>(targets);
+        Collections.sort(ordered, BY_PRIORITY);
+
+        ExecutorService executor = Executors.newFixedThreadPool(ordered.size(),
+                new ThreadFactory() {
+                    private final AtomicInteger mCount = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        return new Thread(runnable, "SunshineFanOut-" + mCount.incrementAndGet());
+                    }
+                });
+        int delivered = 0;
+        try {
+            final long start = SyncTrace.start();
+            // How long each target ran, read back for a target that failed.  Future.get()
+            // makes the write of its task visible here.
+            final long[] targetMicros = new long[ordered.size()];
+            List<Future<Long>> futures = new ArrayList<Future<Long>>(ordered.size());
+            for (int i = 0; i < ordered.size(); i++) {
+                final Target target = ordered.get(i);
+                final int index = i;
+                futures.add(executor.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws Exception {
+                        Thread.currentThread().setPriority(target.mPriority);
+                        long targetStart = SyncTrace.start();
+                        try {
+                            target.deliver(snapshot);
+                        } finally {
+                            targetMicros[index] = (System.nanoTime() - targetStart) / 1000;
+                        }
+                        return targetMicros[index];
+                    }
+                }));
+            }
+
+            for (int i = 0; i < futures.size(); i++) {
+                Target target = ordered.get(i);
+                long remainingNanos = TimeUnit.MILLISECONDS.toNanos(target.mTimeoutMillis)
+                        - (System.nanoTime() - start);
+                long durationMicros;
+                try {
+                    durationMicros = futures.get(i).get(Math.max(0, remainingNanos),
+                            TimeUnit.NANOSECONDS);
+                    delivered++;
+                } catch (TimeoutException e) {
+                    Log.w(LOG_TAG, target.mName + " missed its " + target.mTimeoutMillis
+                            + "ms deadline");
+                    futures.get(i).cancel(true);
+                    durationMicros = target.mTimeoutMillis * 1000;
+                } catch (ExecutionException e) {
+                    Log.e(LOG_TAG, target.mName + " failed", e.getCause());
+                    durationMicros = targetMicros[i];
+                }
+                trace.record(SyncTrace.NO_LOCATION, target.mName, durationMicros, 0);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return delivered;
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.support.v4.net.ConnectivityManagerCompat;
+
+import java.util.TimeZone;
+
+/**
+ * Keeps the data the sync uses within a daily budget.
+ *
+ * Every response is counted against the network type it arrived on, per local day.  While the
+ * active network is metered, or once the day's bytes reach the budget, the sync runs in reduced
+ * mode: it only asks for the days consumers show, only revalidates forecasts it already holds,
+ * and the notification uses bundled art instead of downloading it.
+ *
+ * The counters live in their own preferences file, so that writing them does not wake up the
+ * OnSharedPreferenceChangeListeners of the UI.
+ */
+public class SyncGovernor implements SyncHttpClient.TrafficListener {
+
+    static final String PREFS_NAME = "sync_budget";
+
+    public static final long DEFAULT_DAILY_BUDGET_BYTES = 2 * 1024 * 1024;
+
+    public static final String NETWORK_WIFI = "wifi";
+    public static final String NETWORK_MOBILE = "mobile";
+    public static final String NETWORK_OTHER = "other";
+    public static final String NETWORK_NONE = "none";
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    private static final String KEY_DAY = "day";
+    private static final String KEY_BYTES = "bytes:";
+    private static final String KEY_DAILY_BUDGET = "daily_budget";
+
+    private static final String[] NETWORK_TYPES =
+            {NETWORK_WIFI, NETWORK_MOBILE, NETWORK_OTHER, NETWORK_NONE};
+
+    /**
+     * Tells the governor what network the device is on.  Tests pass a fake one.
+     */
+    public interface NetworkStateProvider {
+        /**
+         * @return one of the NETWORK_ constants.
+         */
+        String getNetworkType();
+
+        boolean isMetered();
+    }
+
+    /**
+     * @return the network state as the ConnectivityManager reports it.
+     */
+    public static NetworkStateProvider systemNetworkState(Context context) {
+        final ConnectivityManager cm =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        return new NetworkStateProvider() {
+            @Override
+            public String getNetworkType() {
+                NetworkInfo info = cm.getActiveNetworkInfo();
+                if (info == null || !info.isConnected()) {
+                    return NETWORK_NONE;
+                }
+                switch (info.getType()) {
+                    case ConnectivityManager.TYPE_WIFI:
+                    case ConnectivityManager.TYPE_ETHERNET:
+                        return NETWORK_WIFI;
+                    case ConnectivityManager.TYPE_MOBILE:
+                        return NETWORK_MOBILE;
+                    default:
+                        return NETWORK_OTHER;
+                }
+            }
+
+            @Override
+            public boolean isMetered() {
+                return ConnectivityManagerCompat.isActiveNetworkMetered(cm);
+            }
+        };
+    }
+
+    private final SharedPreferences mPrefs;
+    private final NetworkStateProvider mNetworkState;
+
+    public SyncGovernor(Context context, NetworkStateProvider networkState) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        mNetworkState = networkState;
+    }
+
+    /**
+     * @return the local day {@code now} falls on, counted from the epoch.
+     */
+    static long dayOf(long now) {
+        return (now + TimeZone.getDefault().getOffset(now)) / DAY_IN_MILLIS;
+    }
+
+    @Override
+    public void onTraffic(long wireBytes) {
+        recordBytes(wireBytes, System.currentTimeMillis());
+    }
+
+    /**
+     * Counts {@code bytes} against the current network type, starting over on a new day.
+     */
+    public synchronized void recordBytes(long bytes, long now) {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        long day = dayOf(now);
+        if (mPrefs.getLong(KEY_DAY, -1) != day) {
+            for (String type : NETWORK_TYPES) {
+                editor.remove(KEY_BYTES + type);
+            }
+            editor.putLong(KEY_DAY, day);
+        }
+        String key = KEY_BYTES + mNetworkState.getNetworkType();
+        long counted = mPrefs.getLong(KEY_DAY, -1) == day ? mPrefs.getLong(key, 0) : 0;
+        editor.putLong(key, counted + bytes).apply();
+    }
+
+    /**
+     * @return the bytes used on {@code networkType} on the day of {@code now}.
+     */
+    public synchronized long getBytes(String networkType, long now) {
+        if (mPrefs.getLong(KEY_DAY, -1) != dayOf(now)) {
+            return 0;
+        }
+        return mPrefs.getLong(KEY_BYTES + networkType, 0);
+    }
+
+    /**
+     * @return the bytes used on every network on the day of {@code now}.
+     */
+    public long getTotalBytes(long now) {
+        long total = 0;
+        for (String type : NETWORK_TYPES) {
+            total += getBytes(type, now);
+        }
+        return total;
+    }
+
+    public long getDailyBudget() {
+        return mPrefs.getLong(KEY_DAILY_BUDGET, DEFAULT_DAILY_BUDGET_BYTES);
+    }
+
+    public void setDailyBudget(long bytes) {
+        mPrefs.edit().putLong(KEY_DAILY_BUDGET, bytes).apply();
+    }
+
+    /**
+     * @return true if syncs should use as little data as they can right now.
+     */
+    public boolean isReduced(long now) {
+        return mNetworkState.isMetered() || getTotalBytes(now) >= getDailyBudget();
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.android.sunshine.app.sync;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The HTTP client of the sync package.  Connections to a host are kept alive and reused by every
+ * sync of the process, and responses are asked for gzip compressed and inflated while they are
+ * read.
+ *
+ * HttpURLConnection keeps a connection in its pool once the response body was read to the end
+ * and closed, and loses it on {@link HttpURLConnection#disconnect()}.  {@link Response#close()}
+ * therefore drains what is left of a short body instead of disconnecting.  The compression is
+ * negotiated here rather than by the platform, which would hide the compressed size.
+ */
+public class SyncHttpClient {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 15000;
+    private static final int READ_TIMEOUT_MILLIS = 30000;
+    // Unread bodies up to this size are drained so that their connection can be reused; the
+    // connection of a longer one is dropped.
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    private static final SyncHttpClient sInstance = new SyncHttpClient();
+
+    /**
+     * Told how many bytes every response took on the wire, e.g. to keep a data budget.
+     */
+    public interface TrafficListener {
+        void onTraffic(long wireBytes);
+    }
+
+    private volatile TrafficListener mTrafficListener;
+
+    public static SyncHttpClient getInstance() {
+        return sInstance;
+    }
+
+    public void setTrafficListener(TrafficListener listener) {
+        mTrafficListener = listener;
+    }
+
+    /**
+     * Sends a GET request.  The response must be closed.
+     *
+     * @param headers extra request headers, may be null.
+     */
+    public Response get(URL url, Map<String, String> headers) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+        connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+        connection.setRequestMethod("GET");
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        if (headers != null) {
+            for (Map.Entry<String, String> header : headers.entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+        }
+        try {
+            connection.connect();
+            return new Response(connection, connection.getResponseCode(), mTrafficListener);
+        } catch (IOException e) {
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    /**
+     * A response whose body is decoded as it is read.  Counts the bytes received on the wire and
+     * after inflating, with the time spent on each.
+     */
+    public static class Response implements Closeable {
+        private final HttpURLConnection mConnection;
+        private final int mCode;
+        private final TrafficListener mTrafficListener;
+        private MeteredInputStream mWire;
+        private MeteredInputStream mDecoded;
+
+        Response(HttpURLConnection connection, int code, TrafficListener trafficListener) {
+            mConnection = connection;
+            mCode = code;
+            mTrafficListener = trafficListener;
+        }
+
+        public int getCode() {
+            return mCode;
+        }
+
+        public String getHeader(String name) {
+            return mConnection.getHeaderField(name);
+        }
+
+        public boolean isCompressed() {
+            return "gzip".equalsIgnoreCase(getHeader("Content-Encoding"));
+        }
+
+        /**
+         * @return the decoded body.  Only a successful response has one.
+         */
+        public InputStream getBody() throws IOException {
+            if (mDecoded == null) {
+                mWire = new MeteredInputStream(mConnection.getInputStream());
+                mDecoded = new MeteredInputStream(isCompressed()
+                        ? new GZIPInputStream(mWire) : mWire);
+            }
+            return mDecoded;
+        }
+
+        public long getWireBytes() {
+            return mWire == null ? 0 : mWire.getBytes();
+        }
+
+        public long getDecodedBytes() {
+            return mDecoded == null ? 0 : mDecoded.getBytes();
+        }
+
+        /**
+         * @return the time spent waiting for bytes from the network.
+         */
+        public long getWireReadNanos() {
+            return mWire == null ? 0 : mWire.getReadNanos();
+        }
+
+        /**
+         * @return the time spent inflating, on top of {@link #getWireReadNanos()}.
+         */
+        public long getInflateNanos() {
+            return mDecoded == null || mDecoded == mWire
+                    ? 0 : mDecoded.getReadNanos() - mWire.getReadNanos();
+        }
+
+        /**
+         * Hands the connection back to the pool, or drops it if the body is too long to drain.
+         */
+        @Override
+        public void close() {
+            MeteredInputStream raw = mWire;
+            try {
+                if (raw == null) {
+                    InputStream body = mCode < HttpURLConnection.HTTP_BAD_REQUEST
+                            ? mConnection.getInputStream() : mConnection.getErrorStream();
+                    raw = body == null ? null : new MeteredInputStream(body);
+                }
+                if (raw != null && !drain(raw)) {
+                    mConnection.disconnect();
+                }
+            } catch (IOException e) {
+                mConnection.disconnect();
+            } finally {
+                if (raw != null) {
+                    try {
+                        raw.close();
+                    } catch (IOException e) {
+                        // the connection is gone either way
+                    }
+                }
+                if (mTrafficListener != null) {
+                    mTrafficListener.onTraffic(raw == null ? 0 : raw.getBytes());
+                }
+            }
+        }
+
+        private static boolean drain(InputStream in) throws IOException {
+            byte[] buffer = new byte[4096];
+            int drained = 0;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                drained += read;
+                if (drained > MAX_DRAIN_BYTES) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.android.sunshine.app.sync;
+
+/**
+ * Decides how long to wait until the next periodic sync.  The interval shrinks when recent
+ * syncs kept finding new data, when syncing is cheap (charging, unmetered network) and when
+ * somebody is looking at the weather, and stretches otherwise, always staying within the
+ * configured bounds.
+ *
+ * This class has no Android dependencies, so it can be tested and simulated on its own.
+ */
+public class SyncSchedulePolicy {
+
+    /**
+     * Number of recent syncs the change rate is computed over.
+     */
+    public static final int HISTORY_SIZE = 8;
+
+    /**
+     * Snapshot of the device conditions the interval is computed for.
+     */
+    public static class DeviceState {
+        public final boolean charging;
+        public final boolean unmetered;
+        public final boolean consumerActive;
+
+        public DeviceState(boolean charging, boolean unmetered, boolean consumerActive) {
+            this.charging = charging;
+            this.unmetered = unmetered;
+            this.consumerActive = consumerActive;
+        }
+    }
+
+    private final long mMinInterval;
+    private final long mMaxInterval;
+    private final long mBaseInterval;
+
+    /**
+     * All intervals are in seconds.
+     *
+     * @param baseInterval the interval used when half of the recent syncs changed data.
+     */
+    public SyncSchedulePolicy(long minInterval, long maxInterval, long baseInterval) {
+        if (minInterval <= 0 || minInterval > baseInterval || baseInterval > maxInterval) {
+            throw new IllegalArgumentException("Expected 0 < min <= base <= max, got "
+                    + minInterval + ", " + baseInterval + ", " + maxInterval);
+        }
+        mMinInterval = minInterval;
+        mMaxInterval = maxInterval;
+        mBaseInterval = baseInterval;
+    }
+
+    /**
+     * Adds the outcome of a sync to a history bit mask, most recent sync in the lowest bit.
+     */
+    public static int recordOutcome(int history, boolean changed) {
+        return ((history << 1) | (changed ? 1 : 0)) & ((1 << HISTORY_SIZE) - 1);
+    }
+
+    /**
+     * @param history bit mask built with {@link #recordOutcome(int, boolean)}.
+     * @param count how many syncs the mask holds, at most {@link #HISTORY_SIZE}.
+     * @return the fraction of the recorded syncs that changed data, 0.5 if nothing was recorded.
+     */
+    public static double changeRate(int history, int count) {
+        count = Math.min(count, HISTORY_SIZE);
+        if (count <= 0) {
+            return 0.5;
+        }
+        int mask = (1 << count) - 1;
+        return Integer.bitCount(history & mask) / (double) count;
+    }
+
+    /**
+     * @param changeRate fraction of recent syncs that changed data, from 0 to 1.
+     * @return the interval until the next sync, in seconds.
+     */
+    public long nextInterval(double changeRate, DeviceState state) {
+        changeRate = Math.max(0, Math.min(1, changeRate));
+
+        // From 1.5x the base when nothing ever changes down to 0.5x when everything does.
+        double interval = mBaseInterval * (1.5 - changeRate);
+        if (!state.consumerActive) {
+            // Nobody would see the new data anyway.
+            interval *= 2;
+        }
+        if (state.charging || state.unmetered) {
+            // The wakeup and the download are cheap right now.
+            interval *= 0.75;
+        }
+        return Math.max(mMinInterval, Math.min(mMaxInterval, Math.round(interval)));
+    }
+
+    /**
+     * @return the flex time to schedule along with {@code interval}, in seconds.
+     */
+    public static long flexFor(long interval) {
+        return interval / 3;
+    }
+}
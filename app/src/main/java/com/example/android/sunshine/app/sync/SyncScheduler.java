@@ -0,0 +1,124 @@
+package com.example.android.sunshine.app.sync;
+
+import android.appwidget.AppWidgetManager;
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.net.ConnectivityManager;
+import android.os.BatteryManager;
+import android.support.v4.net.ConnectivityManagerCompat;
+import android.util.Log;
+
+import com.example.android.sunshine.app.widget.DetailWidgetProvider;
+import com.example.android.sunshine.app.widget.TodayWidgetProvider;
+
+/**
+ * Feeds the outcome of every sync and the current device conditions into a
+ * {@link SyncSchedulePolicy}, and moves the periodic sync when the policy asks for a
+ * noticeably different interval.
+ */
+public class SyncScheduler {
+    private static final String LOG_TAG = SyncScheduler.class.getSimpleName();
+
+    static final String PREFS_NAME = "sync_schedule";
+
+    // Bounds of the periodic sync interval, in seconds.
+    public static final long MIN_SYNC_INTERVAL = 60 * 60;
+    public static final long MAX_SYNC_INTERVAL = 60 * 60 * 12;
+
+    // Moving the periodic sync is a system call of its own, so small adjustments are ignored.
+    private static final double RESCHEDULE_THRESHOLD = 0.2;
+
+    private static final String KEY_HISTORY = "history";
+    private static final String KEY_HISTORY_COUNT = "history_count";
+    private static final String KEY_INTERVAL = "interval";
+    private static final String KEY_APP_USED = "app_used";
+    private static final String KEY_WATCH_FACE_REACHED = "watch_face_reached";
+
+    private static final SyncSchedulePolicy sPolicy = new SyncSchedulePolicy(
+            MIN_SYNC_INTERVAL, MAX_SYNC_INTERVAL, SunshineSyncAdapter.SYNC_INTERVAL);
+
+    private static SharedPreferences getPrefs(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Notes that the user has the app open, which makes fresh data worth more.
+     */
+    public static void onAppUsed(Context context) {
+        getPrefs(context).edit().putLong(KEY_APP_USED, System.currentTimeMillis()).apply();
+    }
+
+    /**
+     * Notes that today's forecast reached a connected wearable, whose watch face shows it
+     * whether or not the app is ever opened.  Called by the fan-out of the sync.
+     */
+    public static void onWatchFaceReached(Context context) {
+        getPrefs(context).edit().putLong(KEY_WATCH_FACE_REACHED, System.currentTimeMillis())
+                .apply();
+    }
+
+    /**
+     * Records whether the sync that just ran changed any data, then reschedules the periodic
+     * sync if the policy now wants a different interval.  Called on the sync thread.
+     */
+    public static synchronized void onSyncFinished(Context context, boolean changed) {
+        SharedPreferences prefs = getPrefs(context);
+        int history = SyncSchedulePolicy.recordOutcome(prefs.getInt(KEY_HISTORY, 0), changed);
+        int count = Math.min(prefs.getInt(KEY_HISTORY_COUNT, 0) + 1,
+                SyncSchedulePolicy.HISTORY_SIZE);
+
+        long currentInterval = prefs.getLong(KEY_INTERVAL, SunshineSyncAdapter.SYNC_INTERVAL);
+        long interval = sPolicy.nextInterval(SyncSchedulePolicy.changeRate(history, count),
+                readDeviceState(context, currentInterval));
+        // Whatever the policy wants, the stored forecast must not outlive its max age.
+        interval = Math.min(interval, new ForecastFreshness(context).getMaxAgeMillis() / 1000);
+
+        SharedPreferences.Editor editor = prefs.edit()
+                .putInt(KEY_HISTORY, history)
+                .putInt(KEY_HISTORY_COUNT, count);
+        if (Math.abs(interval - currentInterval) > currentInterval * RESCHEDULE_THRESHOLD) {
+            Log.d(LOG_TAG, "Moving periodic sync from " + currentInterval + "s to " + interval + "s");
+            SunshineSyncAdapter.configurePeriodicSync(context, (int) interval,
+                    (int) SyncSchedulePolicy.flexFor(interval));
+            editor.putLong(KEY_INTERVAL, interval);
+        }
+        editor.apply();
+    }
+
+    static SyncSchedulePolicy.DeviceState readDeviceState(Context context, long currentInterval) {
+        Intent battery = context.registerReceiver(null,
+                new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        boolean charging = battery != null
+                && battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+
+        ConnectivityManager cm =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        boolean unmetered = cm.getActiveNetworkInfo() != null
+                && !ConnectivityManagerCompat.isActiveNetworkMetered(cm);
+
+        return new SyncSchedulePolicy.DeviceState(charging, unmetered,
+                isConsumerActive(context, currentInterval));
+    }
+
+    /**
+     * A consumer is active if a widget is on the home screen, or the app was used or a wearable
+     * was sent the forecast within the current sync interval.  The wearable is only known from
+     * the last push of the sync, since looking for it here would mean connecting to it.
+     */
+    private static boolean isConsumerActive(Context context, long currentInterval) {
+        SharedPreferences prefs = getPrefs(context);
+        long now = System.currentTimeMillis();
+        if (now - prefs.getLong(KEY_APP_USED, 0) < currentInterval * 1000
+                || now - prefs.getLong(KEY_WATCH_FACE_REACHED, 0) < currentInterval * 1000) {
+            return true;
+        }
+        AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(context);
+        return appWidgetManager.getAppWidgetIds(
+                        new ComponentName(context, TodayWidgetProvider.class)).length > 0
+                || appWidgetManager.getAppWidgetIds(
+                        new ComponentName(context, DetailWidgetProvider.class)).length > 0;
+    }
+}
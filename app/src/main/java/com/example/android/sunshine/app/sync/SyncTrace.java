@@ -0,0 +1,96 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+
+import com.example.android.sunshine.app.data.WeatherContract.SyncJournalEntry;
+
+import java.util.ArrayList;
+
+/**
+ * Collects how long each phase of one sync took, per location, until it is written to the sync
+ * journal in a single bulkInsert.  Locations may be traced from several threads at once.
+ */
+public class SyncTrace {
+
+    // Network phases of a download, recorded by the WeatherSource.
+    public static final String PHASE_CONNECT = "connect";
+    public static final String PHASE_DOWNLOAD = "download";
+    // Bytes are the decoded size, next to the compressed size of the download.
+    public static final String PHASE_INFLATE = "inflate";
+    public static final String PHASE_PARSE = "parse";
+    // Wait before a hedged request went to the next backend, recorded only when one did.
+    public static final String PHASE_HEDGE = "hedge";
+
+    // Database phases of storing a forecast.
+    public static final String PHASE_LOCATION_UPSERT = "location_upsert";
+    public static final String PHASE_DIFF = "diff";
+    // Insert of the changed days and prune of the old ones, committed in one transaction.
+    public static final String PHASE_INGEST = "ingest";
+
+    // Consumers told about new data, each traced on its own.
+    public static final String PHASE_FANOUT_WIDGETS = "fanout_widgets";
+    public static final String PHASE_FANOUT_MUZEI = "fanout_muzei";
+    public static final String PHASE_FANOUT_NOTIFICATION = "fanout_notification";
+    public static final String PHASE_FANOUT_WATCH_FACE = "fanout_watch_face";
+
+    // The whole sync, from onPerformSync to the end of the fan-out.
+    public static final String PHASE_TOTAL = "total";
+
+    // Location of the phases that are not about a single location.
+    public static final String NO_LOCATION = "";
+
+    private final long mSyncTime;
+    private final ArrayList<ContentValues> mRows = new ArrayList<ContentValues>();
+
+    /**
+     * @param syncTime start of the sync, in milliseconds since the epoch.
+     */
+    public SyncTrace(long syncTime) {
+        mSyncTime = syncTime;
+    }
+
+    /**
+     * @return a timestamp to pass to {@link #end(String, String, long)}.
+     */
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records a phase that began at {@code startNanos}, as returned by {@link #start()}, and
+     * ends now.
+     */
+    public void end(String locationSetting, String phase, long startNanos) {
+        record(locationSetting, phase, (System.nanoTime() - startNanos) / 1000, 0);
+    }
+
+    public synchronized void record(String locationSetting, String phase, long durationMicros,
+                                    long bytes) {
+        ContentValues values = new ContentValues();
+        values.put(SyncJournalEntry.COLUMN_SYNC_TIME, mSyncTime);
+        values.put(SyncJournalEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        values.put(SyncJournalEntry.COLUMN_PHASE, phase);
+        values.put(SyncJournalEntry.COLUMN_DURATION, durationMicros);
+        values.put(SyncJournalEntry.COLUMN_BYTES, bytes);
+        mRows.add(values);
+    }
+
+    public synchronized int size() {
+        return mRows.size();
+    }
+
+    /**
+     * Appends everything recorded so far to the sync journal and starts over.
+     */
+    public void writeTo(ContentResolver resolver) {
+        ContentValues[] rows;
+        synchronized (this) {
+            rows = mRows.toArray(new ContentValues[mRows.size()]);
+            mRows.clear();
+        }
+        if (rows.length > 0) {
+            resolver.bulkInsert(SyncJournalEntry.CONTENT_URI, rows);
+        }
+    }
+}
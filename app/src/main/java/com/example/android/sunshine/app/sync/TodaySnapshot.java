@@ -0,0 +1,90 @@
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+
+import com.example.android.sunshine.app.data.WeatherContract;
+
+/**
+ * Today's forecast for one location, read once after a sync and handed to every consumer that
+ * shows it, so none of them has to query the provider again.
+ */
+public class TodaySnapshot {
+
+    private static final String[] TODAY_PROJECTION = new String[] {
+            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
+    };
+
+    // these indices must match the projection
+    private static final int INDEX_WEATHER_ID = 0;
+    private static final int INDEX_MAX_TEMP = 1;
+    private static final int INDEX_MIN_TEMP = 2;
+    private static final int INDEX_SHORT_DESC = 3;
+
+    public final String locationSetting;
+    public final int weatherId;
+    public final double high;
+    public final double low;
+    public final String description;
+
+    public TodaySnapshot(String locationSetting, int weatherId, double high, double low,
+                         String description) {
+        this.locationSetting = locationSetting;
+        this.weatherId = weatherId;
+        this.high = high;
+        this.low = low;
+        this.description = description;
+    }
+
+    /**
+     * @return today's forecast for {@code locationSetting}, or the first day stored after today,
+     * or null if none is stored.
+     */
+    public static TodaySnapshot load(Context context, String locationSetting) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+            return query(context, locationSetting);
+        }
+        Bundle today = context.getContentResolver().call(WeatherContract.BASE_CONTENT_URI,
+                WeatherContract.METHOD_TODAY_SUMMARY, locationSetting, null);
+        if (today == null) {
+            return null;
+        }
+        return new TodaySnapshot(locationSetting,
+                today.getInt(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID),
+                today.getDouble(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP),
+                today.getDouble(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP),
+                today.getString(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC));
+    }
+
+    /**
+     * Reads the same day through a cursor, for devices before Honeycomb, which have no
+     * ContentResolver.call().
+     */
+    private static TodaySnapshot query(Context context, String locationSetting) {
+        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithStartDate(
+                locationSetting, System.currentTimeMillis());
+        Cursor cursor = context.getContentResolver().query(weatherUri, TODAY_PROJECTION,
+                null, null, WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            if (!cursor.moveToFirst()) {
+                return null;
+            }
+            return new TodaySnapshot(locationSetting,
+                    cursor.getInt(INDEX_WEATHER_ID),
+                    cursor.getDouble(INDEX_MAX_TEMP),
+                    cursor.getDouble(INDEX_MIN_TEMP),
+                    cursor.getString(INDEX_SHORT_DESC));
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.android.sunshine.app.sync;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+
+/**
+ * A backend the sync adapter can get forecasts from.
+ */
+public interface WeatherSource {
+
+    /**
+     * @return a stable name for the backend, e.g. its host.  Per-backend state such as circuit
+     * breakers and concurrency limits is keyed on it.
+     */
+    String getName();
+
+    /**
+     * Fetches and parses the forecast for {@code request}.  Called on sync threads, possibly
+     * several at once.
+     *
+     * @return the forecast, {@link Forecast#notModified()} if the request was conditional and
+     * nothing changed, or a forecast carrying an error {@link Forecast#messageCode}.
+     * @throws RetryPolicy.PermanentException for failures that retrying will not fix.
+     * @throws IOException for failures that may go away, e.g. the network or a 5xx.
+     * @throws JSONException if the response cannot be parsed.
+     */
+    Forecast fetch(ForecastRequest request) throws IOException, JSONException;
+}
@@ -17,6 +17,8 @@ import com.bumptech.glide.request.target.Target;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.sync.ForecastFreshness;
+import com.example.android.sunshine.app.sync.ForecastHorizon;
 
 import java.util.concurrent.ExecutionException;
 
@@ -42,6 +44,9 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
     static final int INDEX_WEATHER_MAX_TEMP = 4;
     static final int INDEX_WEATHER_MIN_TEMP = 5;
 
+    // Days of forecast the widget asks the sync for.
+    private static final int DETAIL_WIDGET_DAYS = 7;
+
     @Override
     public RemoteViewsFactory onGetViewFactory(Intent intent) {
         return new RemoteViewsFactory() {
@@ -63,6 +68,13 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                 // that calls use our process and permission
                 final long identityToken = Binder.clearCallingIdentity();
                 String location = Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
+                // Show what is stored right away, and have a stale forecast refreshed.
+                new ForecastFreshness(DetailWidgetRemoteViewsService.this)
+                        .revalidateIfStale(location);
+                // The launcher does not tell how far the list is scrolled, so ask for a week.
+                new ForecastHorizon(DetailWidgetRemoteViewsService.this).recordNeed(
+                        ForecastHorizon.CONSUMER_DETAIL_WIDGET, DETAIL_WIDGET_DAYS,
+                        System.currentTimeMillis());
                 Uri weatherForLocationUri = WeatherContract.WeatherEntry
                         .buildWeatherLocationWithStartDate(location, System.currentTimeMillis());
                 data = getContentResolver().query(weatherForLocationUri,